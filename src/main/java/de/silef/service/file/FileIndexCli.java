@@ -1,18 +1,34 @@
 package de.silef.service.file;
 
+import de.silef.service.file.change.ByteRange;
 import de.silef.service.file.change.IndexChange;
 import de.silef.service.file.change.IndexNodeChange;
 import de.silef.service.file.change.IndexNodeChangeFactory;
 import de.silef.service.file.extension.*;
+import de.silef.service.file.hash.ContentHashCache;
+import de.silef.service.file.hash.DuplicateFinder;
+import de.silef.service.file.hash.DuplicateGroup;
+import de.silef.service.file.hash.FileContentHashCalculator;
+import de.silef.service.file.hash.HashCheckpointer;
+import de.silef.service.file.hash.HashMismatch;
+import de.silef.service.file.hash.HashProgressListener;
+import de.silef.service.file.hash.HashStatistics;
+import de.silef.service.file.hash.IntegrityVerifier;
+import de.silef.service.file.hash.ScrubScheduler;
+import de.silef.service.file.hash.UniversalHashCalculator;
+import de.silef.service.file.hash.VerifyResult;
+import de.silef.service.file.index.ColumnarFileIndex;
 import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.index.IndexBackend;
 import de.silef.service.file.index.StandardFileIndexStrategy;
+import de.silef.service.file.node.DirtyDirectoryTracker;
 import de.silef.service.file.node.IndexNode;
 import de.silef.service.file.node.IndexNodeFactory;
-import de.silef.service.file.node.IndexNodeWalker;
+import de.silef.service.file.path.IncrementalPathInfoLister;
 import de.silef.service.file.path.IndexNodePathFactory;
 import de.silef.service.file.path.PathInfo;
 import de.silef.service.file.path.PathInfoFilter;
-import de.silef.service.file.tree.Visitor;
+import de.silef.service.file.util.BandwidthLimiter;
 import de.silef.service.file.util.ByteUtil;
 import de.silef.service.file.util.HashUtil;
 import org.apache.commons.cli.*;
@@ -28,7 +44,6 @@ import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import static de.silef.service.file.extension.ExtensionType.*;
 
@@ -42,9 +57,16 @@ public class FileIndexCli {
     private static final String DEFAULT_INDEX_DIR = ".cache/fileindex";
     private static final String DEFAULT_INDEX_EXT = ".index";
     private static final int CHANGE_OUTPUT_LIMIT = 256;
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+    private static final long CHECKPOINT_INTERVAL = 300 * 1000;
+    private static final String DEFAULT_HASH_CACHE = "hash.cache";
+    private static final int HASH_CACHE_SIZE = 500000;
+    private static final double SCRUB_PERCENT = 5;
 
     private CommandLine cmd;
 
+    private ContentHashCache hashCache;
+
     public FileIndexCli(CommandLine cmd) {
         this.cmd = cmd;
     }
@@ -55,24 +77,140 @@ public class FileIndexCli {
 
         StandardFileIndexStrategy indexStrategy = new StandardFileIndexStrategy();
 
-        if (!Files.exists(indexFile)) {
-            executeCreateIndex(base, indexFile, indexStrategy);
+        try {
+            if (!Files.exists(indexFile)) {
+                executeCreateIndex(base, indexFile, indexStrategy);
+                return;
+            }
+
+            if (cmd.hasOption("off-heap")) {
+                executeOffHeap(base, indexFile, indexStrategy);
+                return;
+            }
+
+            FileIndex index = readIndex(base, indexFile, indexStrategy);
+
+            if (cmd.hasOption("u")) {
+                executeUpdateIndex(base, indexFile, indexStrategy, index);
+                calculateHashes(indexFile, index);
+                writeIndex(index, indexFile);
+            }
+
+            executeVerify(indexFile, index);
+            executeDiff(base, index, indexStrategy);
+            executeDeduplication(base, indexFile, index, indexStrategy);
+        } finally {
+            writeHashCache();
+        }
+    }
+
+    private void executeVerify(Path indexFile, FileIndex index) throws IOException, java.text.ParseException {
+        if (!cmd.hasOption("verify") && !cmd.hasOption("scrub")) {
             return;
         }
 
-        FileIndex index = readIndex(base, indexFile, indexStrategy);
+        ContentHashAlgorithm algorithm = getIntegrityAlgorithm();
+        int threads = getIntegrityThreads();
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(getVerifyBandwidth());
+        IntegrityVerifier verifier = new IntegrityVerifier(threads, threads * 4, algorithm, bandwidthLimiter);
+        VerifyResult result;
+        if (cmd.hasOption("verify")) {
+            LOG.info("Verifying {} content hashes with {} threads", algorithm.getName(), threads);
+            result = verifier.verify(index);
+        } else {
+            double fraction = getScrubPercent() / 100.0;
+            List<IndexNode> files = new ScrubScheduler(verifier::isVerifiable).select(index.getRoot(), fraction);
+            LOG.info("Scrubbing {} least recently verified files with {} threads", files.size(), threads);
+            result = verifier.verify(index, files, getScrubTime());
+        }
 
-        if (cmd.hasOption("u")) {
-            executeUpdateIndex(base, indexStrategy, index);
-            calculateHashes(indexFile, index);
+        LOG.info("Verified {}", result);
+        printVerifyResult(result);
+        if (!cmd.hasOption('n')) {
             writeIndex(index, indexFile);
         }
+    }
+
+    private double getScrubPercent() {
+        try {
+            return Math.min(100, Math.max(0, Double.parseDouble(cmd.getOptionValue("scrub"))));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid scrub percent. Use default of " + SCRUB_PERCENT + "%");
+            LOG.warn("Invalid scrub percent", e);
+            return SCRUB_PERCENT;
+        }
+    }
+
+    private long getScrubTime() {
+        if (!cmd.hasOption("scrub-time")) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(cmd.getOptionValue("scrub-time"))) * 1000;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid scrub time. Scrub without time limit");
+            LOG.warn("Invalid scrub time", e);
+            return 0;
+        }
+    }
+
+    private long getVerifyBandwidth() throws java.text.ParseException {
+        if (!cmd.hasOption("verify-bandwidth")) {
+            return 0;
+        }
+        return ByteUtil.toByte(cmd.getOptionValue("verify-bandwidth"));
+    }
 
+    private void printVerifyResult(VerifyResult result) {
+        if (!result.hasMismatches()) {
+            System.out.println("-  No mismatches");
+        }
+        result.getFileMismatches()
+                .stream()
+                .sorted((a, b) -> a.getNode().getRelativePath().compareTo(b.getNode().getRelativePath()))
+                .map(m -> "B   " + m.getNode().getRelativePath() + getMismatchDetail(m))
+                .forEach(System.out::println);
+        result.getDirectoryMismatches()
+                .stream()
+                .sorted((a, b) -> a.getNode().getRelativePath().compareTo(b.getNode().getRelativePath()))
+                .map(m -> "BD  " + m.getNode().getRelativePath() + getMismatchDetail(m))
+                .forEach(System.out::println);
+
+        HashStatistics statistics = result.getFileStatistics();
+        System.out.println(String.format("Verified %d files with %s in %.1fs (%.1f MB/s), %d modified, %d errors",
+                statistics.getFileCount(),
+                ByteUtil.toHumanSize(statistics.getByteCount()),
+                statistics.getElapsedMillis() / 1000.0,
+                statistics.getBytesPerSecond() / (1 << 20),
+                result.getModifiedFileCount(),
+                statistics.getErrorCount()));
+        System.out.println(String.format("Verified %d directory hashes in %.1fs", result.getDirectoryCount(), result.getDirectoryElapsedMillis() / 1000.0));
+        if (result.isBudgetExceeded()) {
+            System.out.println("Stopped at time budget of --scrub-time. Remaining files are verified by the next run");
+        }
+    }
+
+    private String getMismatchDetail(HashMismatch mismatch) {
+        return " (expected " + HashUtil.toHex(mismatch.getExpected()) + ", actual " + HashUtil.toHex(mismatch.getActual()) + ")";
+    }
+
+    /**
+     * Diff of indices which are read into off-heap columns. Other commands require the index
+     * tree on the heap
+     */
+    private void executeOffHeap(Path base, Path indexFile, StandardFileIndexStrategy indexStrategy) throws IOException {
+        for (String option : Arrays.asList("u", "verify", "scrub", "deduplicate")) {
+            if (cmd.hasOption(option)) {
+                System.err.println("Option --off-heap supports only --diff and --diff-full");
+                System.exit(1);
+                return;
+            }
+        }
+        IndexBackend index = readIndexBackend(base, indexFile, indexStrategy);
         executeDiff(base, index, indexStrategy);
-        executeDeduplication(base, index, indexStrategy);
     }
 
-    private void executeDiff(Path base, FileIndex index, StandardFileIndexStrategy indexStrategy) throws IOException {
+    private void executeDiff(Path base, IndexBackend index, StandardFileIndexStrategy indexStrategy) throws IOException {
         if (!cmd.hasOption("diff") && !cmd.hasOption("diff-full")) {
             return;
         }
@@ -93,7 +231,7 @@ public class FileIndexCli {
             return;
         }
 
-        FileIndex otherIndex = readIndex(otherBase, otherIndexFile, indexStrategy);
+        IndexBackend otherIndex = readIndexBackend(otherBase, otherIndexFile, indexStrategy);
 
         IndexChange change = index.getChanges(otherIndex, (origin, current) -> {
             if (origin.isDirectory()) {
@@ -122,35 +260,45 @@ public class FileIndexCli {
         }
         return originAttribute.getSize() != currentAttribute.getSize() ||
                 originAttribute.getCreationTime() != currentAttribute.getCreationTime() ||
-                originAttribute.getModifiedTime() != currentAttribute.getModifiedTime();
+                (originAttribute.hasModifiedTime() && currentAttribute.hasModifiedTime() &&
+                        originAttribute.getModifiedTime() != currentAttribute.getModifiedTime());
     }
 
     private boolean hasContentHashChanges(IndexNode origin, IndexNode current) {
-        FileContentHashIndexExtension originHash = (FileContentHashIndexExtension) origin.getExtensionByType(FILE_HASH.value);
-        FileContentHashIndexExtension currentHash = (FileContentHashIndexExtension) current.getExtensionByType(FILE_HASH.value);
+        byte hashType = getIntegrityAlgorithm().getExtensionType().value;
+        IndexExtension originHash = origin.getExtensionByType(hashType);
+        IndexExtension currentHash = current.getExtensionByType(hashType);
 
-        return originHash != null && currentHash != null && !Arrays.equals(originHash.getData(), currentHash.getData());
+        return originHash != null && currentHash != null && !originHash.hasEqualData(currentHash);
     }
 
-    private void executeDeduplication(Path base, FileIndex index, StandardFileIndexStrategy indexStrategy) throws IOException {
+    private void executeDeduplication(Path base, Path indexFile, FileIndex index, StandardFileIndexStrategy indexStrategy) throws IOException {
         if (!cmd.hasOption("deduplicate")) {
             return;
         }
 
         if (cmd.hasOption("other-dir")) {
             executeDeduplicateWithOtherIndex(base, index, indexStrategy);
-            return;
+        } else {
+            executeDeduplicateIndex(base, index, indexStrategy);
+        }
+
+        if (cmd.hasOption("integrity")) {
+            // Content hashes of duplicate candidates reset the universal hashes of their directories
+            ensureUniversalHashOfRoot(index);
+        }
+        if (!cmd.hasOption('n')) {
+            writeIndex(index, indexFile);
         }
+    }
 
-        Map<String, List<IndexNode>> hashToNodes = createHashToNodes(index);
+    private void executeDeduplicateIndex(Path base, FileIndex index, StandardFileIndexStrategy indexStrategy) throws IOException {
+        List<DuplicateGroup> duplicates = createDuplicateFinder().findDuplicates(index);
 
         long hardLinkCount = 0;
         long savedBytes = 0;
-        for (Map.Entry<String, List<IndexNode>> entry : hashToNodes.entrySet()) {
-            if (entry.getValue().size() < 2) {
-                continue;
-            }
-            Iterator<IndexNode> it = entry.getValue().iterator();
+        for (DuplicateGroup duplicate : duplicates) {
+            Iterator<IndexNode> it = duplicate.getNodes(index).iterator();
 
             Path existingPath = base.resolve(it.next().getRelativePath());
             PathInfo existingInfo = indexStrategy.createPathInfo(existingPath);
@@ -178,21 +326,16 @@ public class FileIndexCli {
             return;
         }
 
-        Map<String, List<IndexNode>> hashToNodes = createHashToNodes(index);
-        Map<String, List<IndexNode>> otherHashToNodes = createHashToNodes(otherIndex);
+        List<DuplicateGroup> duplicates = createDuplicateFinder().findDuplicates(index, otherIndex);
 
         long hardLinkCount = 0;
         long savedBytes = 0;
-        for (Map.Entry<String, List<IndexNode>> entry : hashToNodes.entrySet()) {
-            List<IndexNode> otherNodes = otherHashToNodes.get(entry.getKey());
-            if (otherNodes == null) {
-                continue;
-            }
-            IndexNode targetNode = entry.getValue().get(0);
+        for (DuplicateGroup duplicate : duplicates) {
+            IndexNode targetNode = duplicate.getNodes(index).get(0);
             Path existing = base.resolve(targetNode.getRelativePath());
             PathInfo existingInfo = indexStrategy.createPathInfo(existing);
 
-            for (IndexNode otherNode : otherNodes) {
+            for (IndexNode otherNode : duplicate.getNodes(otherIndex)) {
                 Path link = otherIndex.getBase().resolve(otherNode.getRelativePath());
                 PathInfo linkInfo = indexStrategy.createPathInfo(link);
                 try {
@@ -207,22 +350,25 @@ public class FileIndexCli {
             }
         }
         LOG.info("Deduplicated {} files with hard links. Saved {}", hardLinkCount, ByteUtil.toHumanSize(savedBytes));
-    }
 
-    private FileIndex readOtherIndex(StandardFileIndexStrategy indexStrategy) throws IOException {
-        Path otherBase = Paths.get(cmd.getOptionValue("other-dir"));
-        Path otherIndexFile;
-        if (cmd.hasOption("other-index")) {
-            otherIndexFile = Paths.get(cmd.getOptionValue("other-index"));
-        } else if (cmd.hasOption("I")) {
-            String indexName = otherBase.getFileName() + DEFAULT_INDEX_EXT;
-            otherIndexFile = Paths.get(cmd.getOptionValue("I")).resolve(indexName);
-        } else {
-            System.err.println("Missing option --other-index or -I");
-            System.exit(1);
-            return null;
+        // Keep the fingerprints and content hashes of the other index for the next run
+        if (cmd.hasOption("integrity")) {
+            ensureUniversalHashOfRoot(otherIndex);
+        }
+        if (!cmd.hasOption('n')) {
+            writeIndex(otherIndex, getOtherIndexFile());
         }
+    }
+
+    private DuplicateFinder createDuplicateFinder() throws IOException {
+        int threads = getIntegrityThreads();
+        FileContentHashCalculator calculator = new FileContentHashCalculator(threads, threads * 4, getIntegrityAlgorithm(), false, getHashCache());
+        return new DuplicateFinder(calculator, getIntegrityAlgorithm());
+    }
 
+    private FileIndex readOtherIndex(StandardFileIndexStrategy indexStrategy) throws IOException {
+        Path otherBase = getOtherBase();
+        Path otherIndexFile = getOtherIndexFile();
         if (!Files.isDirectory(otherBase)) {
             System.err.println("Other index directory must be an directory: " + otherBase);
             System.exit(1);
@@ -235,31 +381,20 @@ public class FileIndexCli {
         return readIndex(otherBase, otherIndexFile, indexStrategy);
     }
 
-    private Map<String, List<IndexNode>> createHashToNodes(FileIndex index) {
-        LOG.debug("Building map of file hashes");
-        List<IndexNode> nodes = index.getRoot().stream()
-                .filter(IndexNode::isFile)
-                .filter(n -> !n.isLink())
-                .filter(n -> n.hasExtensionType(FILE_HASH.value))
-                .filter(n -> n.hasExtensionType(BASIC_FILE.value))
-                .filter(n -> (( BasicFileIndexExtension) n.getExtensionByType(BASIC_FILE.value)).getSize() > 0)
-                .collect(Collectors.toList());
-        LOG.debug("Found {} non empty files with content hashes", nodes.size());
-
-        Map<String, List<IndexNode>> hashToNodes = new HashMap<>(nodes.size());
-        long duplicates = 0;
-        for (IndexNode node : nodes) {
-            FileContentHashIndexExtension hashIndexExtension = (FileContentHashIndexExtension) node.getExtensionByType(FILE_HASH.value);
-            String hash = HashUtil.toHex(hashIndexExtension.getData());
-            if (!hashToNodes.containsKey(hash)) {
-                hashToNodes.put(hash, new LinkedList<>());
-            } else {
-                duplicates++;
-            }
-            hashToNodes.get(hash).add(node);
+    private Path getOtherBase() {
+        return Paths.get(cmd.getOptionValue("other-dir"));
+    }
+
+    private Path getOtherIndexFile() {
+        if (cmd.hasOption("other-index")) {
+            return Paths.get(cmd.getOptionValue("other-index"));
+        } else if (cmd.hasOption("I")) {
+            String indexName = getOtherBase().getFileName() + DEFAULT_INDEX_EXT;
+            return Paths.get(cmd.getOptionValue("I")).resolve(indexName);
         }
-        LOG.debug("Found {} duplicates of {} files", duplicates, nodes.size());
-        return hashToNodes;
+        System.err.println("Missing option --other-index or -I");
+        System.exit(1);
+        return null;
     }
 
     private void executeCreateIndex(Path base, Path indexFile, StandardFileIndexStrategy indexStrategy) throws IOException, java.text.ParseException {
@@ -272,8 +407,17 @@ public class FileIndexCli {
         writeIndex(index, indexFile);
     }
 
-    private void executeUpdateIndex(Path base, StandardFileIndexStrategy indexStrategy, FileIndex index) throws IOException {
-        FileIndex currentIndex = buildIndexFromPath(base, indexStrategy);
+    private void executeUpdateIndex(Path base, Path indexFile, StandardFileIndexStrategy indexStrategy, FileIndex index) throws IOException {
+        FileIndex currentIndex;
+        if (cmd.hasOption("incremental")) {
+            currentIndex = buildIncrementalIndexFromPath(base, indexFile, indexStrategy, index);
+        } else {
+            currentIndex = buildIndexFromPath(base, indexStrategy);
+        }
+        long adoptedCount = index.adoptModifiedTimes(currentIndex);
+        if (adoptedCount > 0) {
+            LOG.info("Adopted modified times of {} unchanged files of index format version 1", adoptedCount);
+        }
         IndexChange changes = getIndexChanges(index, currentIndex, indexStrategy);
 
         if (cmd.hasOption('n')) {
@@ -292,98 +436,73 @@ public class FileIndexCli {
     }
 
     private void calculateHashes(Path indexFile, FileIndex index) throws IOException, java.text.ParseException {
+        // Checkpoints and the shutdown hook write versions of the index while hashes are attached
+        index.setCopyOnWrite(true);
         if (cmd.hasOption("integrity")) {
             updateContentHash(index, indexFile);
             ensureUniversalHashOfRoot(index);
+        } else {
+            removeDirtyUniversalHashes(index);
         }
     }
 
+    private void removeDirtyUniversalHashes(FileIndex index) {
+        DirtyDirectoryTracker dirtyTracker = index.getDirtyTracker();
+        index.modify(editor -> {
+            for (IndexNode dir : dirtyTracker.getDirty()) {
+                IndexNode node = editor.edit(dir.getRelativePath());
+                if (node != null) {
+                    node.removeExtensionType(UNIVERSAL_HASH.value);
+                }
+            }
+            dirtyTracker.clear();
+        });
+    }
+
     private void updateContentHash(FileIndex index, Path indexFile) throws IOException, java.text.ParseException {
         AtomicBoolean done = new AtomicBoolean();
         addShutdownHook(done, () -> {
-            ensureUniversalHashOfRoot(index);
-            writeIndex(index, indexFile);
+            synchronized (index) {
+                ensureUniversalHashOfRoot(index);
+                writeIndex(index, indexFile);
+            }
+            writeHashCache();
             return null;
         });
-        calculateFileContentHashes(index);
+        try (HashCheckpointer checkpointer = createHashCheckpointer(index, indexFile)) {
+            calculateFileContentHashes(index, checkpointer);
+        }
         done.set(true);
     }
 
-    private void calculateFileContentHashes(FileIndex index) throws IOException, java.text.ParseException {
-        long missingHashBytes = getMissingHashBytes(index);
-        LOG.info("Initializing file content hashes of {}. This might take some time!", ByteUtil.toHumanSize(missingHashBytes));
-
-        Predicate<IndexNode> hashFileFilter = createHashFileFilter();
-
-        Path base = index.getBase();
-        IndexNodeWalker.walk(index.getRoot(), new Visitor<IndexNode>() {
-
-            long bytesHashed = 0;
-            long lastLogBytesHashed = 0;
-            long logInterval = (1 << 30); // 1GB
-
-            @Override
-            public VisitorResult visitFile(IndexNode file) throws IOException {
-                if (!requiresFileHash(file) || !hashFileFilter.test(file)) {
-                    return VisitorResult.SKIP;
-                }
-                Path path = base.resolve(file.getRelativePath());
-                try {
-                    IndexExtension extension = FileContentHashIndexExtension.create(path);
-                    file.addExtension(extension);
-                    resetUniversalHashToRoot(file.getParent());
-                    logProgress(file);
-                } catch (IOException | IllegalArgumentException e) {
-                    LOG.warn("Could not create content hash of " + path, e);
-                }
-                return super.visitFile(file);
-            }
-
-            private void logProgress(IndexNode file) {
-                bytesHashed += getFileSize(file);
-                if (lastLogBytesHashed + logInterval < bytesHashed) {
-                    LOG.info("Created content hashes of {}", ByteUtil.toHumanSize(bytesHashed));
-                    lastLogBytesHashed += logInterval;
-                }
-            }
-
-            private long getFileSize(IndexNode file) {
-                IndexExtension extension = file.getExtensionByType(BASIC_FILE.value);
-                if (extension != null && extension instanceof BasicFileIndexExtension) {
-                    return ((BasicFileIndexExtension) extension).getSize();
-                }
-                return 0;
-            }
+    private HashCheckpointer createHashCheckpointer(FileIndex index, Path indexFile) throws java.text.ParseException {
+        long checkpointSize = cmd.hasOption("checkpoint-size") ? ByteUtil.toByte(cmd.getOptionValue("checkpoint-size")) : 0;
+        long checkpointInterval = getCheckpointInterval();
+        if (cmd.hasOption('n')) {
+            checkpointSize = 0;
+            checkpointInterval = 0;
+        }
+        return new HashCheckpointer(checkpointSize, checkpointInterval, root -> writeIndex(new FileIndex(index.getBase(), root), indexFile));
+    }
 
-            private boolean requiresFileHash(IndexNode file) {
-                return (file.isFile() || file.isLink()) && !file.hasExtensionType(FILE_HASH.value);
-            }
+    private void calculateFileContentHashes(FileIndex index, HashProgressListener progressListener) throws IOException, java.text.ParseException {
+        ContentHashAlgorithm algorithm = getIntegrityAlgorithm();
+        long missingHashBytes = index.getMissingHashBytes(algorithm);
+        int threads = getIntegrityThreads();
+        LOG.info("Initializing {} file content hashes of {} with {} threads. This might take some time!", algorithm.getName(), ByteUtil.toHumanSize(missingHashBytes), threads);
 
-            private void resetUniversalHashToRoot(IndexNode dir) {
-                if (dir == null) {
-                    return;
-                }
-                if (dir.hasExtensionType(UNIVERSAL_HASH.value)) {
-                    dir.removeExtensionType(UNIVERSAL_HASH.value);
-                    resetUniversalHashToRoot(dir.getParent());
-                }
-            }
-        });
-        LOG.debug("Initialized file content hashes");
-    }
+        Predicate<IndexNode> hashFileFilter = createHashFileFilter();
 
-    private long getMissingHashBytes(FileIndex index) {
-        return index.getRoot()
-                    .stream()
-                    .filter(IndexNode::isFile)
-                    .filter(n -> !n.hasExtensionType(ExtensionType.FILE_HASH.value))
-                    .filter(n -> n.hasExtensionType(ExtensionType.BASIC_FILE.value))
-                    .map(n -> ((BasicFileIndexExtension) n.getExtensionByType(BASIC_FILE.value)).getSize())
-                    .reduce(0L, (a, b) -> a + b);
+        FileContentHashCalculator calculator = new FileContentHashCalculator(threads, threads * 4, algorithm, cmd.hasOption("chunks"), getHashCache());
+        HashStatistics statistics = calculator.calculate(index, hashFileFilter, progressListener);
+        LOG.info("Initialized file content hashes: {}", statistics);
+        if (hashCache != null) {
+            LOG.info("Used content hash cache: {}", hashCache);
+        }
     }
 
     private Predicate<IndexNode> createHashFileFilter() throws java.text.ParseException {
-        long maxFileSize = cmd.hasOption('M') ? ByteUtil.toByte(cmd.getOptionValue('M')) : 0;
+        long maxFileSize = cmd.hasOption("integrity-max-size") ? ByteUtil.toByte(cmd.getOptionValue("integrity-max-size")) : 0;
         return n -> {
             BasicFileIndexExtension extension = (BasicFileIndexExtension) n.getExtensionByType(BASIC_FILE.value);
             if (extension == null) {
@@ -405,6 +524,16 @@ public class FileIndexCli {
         return index;
     }
 
+    private IndexBackend readIndexBackend(Path base, Path indexFile, IndexNodeFactory nodeFactory) throws IOException {
+        if (!cmd.hasOption("off-heap")) {
+            return readIndex(base, indexFile, nodeFactory);
+        }
+        LOG.debug("Reading existing file index from {} into off-heap columns", indexFile);
+        ColumnarFileIndex index = ColumnarFileIndex.readFromPath(base, indexFile, getIntegrityAlgorithm(), nodeFactory);
+        LOG.debug("Read index with {} files with {} into {} off-heap memory", index.getTotalFileCount(), ByteUtil.toHumanSize(index.getTotalFileSize()), ByteUtil.toHumanSize(index.getOffHeapSize()));
+        return index;
+    }
+
     private void addShutdownHook(AtomicBoolean done, Callable<Void> hook) {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
@@ -426,13 +555,101 @@ public class FileIndexCli {
     }
 
     private FileIndex buildIndexFromPath(Path base, PathInfoFilter pathInfoFilter, IndexNodePathFactory nodeFactory) throws IOException {
-        LOG.debug("Building file index from path {}", base.toAbsolutePath());
-        FileIndex index = FileIndex.create(base, pathInfoFilter, nodeFactory);
+        int scanThreads = getScanThreads();
+        LOG.debug("Building file index from path {} with {} threads", base.toAbsolutePath(), scanThreads);
+        FileIndex index = FileIndex.create(base, pathInfoFilter, nodeFactory, scanThreads);
         LOG.info("Built index with {} files of {}", index.getTotalFileCount(), ByteUtil.toHumanSize(index.getTotalFileSize()));
         return index;
     }
 
-    private void writeIndex(FileIndex index, Path indexFile) throws IOException {
+    private FileIndex buildIncrementalIndexFromPath(Path base, Path indexFile, StandardFileIndexStrategy indexStrategy, FileIndex index) throws IOException {
+        long trustedBefore = getTrustedTimestamp(index, indexFile);
+        IncrementalPathInfoLister pathLister = new IncrementalPathInfoLister(indexStrategy, base, index.getRoot(), trustedBefore, cmd.hasOption("trust-unchanged-dirs"));
+
+        LOG.debug("Building file index incrementally from path {}. Trust directories modified before {}", base.toAbsolutePath(), new Date(trustedBefore));
+        FileIndex currentIndex = FileIndex.create(base, indexStrategy, pathLister, getScanThreads());
+        LOG.info("Built index with {} files of {}. Reused {} and read {} directories. Reused attributes of {} files", currentIndex.getTotalFileCount(), ByteUtil.toHumanSize(currentIndex.getTotalFileSize()), pathLister.getReusedDirCount(), pathLister.getListedDirCount(), pathLister.getReusedFileCount());
+        return currentIndex;
+    }
+
+    /**
+     * The latest modification time of the stored index is a lower bound of its scan time in the
+     * clock of the file system. Directories modified within the timestamp granularity before are
+     * suspect and must be read again
+     */
+    private long getTrustedTimestamp(FileIndex index, Path indexFile) throws IOException {
+        long latestModifiedTime = index.getRoot().stream()
+                .filter(n -> n.hasExtensionType(BASIC_FILE.value))
+                .mapToLong(n -> ((BasicFileIndexExtension) n.getExtensionByType(BASIC_FILE.value)).getModifiedTime())
+                .filter(time -> time != BasicFileIndexExtension.UNKNOWN_TIME)
+                .max()
+                .orElse(0L);
+        long indexModifiedTime = Files.getLastModifiedTime(indexFile).toMillis();
+        return Math.min(latestModifiedTime, indexModifiedTime) - getTimestampGranularity();
+    }
+
+    private long getTimestampGranularity() {
+        if (!cmd.hasOption("timestamp-granularity")) {
+            return TIMESTAMP_GRANULARITY;
+        }
+        try {
+            return Math.max(0, Long.parseLong(cmd.getOptionValue("timestamp-granularity"))) * 1000;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid timestamp granularity. Use default of " + (TIMESTAMP_GRANULARITY / 1000) + " seconds");
+            LOG.warn("Invalid timestamp granularity", e);
+            return TIMESTAMP_GRANULARITY;
+        }
+    }
+
+    private ContentHashCache getHashCache() throws IOException {
+        int cacheSize = getHashCacheSize();
+        if (hashCache != null || cacheSize == 0) {
+            return hashCache;
+        }
+        Path cacheFile = getHashCacheFile();
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                hashCache = ContentHashCache.readFromPath(cacheFile, cacheSize);
+            } catch (IOException e) {
+                LOG.warn("Could not read content hash cache {}. Use empty cache", cacheFile, e);
+                hashCache = new ContentHashCache(cacheSize);
+            }
+        } else {
+            hashCache = new ContentHashCache(cacheSize);
+        }
+        return hashCache;
+    }
+
+    private synchronized void writeHashCache() throws IOException {
+        if (hashCache == null || cmd.hasOption('n')) {
+            return;
+        }
+        Path cacheFile = getHashCacheFile().toAbsolutePath();
+        Files.createDirectories(cacheFile.getParent());
+        hashCache.writeToPath(cacheFile);
+    }
+
+    private Path getHashCacheFile() {
+        if (cmd.hasOption("hash-cache")) {
+            return Paths.get(cmd.getOptionValue("hash-cache"));
+        }
+        return getIndexDir().resolve(DEFAULT_HASH_CACHE);
+    }
+
+    private int getHashCacheSize() {
+        if (!cmd.hasOption("hash-cache-size")) {
+            return HASH_CACHE_SIZE;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(cmd.getOptionValue("hash-cache-size")));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid hash cache size. Use default " + HASH_CACHE_SIZE);
+            LOG.warn("Invalid hash cache size", e);
+            return HASH_CACHE_SIZE;
+        }
+    }
+
+    private synchronized void writeIndex(FileIndex index, Path indexFile) throws IOException {
         LOG.debug("Writing file index data to {} with {} file of {}", indexFile, index.getTotalFileCount(), ByteUtil.toHumanSize(index.getTotalFileSize()));
 
         Path tmp = null;
@@ -449,21 +666,26 @@ public class FileIndexCli {
     }
 
     private void ensureUniversalHashOfRoot(FileIndex index) throws IOException {
-        IndexNode root = index.getRoot();
-        if (!root.hasExtensionType(UNIVERSAL_HASH.value)) {
-            UniversalHashIndexExtension extension = UniversalHashIndexExtension.create(root);
-            LOG.debug("Root hash is {}", HashUtil.toHex(extension.getData()));
-            root.addExtension(extension);
+        ContentHashAlgorithm algorithm = getIntegrityAlgorithm();
+        IndexExtension rootHash = index.getRoot().getExtensionByType(UNIVERSAL_HASH.value);
+        DirtyDirectoryTracker dirtyTracker = index.getDirtyTracker();
+        if (rootHash == null || rootHash.getDataLength() != algorithm.getHashLength() || dirtyTracker.hasDirty()) {
+            UniversalHashCalculator calculator = new UniversalHashCalculator(getIntegrityThreads(), algorithm, dirtyTracker);
+            UniversalHashIndexExtension extension = calculator.calculate(index);
+            LOG.debug("Recomputed {} directory hashes. Root hash is {}", calculator.getRecomputedCount(), HashUtil.toHex(extension.getData()));
         }
     }
 
-    private Path getIndexFile(Path base) throws IOException {
-        Path indexDir;
+    private Path getIndexDir() {
         if (cmd.hasOption("I")) {
-            indexDir = Paths.get(cmd.getOptionValue("I"));
+            return Paths.get(cmd.getOptionValue("I"));
         } else {
-            indexDir = Paths.get(System.getProperty("user.home")).resolve(DEFAULT_INDEX_DIR);
+            return Paths.get(System.getProperty("user.home")).resolve(DEFAULT_INDEX_DIR);
         }
+    }
+
+    private Path getIndexFile(Path base) throws IOException {
+        Path indexDir = getIndexDir();
 
         Path indexFile;
         if (cmd.hasOption("i")) {
@@ -509,10 +731,20 @@ public class FileIndexCli {
         changes.getChanges()
                 .stream()
                 .sorted((a, b) -> a.getRelativePath().compareTo(b.getRelativePath()))
-                .map(c -> getChangeIcon(c) + "  " + c.getRelativePath() + (c.getChange() == IndexNodeChange.Change.MOVED ? " -> " + c.getUpdate().getRelativePath() : ""))
+                .map(c -> getChangeIcon(c) + "  " + c.getRelativePath() + getChangeDetail(c))
                 .forEach(System.out::println);
     }
 
+    private String getChangeDetail(IndexNodeChange change) {
+        if (change.getChange() == IndexNodeChange.Change.MOVED) {
+            return " -> " + change.getUpdate().getRelativePath();
+        } else if (change.getChange() == IndexNodeChange.Change.MODIFIED && change.getOrigin().hasExtensionType(CHUNK_HASH.value) && change.getUpdate().hasExtensionType(CHUNK_HASH.value)) {
+            long changedBytes = change.getChangedRanges().stream().mapToLong(ByteRange::getLength).sum();
+            return " (" + ByteUtil.toHumanSize(changedBytes) + " changed)";
+        }
+        return "";
+    }
+
     private String getChangeIcon(IndexNodeChange change) {
         if (change.getChange() == IndexNodeChange.Change.CREATED) {
             return "N" + (change.getUpdate().isDirectory() ? "D" : " ");
@@ -525,6 +757,58 @@ public class FileIndexCli {
         }
     }
 
+    private int getScanThreads() {
+        if (!cmd.hasOption("scan-threads")) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(cmd.getOptionValue("scan-threads")));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid scan thread count. Use single thread");
+            LOG.warn("Invalid scan thread count", e);
+            return 1;
+        }
+    }
+
+    private int getIntegrityThreads() {
+        if (!cmd.hasOption("integrity-threads")) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(cmd.getOptionValue("integrity-threads")));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid integrity thread count. Use single thread");
+            LOG.warn("Invalid integrity thread count", e);
+            return 1;
+        }
+    }
+
+    private long getCheckpointInterval() {
+        if (!cmd.hasOption("checkpoint-interval")) {
+            return CHECKPOINT_INTERVAL;
+        }
+        try {
+            return Math.max(0, Long.parseLong(cmd.getOptionValue("checkpoint-interval"))) * 1000;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid checkpoint interval. Use default of " + (CHECKPOINT_INTERVAL / 1000) + " seconds");
+            LOG.warn("Invalid checkpoint interval", e);
+            return CHECKPOINT_INTERVAL;
+        }
+    }
+
+    private ContentHashAlgorithm getIntegrityAlgorithm() {
+        if (!cmd.hasOption("integrity-algorithm")) {
+            return ContentHashAlgorithm.SHA1;
+        }
+        try {
+            return ContentHashAlgorithm.fromName(cmd.getOptionValue("integrity-algorithm"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid integrity algorithm. Use default " + ContentHashAlgorithm.SHA1.getName());
+            LOG.warn("Invalid integrity algorithm", e);
+            return ContentHashAlgorithm.SHA1;
+        }
+    }
+
     private long getChangeOutputLimit() {
         if (!cmd.hasOption("output-limit")) {
             return CHANGE_OUTPUT_LIMIT;
@@ -589,6 +873,36 @@ public class FileIndexCli {
                 .hasArg(false)
                 .desc("Do not perform any changes")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("hash-cache")
+                .hasArg(true)
+                .desc("Cache file of content hashes by inode, size and modification time. Default is ~/" + DEFAULT_INDEX_DIR + "/" + DEFAULT_HASH_CACHE)
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("hash-cache-size")
+                .hasArg(true)
+                .desc("Maximum entries of the content hash cache. Use 0 to disable. Default is " + HASH_CACHE_SIZE)
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("incremental")
+                .hasArg(false)
+                .desc("Update file index incrementally. Entries of directories with unchanged timestamps are taken from the stored index instead of reading the directory")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("timestamp-granularity")
+                .hasArg(true)
+                .desc("Timestamp granularity of the filesystem in seconds for --incremental. Directories modified within this time of the last scan are read again. Default is " + (TIMESTAMP_GRANULARITY / 1000))
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("trust-unchanged-dirs")
+                .hasArg(false)
+                .desc("Take also the file attributes of directories with unchanged timestamps from the stored index for --incremental. Files modified in place are detected only after their directory changes")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("scan-threads")
+                .hasArg(true)
+                .desc("Number of threads to scan the filesystem in parallel. Default is 1")
+                .build());
         options.addOption(Option.builder()
                 .longOpt("output-limit")
                 .hasArg(true)
@@ -604,6 +918,51 @@ public class FileIndexCli {
                 .hasArg(false)
                 .desc("Create content hashes")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("integrity-threads")
+                .hasArg(true)
+                .desc("Number of threads to hash files and directories for --integrity. Default is 1")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("integrity-algorithm")
+                .hasArg(true)
+                .desc("Hash algorithm of content hashes: sha1, sha256 or xxh64. xxh64 is fast but not collision resistant. Default is sha1")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("checkpoint-interval")
+                .hasArg(true)
+                .desc("Seconds between index checkpoints while creating content hashes. Use 0 to disable. Default is " + (CHECKPOINT_INTERVAL / 1000))
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("checkpoint-size")
+                .hasArg(true)
+                .desc("Hashed content size between index checkpoints like 10gb. Default is disabled")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("chunks")
+                .hasArg(false)
+                .desc("Create content defined chunk hashes with --integrity to detect changed byte ranges of modified files")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("verify")
+                .hasArg(false)
+                .desc("Verify stored content hashes against the file content and report mismatches of files and directory hashes")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("verify-bandwidth")
+                .hasArg(true)
+                .desc("Read bandwidth per second of --verify and --scrub like 50mb. Default is unlimited")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("scrub")
+                .hasArg(true)
+                .desc("Verify content hashes of the least recently verified files up to given percent of content size like 5")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("scrub-time")
+                .hasArg(true)
+                .desc("Maximum seconds to verify files of --scrub. Default is unlimited")
+                .build());
         options.addOption(Option.builder()
                 .longOpt("diff")
                 .hasArg(false)
@@ -614,10 +973,15 @@ public class FileIndexCli {
                 .hasArg(false)
                 .desc("Same as --diff but shows also files of created or removed directories")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("off-heap")
+                .hasArg(false)
+                .desc("Read indices into off-heap columns for --diff of very large indices. Other commands are not supported")
+                .build());
         options.addOption(Option.builder()
                 .longOpt("deduplicate")
                 .hasArg(false)
-                .desc("Deduplicate files via hard links based on the content hashes. If --other-dir is set the deduplication is performed from primary dir to the other dir. Requires indices with --integrity option")
+                .desc("Deduplicate files via hard links based on the content hashes. If --other-dir is set the deduplication is performed from primary dir to the other dir. Content hashes are only created for files of equal size and equal head and tail fingerprint")
                 .build());
         options.addOption(Option.builder()
                 .longOpt("other-dir")
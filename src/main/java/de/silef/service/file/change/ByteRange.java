@@ -0,0 +1,50 @@
+package de.silef.service.file.change;
+
+/**
+ * Range of bytes within a file
+ */
+public class ByteRange {
+
+    private final long offset;
+
+    private final long length;
+
+    public ByteRange(long offset, long length) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getEnd() {
+        return offset + length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ByteRange that = (ByteRange) o;
+
+        return offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (offset ^ (offset >>> 32));
+        result = 31 * result + (int) (length ^ (length >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + offset + ", " + getEnd() + ")";
+    }
+}
@@ -1,12 +1,14 @@
 package de.silef.service.file.change;
 
-import de.silef.service.file.extension.ExtensionType;
-import de.silef.service.file.extension.FileContentHashIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.node.CopyOnWriteEditor;
+import de.silef.service.file.node.DirtyDirectoryTracker;
 import de.silef.service.file.node.IndexNode;
-import de.silef.service.file.util.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
@@ -59,23 +61,58 @@ public class IndexChange {
         changes.addAll(removeExpanded);
     }
 
+    /**
+     * Detect moves by content hashes of the algorithm which is present on most created and
+     * removed nodes. Indices might be hashed by any content hash algorithm, so the algorithm is
+     * taken from the nodes instead of assuming one
+     */
     public void detectMoves() {
+        ContentHashAlgorithm algorithm = findContentHashAlgorithm();
+        if (algorithm != null) {
+            detectMoves(algorithm);
+        }
+    }
+
+    /**
+     * @return Algorithm with most hashes on both sides of created and removed nodes or null if
+     * the nodes of one side have no content hashes
+     */
+    private ContentHashAlgorithm findContentHashAlgorithm() {
+        List<IndexNodeChange> created = getCreated();
+        List<IndexNodeChange> removed = getRemoved();
+        ContentHashAlgorithm result = null;
+        long resultCount = 0;
+        for (ContentHashAlgorithm algorithm : ContentHashAlgorithm.values()) {
+            byte type = algorithm.getExtensionType().value;
+            long createdCount = created.stream().filter(c -> c.getUpdate().hasExtensionType(type)).count();
+            long removedCount = removed.stream().filter(c -> c.getOrigin().hasExtensionType(type)).count();
+            long count = Math.min(createdCount, removedCount);
+            if (count > resultCount) {
+                result = algorithm;
+                resultCount = count;
+            }
+        }
+        return result;
+    }
+
+    public void detectMoves(ContentHashAlgorithm algorithm) {
+        byte type = algorithm.getExtensionType().value;
         detectMoves(node -> {
-            FileContentHashIndexExtension hash = (FileContentHashIndexExtension) node.getExtensionByType(ExtensionType.FILE_HASH.value);
+            IndexExtension hash = node.getExtensionByType(type);
             if (hash != null) {
-                return HashUtil.toHex(hash.getData());
+                return hash.getDataView();
             }
             return null;
         });
     }
 
-    private void detectMoves(Function<IndexNode, String> keyGenerator) {
+    private void detectMoves(Function<IndexNode, ByteBuffer> keyGenerator) {
         List<IndexNodeChange> oldChanges = new LinkedList<>();
         List<IndexNodeChange> moves = new LinkedList<>();
 
-        Map<String, List<IndexNodeChange>> keyToCreated = createHashToChanges(getCreated(), keyGenerator);
+        Map<ByteBuffer, List<IndexNodeChange>> keyToCreated = createHashToChanges(getCreated(), keyGenerator);
         for (IndexNodeChange removed : getRemoved()) {
-            String key = keyGenerator.apply(removed.getOrigin());
+            ByteBuffer key = keyGenerator.apply(removed.getOrigin());
             if (!keyToCreated.containsKey(key)) {
                 continue;
             }
@@ -95,10 +132,10 @@ public class IndexChange {
         changes.addAll(moves);
     }
 
-    private Map<String, List<IndexNodeChange>> createHashToChanges(List<IndexNodeChange> changes, Function<IndexNode, String> keyGenerator) {
-        Map<String, List<IndexNodeChange>> keyToCreated = new HashMap<>(changes.size());
+    private Map<ByteBuffer, List<IndexNodeChange>> createHashToChanges(List<IndexNodeChange> changes, Function<IndexNode, ByteBuffer> keyGenerator) {
+        Map<ByteBuffer, List<IndexNodeChange>> keyToCreated = new HashMap<>(changes.size());
         for (IndexNodeChange change : changes) {
-            String key = keyGenerator.apply(change.getUpdate());
+            ByteBuffer key = keyGenerator.apply(change.getUpdate());
             if (key == null) {
                 continue;
             }
@@ -125,6 +162,17 @@ public class IndexChange {
     }
 
     public void apply() {
+        apply(new DirtyDirectoryTracker());
+    }
+
+    /**
+     * Applies the changes to the origin tree. Directories which are touched by a change are marked
+     * in the dirty tracker. Moves are applied after all other changes, so the target directory of
+     * a move might be a created directory
+     *
+     * @param dirtyTracker Tracker of changed directories
+     */
+    public void apply(DirtyDirectoryTracker dirtyTracker) {
         if (!hasChanges()) {
             return;
         }
@@ -132,6 +180,7 @@ public class IndexChange {
         List<IndexNodeChange> sortedChanges = changes.stream()
                 .sorted(orderToRemovedModifiedCreated())
                 .collect(Collectors.toList());
+        IndexNode root = getRoot(sortedChanges.get(0).getOrigin());
         for (IndexNodeChange nodeChange : sortedChanges) {
             IndexNode origin = nodeChange.getOrigin();
             IndexNode update = nodeChange.getUpdate();
@@ -141,12 +190,133 @@ public class IndexChange {
                     throw new IllegalArgumentException("Origin node for created must be a directory");
                 }
                 origin.addChild(update);
+                dirtyTracker.markTree(update);
             } else if (nodeChange.getChange() == IndexNodeChange.Change.MODIFIED) {
                 origin.setExtensions(update.getExtensions());
+                dirtyTracker.markDirty(origin);
             } else if (nodeChange.getChange() == IndexNodeChange.Change.REMOVED) {
+                dirtyTracker.markDirty(origin.getParent());
                 origin.getParent().removeChildByName(origin.getName());
             }
         }
+        for (IndexNodeChange nodeChange : getMoved()) {
+            applyMove(root, nodeChange.getOrigin(), nodeChange.getUpdate(), dirtyTracker);
+        }
+    }
+
+    /**
+     * Apply the changes to a new version of the tree by path copying. The changed nodes and their
+     * ancestors are copied, all other nodes are shared. The given tree is not modified, so it
+     * can be read while the changes are applied.
+     *
+     * @param root Root of the tree the changes were created from
+     * @param dirtyTracker Tracker of changed directories of the new version
+     * @return Root of the new version
+     */
+    public IndexNode applyCopyOnWrite(IndexNode root, DirtyDirectoryTracker dirtyTracker) {
+        if (!hasChanges()) {
+            return root;
+        }
+
+        List<IndexNodeChange> sortedChanges = changes.stream()
+                .sorted(orderToRemovedModifiedCreated())
+                .collect(Collectors.toList());
+        CopyOnWriteEditor editor = new CopyOnWriteEditor(root);
+        for (IndexNodeChange nodeChange : sortedChanges) {
+            IndexNode origin = nodeChange.getOrigin();
+            IndexNode update = nodeChange.getUpdate();
+
+            if (nodeChange.getChange() == IndexNodeChange.Change.CREATED ) {
+                if (!origin.isDirectory()) {
+                    throw new IllegalArgumentException("Origin node for created must be a directory");
+                }
+                IndexNode dir = editor.edit(origin.getRelativePath());
+                if (dir == null) {
+                    LOG.warn("Directory of created {} not found. Creation is skipped", update.getRelativePath());
+                    continue;
+                }
+                dir.removeChildByName(update.getName());
+                dir.addChild(update);
+                dirtyTracker.markTree(update);
+            } else if (nodeChange.getChange() == IndexNodeChange.Change.MODIFIED) {
+                IndexNode node = editor.edit(origin.getRelativePath());
+                if (node != null) {
+                    node.setExtensions(update.getExtensions());
+                    dirtyTracker.markDirty(node);
+                }
+            } else if (nodeChange.getChange() == IndexNodeChange.Change.REMOVED) {
+                removeCopyOnWrite(editor, origin, dirtyTracker);
+            }
+        }
+        for (IndexNodeChange nodeChange : getMoved()) {
+            IndexNode update = nodeChange.getUpdate();
+            if (!removeCopyOnWrite(editor, nodeChange.getOrigin(), dirtyTracker)) {
+                continue;
+            }
+            IndexNode targetDir = editor.edit(update.getParent().getRelativePath());
+            if (targetDir == null || !targetDir.isDirectory()) {
+                LOG.warn("Target directory of moved {} not found. Move is applied as removal", update.getRelativePath());
+                continue;
+            }
+            targetDir.removeChildByName(update.getName());
+            targetDir.addChild(update);
+            dirtyTracker.markTree(update);
+        }
+        dirtyTracker.rebase(editor);
+        return editor.getRoot();
+    }
+
+    private boolean removeCopyOnWrite(CopyOnWriteEditor editor, IndexNode origin, DirtyDirectoryTracker dirtyTracker) {
+        if (origin.getParent() == null) {
+            return false;
+        }
+        IndexNode parent = editor.edit(origin.getParent().getRelativePath());
+        if (parent == null) {
+            return false;
+        }
+        dirtyTracker.markDirty(parent);
+        IndexNode removed = parent.removeChildByName(origin.getName());
+        if (removed != null) {
+            dirtyTracker.unmarkTree(removed);
+        }
+        return true;
+    }
+
+    private IndexNode getRoot(IndexNode node) {
+        while (node.getParent() != null) {
+            node = node.getParent();
+        }
+        return node;
+    }
+
+    private void applyMove(IndexNode root, IndexNode origin, IndexNode update, DirtyDirectoryTracker dirtyTracker) {
+        IndexNode originParent = origin.getParent();
+        if (originParent == null) {
+            return;
+        }
+        IndexNode targetDir = findNode(root, update.getParent().getRelativePath());
+
+        dirtyTracker.markDirty(originParent);
+        originParent.removeChildByName(origin.getName());
+        if (targetDir == null || !targetDir.isDirectory()) {
+            LOG.warn("Target directory of moved {} not found. Move is applied as removal", update.getRelativePath());
+            return;
+        }
+        if (targetDir.getChildByName(update.getName()) != update) {
+            targetDir.addChild(update);
+        }
+        dirtyTracker.markTree(update);
+    }
+
+    private IndexNode findNode(IndexNode root, Path relativePath) {
+        IndexNode node = root;
+        for (Path name : relativePath) {
+            if (node == null || name.toString().isEmpty()) {
+                continue;
+            }
+            node = node.getChildByName(name.toString());
+        }
+        return node;
     }
 
     private Comparator<IndexNodeChange> orderToRemovedModifiedCreated() {
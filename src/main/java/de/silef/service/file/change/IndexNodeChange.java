@@ -1,8 +1,15 @@
 package de.silef.service.file.change;
 
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ChunkHashIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
 import de.silef.service.file.node.IndexNode;
 
 import java.nio.file.Path;
+import java.util.*;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.extension.ExtensionType.CHUNK_HASH;
 
 /**
  * Created by sebastian on 24.09.16.
@@ -48,6 +55,62 @@ public class IndexNodeChange {
         return update;
     }
 
+    /**
+     * Byte ranges of the update file which are not part of the origin file, so a sync only needs
+     * to transfer these ranges. The comparison is based on the chunk hashes of both files. If
+     * no comparable chunk hashes are available the whole update file is changed.
+     *
+     * @return Sorted and merged byte ranges of the update file. Empty if nothing changed or the
+     * update is not a file
+     */
+    public List<ByteRange> getChangedRanges() {
+        if (change == Change.SAME || change == Change.REMOVED || !update.isFile()) {
+            return Collections.emptyList();
+        }
+
+        ChunkHashIndexExtension updateChunks = getChunks(update);
+        ChunkHashIndexExtension originChunks = change == Change.CREATED ? null : getChunks(origin);
+        if (updateChunks == null || originChunks == null || updateChunks.getAverageSizeBits() != originChunks.getAverageSizeBits()) {
+            long size = updateChunks != null ? updateChunks.getContentSize() : getFileSize(update);
+            return size > 0 ? Collections.singletonList(new ByteRange(0, size)) : Collections.emptyList();
+        }
+
+        Map<Long, Integer> originHashToLength = new HashMap<>(originChunks.getChunkCount());
+        for (int i = 0; i < originChunks.getChunkCount(); i++) {
+            originHashToLength.put(originChunks.getChunkHash(i), originChunks.getChunkLength(i));
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        long offset = 0;
+        long rangeStart = -1;
+        for (int i = 0; i < updateChunks.getChunkCount(); i++) {
+            int length = updateChunks.getChunkLength(i);
+            Integer originLength = originHashToLength.get(updateChunks.getChunkHash(i));
+            boolean changed = originLength == null || originLength != length;
+            if (changed && rangeStart < 0) {
+                rangeStart = offset;
+            } else if (!changed && rangeStart >= 0) {
+                ranges.add(new ByteRange(rangeStart, offset - rangeStart));
+                rangeStart = -1;
+            }
+            offset += length;
+        }
+        if (rangeStart >= 0) {
+            ranges.add(new ByteRange(rangeStart, offset - rangeStart));
+        }
+        return ranges;
+    }
+
+    private static ChunkHashIndexExtension getChunks(IndexNode node) {
+        IndexExtension extension = node.getExtensionByType(CHUNK_HASH.value);
+        return extension instanceof ChunkHashIndexExtension ? (ChunkHashIndexExtension) extension : null;
+    }
+
+    private static long getFileSize(IndexNode node) {
+        IndexExtension extension = node.getExtensionByType(BASIC_FILE.value);
+        return extension instanceof BasicFileIndexExtension ? ((BasicFileIndexExtension) extension).getSize() : 0;
+    }
+
     @Override
     public String toString() {
         if (change.equals(Change.SAME)) {
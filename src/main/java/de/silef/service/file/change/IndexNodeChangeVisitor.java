@@ -59,7 +59,7 @@ public class IndexNodeChangeVisitor extends Visitor<IndexNode> {
         originStack.push(dir);
         currentStack.push(currentDir);
 
-        Set<String> names = currentDir.getChildNames();
+        Set<String> names = new HashSet<>(currentDir.getChildNames());
         currentChildNamesVisited.put(currentDir, names);
         return super.preVisitDirectory(dir);
     }
@@ -73,7 +73,7 @@ public class IndexNodeChangeVisitor extends Visitor<IndexNode> {
             modified(rootChange);
         }
 
-        Set<String> names = currentRoot.getChildNames();
+        Set<String> names = new HashSet<>(currentRoot.getChildNames());
         currentChildNamesVisited.put(currentRoot, names);
     }
 
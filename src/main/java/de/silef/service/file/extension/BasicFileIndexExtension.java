@@ -1,6 +1,9 @@
 package de.silef.service.file.extension;
 
-import java.io.*;
+import de.silef.service.file.util.DataUtils;
+import de.silef.service.file.util.FileKeyUtil;
+
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -9,17 +12,25 @@ import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
 
 /**
  * Created by sebastian on 23.09.16.
+ *
+ * The fields are decoded from the big endian data on each access. This keeps the extension
+ * small and decoding a field is cheaper than a cache lookup.
  */
 public class BasicFileIndexExtension extends StandardIndexExtension {
 
     private static final int DATA_SIZE = 32;
 
-    private long size;
-    private long creationTime;
-    private long modifiedTime;
-    private long fileKey;
+    private static final int SIZE_OFFSET = 0;
+    private static final int CREATION_TIME_OFFSET = 8;
+    private static final int MODIFIED_TIME_OFFSET = 16;
+    private static final int FILE_KEY_OFFSET = 24;
 
-    private boolean initialized = false;
+    /**
+     * Modified time of data which was read from index format version 1. Version 1 stored the
+     * creation time as modified time. Directories whose entries could not all be indexed have an
+     * unknown modified time, too, so their listing is not trusted by incremental scans
+     */
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
 
     public BasicFileIndexExtension(byte[] data) {
         super(BASIC_FILE.value, data);
@@ -36,47 +47,58 @@ public class BasicFileIndexExtension extends StandardIndexExtension {
     public static BasicFileIndexExtension createFromAttributes(BasicFileAttributes attributes) {
         long size = attributes.isDirectory() ? 0 : attributes.size();
         long createdTime = attributes.creationTime().toMillis();
-        long modifiedTime = attributes.creationTime().toMillis();
-        long fileKey = getInode(attributes);
+        long modifiedTime = attributes.lastModifiedTime().toMillis();
+        long fileKey = FileKeyUtil.getInode(attributes.fileKey());
 
         return new BasicFileIndexExtension(createData(size, createdTime, modifiedTime, fileKey));
     }
 
-    private static long getInode(BasicFileAttributes attributes) {
-        String key = String.valueOf(attributes.fileKey());
-        int pos = key.indexOf("ino=");
-        if (pos >= 0) {
-            pos += 4;
-            int end = pos;
-            while (key.charAt(end) >= '0' && key.charAt(end) <= '9') {
-                end++;
-            }
-            if (pos < end) {
-                return Long.parseLong(key.substring(pos, end));
-            }
-        }
-        return 0;
-    }
-
     public long getSize() {
-        if (!initialized) {
-            extractData();
-        }
-        return size;
+        return getLong(SIZE_OFFSET);
     }
 
     public long getCreationTime() {
-        if (!initialized) {
-            extractData();
-        }
-        return creationTime;
+        return getLong(CREATION_TIME_OFFSET);
     }
 
     public long getModifiedTime() {
-        if (!initialized) {
-            extractData();
+        return getLong(MODIFIED_TIME_OFFSET);
+    }
+
+    public boolean hasModifiedTime() {
+        return getModifiedTime() != UNKNOWN_TIME;
+    }
+
+    /**
+     * @return Inode of the file on Unix systems. 0 if the file key is not available
+     */
+    public long getFileKey() {
+        return getLong(FILE_KEY_OFFSET);
+    }
+
+    /**
+     * @return true if size, creation time and file key are equal. The modified time is ignored
+     */
+    public boolean hasEqualSizeAndIdentity(BasicFileIndexExtension other) {
+        return getSize() == other.getSize() &&
+                getCreationTime() == other.getCreationTime() &&
+                getFileKey() == other.getFileKey();
+    }
+
+    /**
+     * @return Copy with UNKNOWN_TIME as modified time
+     */
+    public BasicFileIndexExtension withUnknownModifiedTime() {
+        return new BasicFileIndexExtension(createData(getSize(), getCreationTime(), UNKNOWN_TIME, getFileKey()));
+    }
+
+    /**
+     * Set the modified time of data of index format version 1 to UNKNOWN_TIME
+     */
+    public static void resetLegacyModifiedTime(byte[] data) {
+        if (data.length >= DATA_SIZE) {
+            DataUtils.putLong(data, MODIFIED_TIME_OFFSET, UNKNOWN_TIME);
         }
-        return modifiedTime;
     }
 
     @Override
@@ -86,58 +108,35 @@ public class BasicFileIndexExtension extends StandardIndexExtension {
 
         BasicFileIndexExtension that = (BasicFileIndexExtension) o;
 
-        return size == that.size &&
-            creationTime == that.creationTime &&
-            modifiedTime == that.modifiedTime;
+        return getSize() == that.getSize() &&
+            getCreationTime() == that.getCreationTime() &&
+            getModifiedTime() == that.getModifiedTime();
     }
 
     @Override
     public int hashCode() {
-        int result = (int) (size ^ (size >>> 32));
-        result = 31 * result + (int) (creationTime ^ (creationTime >>> 32));
-        result = 31 * result + (int) (modifiedTime ^ (modifiedTime >>> 32));
-        result = 31 * result + (int) (fileKey ^ (fileKey >>> 32));
+        int result = Long.hashCode(getSize());
+        result = 31 * result + Long.hashCode(getCreationTime());
+        result = 31 * result + Long.hashCode(getModifiedTime());
         return result;
     }
 
     @Override
     public String toString() {
-        if (!initialized) {
-            extractData();
-        }
         return "BasicFile{" +
-                "size=" + size +
-                ", creationTime=" + creationTime +
-                ", modifiedTime=" + modifiedTime +
-                ", fileKey=" + fileKey +
+                "size=" + getSize() +
+                ", creationTime=" + getCreationTime() +
+                ", modifiedTime=" + getModifiedTime() +
+                ", fileKey=" + getFileKey() +
                 '}';
     }
 
-    private static byte[] createData(long size, long creationTime, long modifiedTime, long fileKey) {
-        try (ByteArrayOutputStream output = new ByteArrayOutputStream();
-             DataOutputStream dataOutput = new DataOutputStream(output)) {
-            dataOutput.writeLong(size);
-            dataOutput.writeLong(creationTime);
-            dataOutput.writeLong(modifiedTime);
-            dataOutput.writeLong(fileKey);
-
-            return output.toByteArray();
-        } catch (IOException e) {
-            throw new IndexExtensionInvalidDataException("Could not write data of Unix File Extension");
-        }
-    }
-
-    private void extractData() {
-        try (ByteArrayInputStream input = new ByteArrayInputStream(getData());
-             DataInputStream dataInput = new DataInputStream(input)) {
-            size = dataInput.readLong();
-            creationTime = dataInput.readLong();
-            modifiedTime = dataInput.readLong();
-            fileKey = dataInput.readLong();
-
-            initialized = true;
-        } catch (IOException e) {
-            throw new IndexExtensionInvalidDataException("Could not read data of Unix File Extension");
-        }
+    static byte[] createData(long size, long creationTime, long modifiedTime, long fileKey) {
+        byte[] data = new byte[DATA_SIZE];
+        DataUtils.putLong(data, SIZE_OFFSET, size);
+        DataUtils.putLong(data, CREATION_TIME_OFFSET, creationTime);
+        DataUtils.putLong(data, MODIFIED_TIME_OFFSET, modifiedTime);
+        DataUtils.putLong(data, FILE_KEY_OFFSET, fileKey);
+        return data;
     }
 }
@@ -0,0 +1,103 @@
+package de.silef.service.file.extension;
+
+import de.silef.service.file.util.FastCdcChunker;
+
+import java.nio.ByteBuffer;
+
+import static de.silef.service.file.extension.ExtensionType.CHUNK_HASH;
+
+/**
+ * List of content defined chunks of a regular file. Each chunk has its length and its xxHash64
+ * value. Chunks of two versions of a file are comparable only with equal average chunk size.
+ *
+ * @see FastCdcChunker
+ */
+public class ChunkHashIndexExtension extends StandardIndexExtension {
+
+    private static final int HEADER_SIZE = 1;
+
+    private static final int CHUNK_SIZE = 12;
+
+    private int averageSizeBits;
+    private int[] chunkLengths;
+    private long[] chunkHashes;
+
+    private boolean initialized = false;
+
+    public ChunkHashIndexExtension(byte[] data) {
+        super(CHUNK_HASH.value, data);
+        if (data.length < HEADER_SIZE || (data.length - HEADER_SIZE) % CHUNK_SIZE != 0) {
+            throw new IndexExtensionInvalidDataException("Invalid data length for Chunk Hash Extension");
+        }
+    }
+
+    public static ChunkHashIndexExtension create(FastCdcChunker chunker) {
+        int[] lengths = chunker.getChunkLengths();
+        long[] hashes = chunker.getChunkHashes();
+
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + lengths.length * CHUNK_SIZE);
+        data.put((byte) chunker.getAverageSizeBits());
+        for (int i = 0; i < lengths.length; i++) {
+            data.putInt(lengths[i]);
+            data.putLong(hashes[i]);
+        }
+        return new ChunkHashIndexExtension(data.array());
+    }
+
+    public int getAverageSizeBits() {
+        if (!initialized) {
+            extractData();
+        }
+        return averageSizeBits;
+    }
+
+    public int getChunkCount() {
+        if (!initialized) {
+            extractData();
+        }
+        return chunkLengths.length;
+    }
+
+    public int getChunkLength(int index) {
+        if (!initialized) {
+            extractData();
+        }
+        return chunkLengths[index];
+    }
+
+    public long getChunkHash(int index) {
+        if (!initialized) {
+            extractData();
+        }
+        return chunkHashes[index];
+    }
+
+    public long getContentSize() {
+        if (!initialized) {
+            extractData();
+        }
+        long size = 0;
+        for (int length : chunkLengths) {
+            size += length;
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkHash{averageSize=" + (1L << getAverageSizeBits()) + ", chunks=" + getChunkCount() + "}";
+    }
+
+    private void extractData() {
+        ByteBuffer data = ByteBuffer.wrap(getData());
+        int count = (data.remaining() - HEADER_SIZE) / CHUNK_SIZE;
+        averageSizeBits = data.get();
+        chunkLengths = new int[count];
+        chunkHashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            chunkLengths[i] = data.getInt();
+            chunkHashes[i] = data.getLong();
+        }
+        initialized = true;
+    }
+}
@@ -0,0 +1,103 @@
+package de.silef.service.file.extension;
+
+import de.silef.service.file.util.XxHash64Digest;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash algorithms for file content hashes. Each algorithm is stored in its own extension type,
+ * so an index might contain content hashes of different algorithms.
+ *
+ * Digests are created by the MessageDigest API of the Java security providers. Algorithms
+ * which are not provided by the JRE supply their own MessageDigest implementation.
+ */
+public enum ContentHashAlgorithm {
+    SHA1("sha1", ExtensionType.FILE_HASH, 20) {
+        @Override
+        public MessageDigest createDigest() throws IOException {
+            return getDigestInstance("SHA1");
+        }
+    },
+    SHA256("sha256", ExtensionType.FILE_HASH_SHA256, 32) {
+        @Override
+        public MessageDigest createDigest() throws IOException {
+            return getDigestInstance("SHA-256");
+        }
+    },
+    XXHASH64("xxh64", ExtensionType.FILE_HASH_XXHASH64, 8) {
+        @Override
+        public MessageDigest createDigest() {
+            return new XxHash64Digest();
+        }
+    };
+
+    private final String name;
+
+    private final ExtensionType extensionType;
+
+    private final int hashLength;
+
+    ContentHashAlgorithm(String name, ExtensionType extensionType, int hashLength) {
+        this.name = name;
+        this.extensionType = extensionType;
+        this.hashLength = hashLength;
+    }
+
+    public abstract MessageDigest createDigest() throws IOException;
+
+    public String getName() {
+        return name;
+    }
+
+    public ExtensionType getExtensionType() {
+        return extensionType;
+    }
+
+    public int getHashLength() {
+        return hashLength;
+    }
+
+    public static ContentHashAlgorithm fromName(String name) {
+        for (ContentHashAlgorithm algorithm : values()) {
+            if (algorithm.name.equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm: " + name);
+    }
+
+    /**
+     * @return Algorithm of given content hash extension type or null if the type is not a
+     * content hash
+     */
+    public static ContentHashAlgorithm fromExtensionType(byte type) {
+        for (ContentHashAlgorithm algorithm : values()) {
+            if (algorithm.extensionType.value == type) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Algorithm with given hash length or null
+     */
+    public static ContentHashAlgorithm fromHashLength(int hashLength) {
+        for (ContentHashAlgorithm algorithm : values()) {
+            if (algorithm.hashLength == hashLength) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    private static MessageDigest getDigestInstance(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Could not create hash due digest initialization error", e);
+        }
+    }
+}
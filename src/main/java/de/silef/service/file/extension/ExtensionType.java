@@ -8,7 +8,27 @@ public enum ExtensionType {
     BASIC_FILE((byte) 1),
     UNIX_FILE((byte) 2),
     FILE_HASH((byte) 3),
-    UNIVERSAL_HASH((byte) 4);
+    UNIVERSAL_HASH((byte) 4),
+    FILE_HASH_SHA256((byte) 5),
+    FILE_HASH_XXHASH64((byte) 6),
+    QUICK_FINGERPRINT((byte) 7),
+    CHUNK_HASH((byte) 8),
+    LAST_VERIFIED((byte) 9);
+
+    /**
+     * Number of slots for extensions of known types. See slotOf()
+     */
+    public static final int SLOT_COUNT;
+
+    private static final ExtensionType[] BY_VALUE = new ExtensionType[256];
+
+    static {
+        ExtensionType[] types = values();
+        for (ExtensionType type : types) {
+            BY_VALUE[type.value & 0xff] = type;
+        }
+        SLOT_COUNT = types.length;
+    }
 
     public byte value;
 
@@ -17,10 +37,15 @@ public enum ExtensionType {
     }
 
     public static ExtensionType fromByte(final byte type) {
-        for (ExtensionType extensionType : ExtensionType.values()) {
-            if (extensionType.value == type)
-                return extensionType;
-        }
-        return UNKNOWN;
+        ExtensionType extensionType = BY_VALUE[type & 0xff];
+        return extensionType != null ? extensionType : UNKNOWN;
+    }
+
+    /**
+     * @return Slot of a known extension type between 1 and SLOT_COUNT - 1. -1 for unknown types
+     */
+    public static int slotOf(final byte type) {
+        ExtensionType extensionType = BY_VALUE[type & 0xff];
+        return extensionType != null && extensionType != UNKNOWN ? extensionType.ordinal() : -1;
     }
 }
@@ -3,54 +3,63 @@ package de.silef.service.file.extension;
 import de.silef.service.file.util.DataUtils;
 import de.silef.service.file.util.HashUtil;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 
 /**
  * Created by sebastian on 23.09.16.
  */
 public class FileContentHashIndexExtension extends StandardIndexExtension {
 
-    private static final int DATA_SIZE = 20;
+    private final ContentHashAlgorithm algorithm;
 
     public FileContentHashIndexExtension(byte[] data) {
-        super(ExtensionType.FILE_HASH.value, data);
-        if (data.length < DATA_SIZE) {
+        this(ExtensionType.FILE_HASH.value, data);
+    }
+
+    public FileContentHashIndexExtension(byte type, byte[] data) {
+        super(type, data);
+        algorithm = ContentHashAlgorithm.fromExtensionType(type);
+        if (algorithm == null) {
+            throw new IndexExtensionInvalidDataException("Invalid extension type for Content Extension: " + type);
+        } else if (data.length < algorithm.getHashLength()) {
             throw new IndexExtensionInvalidDataException("Invalid data length for Content Extension");
         }
     }
 
     public static FileContentHashIndexExtension create(Path file) throws IOException {
+        return create(file, ContentHashAlgorithm.SHA1);
+    }
+
+    public static FileContentHashIndexExtension create(Path file, ContentHashAlgorithm algorithm) throws IOException {
         BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
         if (!attributes.isSymbolicLink() && !attributes.isRegularFile()) {
             throw new IllegalArgumentException("File content hash is only allowed on files and symbolic links: " + file);
         }
-        long size = attributes.isSymbolicLink() ? 0L : attributes.size();
-        byte[] sizeBytes = DataUtils.toBytes(size);
-
-        try (InputStream sizeInput = new ByteArrayInputStream(sizeBytes);
-             InputStream fileInput = getFileInputStream(file, attributes);
-             InputStream sequenceInput = new SequenceInputStream(sizeInput, fileInput)) {
+        byte type = algorithm.getExtensionType().value;
+        if (attributes.isSymbolicLink()) {
+            return new FileContentHashIndexExtension(type, getLinkHash(file, algorithm.createDigest()));
+        }
+        return new FileContentHashIndexExtension(type, HashUtil.getFileHash(file, attributes.size(), algorithm.createDigest()));
+    }
 
-            byte[] hash = HashUtil.getHash(sequenceInput);
+    private static byte[] getLinkHash(Path file, MessageDigest digest) throws IOException {
+        Path target = Files.readSymbolicLink(file);
+        byte[] targetBytes = target.toString().getBytes(StandardCharsets.UTF_8);
 
-            return new FileContentHashIndexExtension(hash);
-        }
+        byte[] data = new byte[8 + targetBytes.length];
+        System.arraycopy(DataUtils.toBytes(0L), 0, data, 0, 8);
+        System.arraycopy(targetBytes, 0, data, 8, targetBytes.length);
+        return HashUtil.getHash(data, digest);
     }
 
-    private static InputStream getFileInputStream(Path file, BasicFileAttributes attributes) throws IOException {
-        if (attributes.isSymbolicLink()) {
-            Path target = Files.readSymbolicLink(file);
-            return new ByteArrayInputStream(target.toString().getBytes(StandardCharsets.UTF_8));
-        } else {
-            InputStream fileInput = Files.newInputStream(file, StandardOpenOption.READ);
-            return new BufferedInputStream(fileInput, 1 << 15);
-        }
+    public ContentHashAlgorithm getAlgorithm() {
+        return algorithm;
     }
 
     @Override
@@ -1,5 +1,7 @@
 package de.silef.service.file.extension;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by sebastian on 23.09.16.
  */
@@ -7,6 +9,28 @@ public interface IndexExtension {
 
     byte getType();
 
+    /**
+     * @return Copy of the extension data
+     */
     byte[] getData();
 
+    /**
+     * @return Read-only view of the extension data. The view shares the data if possible and
+     * compares and hashes by its content, so it can be used as map key
+     */
+    default ByteBuffer getDataView() {
+        return ByteBuffer.wrap(getData()).asReadOnlyBuffer();
+    }
+
+    default int getDataLength() {
+        return getDataView().remaining();
+    }
+
+    /**
+     * @return true if the other extension has equal data
+     */
+    default boolean hasEqualData(IndexExtension other) {
+        return getDataView().equals(other.getDataView());
+    }
+
 }
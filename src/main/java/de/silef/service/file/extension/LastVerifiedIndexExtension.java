@@ -0,0 +1,38 @@
+package de.silef.service.file.extension;
+
+import de.silef.service.file.util.DataUtils;
+
+import java.util.Date;
+
+import static de.silef.service.file.extension.ExtensionType.LAST_VERIFIED;
+
+/**
+ * Time of the last successful verification of the file content against its content hash
+ */
+public class LastVerifiedIndexExtension extends StandardIndexExtension {
+
+    private static final int DATA_SIZE = 8;
+
+    public LastVerifiedIndexExtension(byte[] data) {
+        super(LAST_VERIFIED.value, data);
+        if (data.length != DATA_SIZE) {
+            throw new IndexExtensionInvalidDataException("Invalid data length for Last Verified Extension");
+        }
+    }
+
+    public static LastVerifiedIndexExtension create(long time) {
+        return new LastVerifiedIndexExtension(DataUtils.toBytes(time));
+    }
+
+    /**
+     * @return Verification time in milliseconds since epoch
+     */
+    public long getTime() {
+        return getLong(0);
+    }
+
+    @Override
+    public String toString() {
+        return "LastVerified{" + new Date(getTime()) + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package de.silef.service.file.extension;
+
+import de.silef.service.file.util.DataUtils;
+import de.silef.service.file.util.HashUtil;
+import de.silef.service.file.util.XxHash64Digest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import static de.silef.service.file.extension.ExtensionType.QUICK_FINGERPRINT;
+
+/**
+ * Cheap fingerprint of a regular file to prefilter duplicate candidates. The fingerprint is the
+ * xxHash64 of 8 bytes file size followed by the first and the last SAMPLE_SIZE bytes of the file
+ * content. Files up to two sample sizes are fingerprinted by their whole content.
+ *
+ * Different fingerprints prove different file contents. Equal fingerprints do not prove equal
+ * content, a full content hash is still required.
+ */
+public class QuickFingerprintIndexExtension extends StandardIndexExtension {
+
+    public static final int SAMPLE_SIZE = 4096;
+
+    private static final int DATA_SIZE = 8;
+
+    public QuickFingerprintIndexExtension(byte[] data) {
+        super(QUICK_FINGERPRINT.value, data);
+        if (data.length < DATA_SIZE) {
+            throw new IndexExtensionInvalidDataException("Invalid data length for Quick Fingerprint Extension");
+        }
+    }
+
+    public static QuickFingerprintIndexExtension create(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MessageDigest digest = new XxHash64Digest();
+            digest.update(DataUtils.toBytes(size));
+
+            ByteBuffer buffer = ByteBuffer.allocate(2 * SAMPLE_SIZE);
+            if (size <= 2 * SAMPLE_SIZE) {
+                readFully(channel, buffer, 0, (int) size);
+            } else {
+                readFully(channel, buffer, 0, SAMPLE_SIZE);
+                readFully(channel, buffer, size - SAMPLE_SIZE, SAMPLE_SIZE);
+            }
+            buffer.flip();
+            digest.update(buffer);
+            return new QuickFingerprintIndexExtension(digest.digest());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int len) throws IOException {
+        int end = buffer.position() + len;
+        buffer.limit(end);
+        while (buffer.position() < end) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file. File changed while reading");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QuickFingerprint{" + HashUtil.toHex(getData()) + "}";
+    }
+}
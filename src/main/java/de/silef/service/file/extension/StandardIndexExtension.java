@@ -1,5 +1,8 @@
 package de.silef.service.file.extension;
 
+import de.silef.service.file.util.DataUtils;
+
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -25,4 +28,39 @@ public class StandardIndexExtension implements IndexExtension {
     public byte[] getData() {
         return Arrays.copyOf(data, data.length);
     }
+
+    @Override
+    public ByteBuffer getDataView() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    @Override
+    public int getDataLength() {
+        return data.length;
+    }
+
+    /**
+     * @return Big endian long of the data at given offset without copy
+     */
+    protected long getLong(int offset) {
+        return DataUtils.getLong(data, offset);
+    }
+
+    /**
+     * @return Big endian int of the data at given offset without copy
+     */
+    protected int getInt(int offset) {
+        return DataUtils.getInt(data, offset);
+    }
+
+    /**
+     * Compares the data in place without copies
+     */
+    @Override
+    public boolean hasEqualData(IndexExtension other) {
+        if (other instanceof StandardIndexExtension) {
+            return Arrays.equals(data, ((StandardIndexExtension) other).data);
+        }
+        return other != null && getDataView().equals(other.getDataView());
+    }
 }
@@ -3,12 +3,13 @@ package de.silef.service.file.extension;
 import de.silef.service.file.node.IndexNode;
 import de.silef.service.file.util.HashUtil;
 
-import java.io.*;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
 
-import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
-import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
 import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
 
 /**
@@ -18,60 +19,109 @@ import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
  * The extension is only for directory nodes and depends on the FileContentHashIndexExtension for files
  * and (symbolic) links. If no FileContentHashIndexExtension could not be found for a node it uses an
  * empty hash for this node.
+ *
+ * The hash algorithm of the universal hash is the algorithm of the file content hashes. The algorithm
+ * is identified by the hash length.
+ *
+ * The child records are streamed into the digest. Missing hashes of sub directories are created
+ * recursively and attached to the sub directories. See UniversalHashCalculator to create the hashes
+ * of sibling directories in parallel.
  */
 public class UniversalHashIndexExtension extends StandardIndexExtension {
 
-    private static final int DATA_SIZE = 20;
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
 
-    private static final byte[] EMPTY_HASH = "00000000000000000000".getBytes();
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
 
     public UniversalHashIndexExtension(byte[] data) {
         super(UNIVERSAL_HASH.value, data);
-        if (data.length < DATA_SIZE) {
+        if (ContentHashAlgorithm.fromHashLength(data.length) == null) {
             throw new IndexExtensionInvalidDataException("Invalid data length for Content Extension");
         }
     }
 
     public static UniversalHashIndexExtension create(IndexNode node) throws IOException {
+        return create(node, ContentHashAlgorithm.SHA1);
+    }
+
+    public static UniversalHashIndexExtension create(IndexNode node, ContentHashAlgorithm algorithm) throws IOException {
+        return new UniversalHashIndexExtension(createHash(node, algorithm, child -> getChildHash(child, algorithm)));
+    }
+
+    /**
+     * Creates the hash of the node from given child hashes. The node and its children are not
+     * modified, so other hashes like actual file content hashes can be checked against the tree
+     *
+     * @param childHashes Function which provides the hash of a child
+     */
+    public static byte[] createHash(IndexNode node, ContentHashAlgorithm algorithm, ChildHashFunction childHashes) throws IOException {
         if (!node.isDirectory() && !node.isLink()) {
             throw new IllegalArgumentException("Universal hash is only allowed on directory nodes");
         }
 
-        List<String> names = node.getChildNames().stream().sorted().collect(Collectors.toList());
-        try (ByteArrayOutputStream output = new ByteArrayOutputStream();
-             DataOutputStream dataOutput = new DataOutputStream(output)) {
-            for (String name : names) {
-                IndexNode child = node.getChildByName(name);
-                assert child != null;
-
-                byte[] childHash = getChildHash(child);
+        MessageDigest digest = algorithm.createDigest();
+        try (DataOutputStream dataOutput = new DataOutputStream(new DigestOutputStream(NULL_OUTPUT, digest))) {
+            for (IndexNode child : node.getChildren()) {
+                byte[] childHash = childHashes.getHash(child);
                 dataOutput.write(childHash);
                 dataOutput.writeByte(child.getNodeType().getByte());
                 dataOutput.writeUTF(child.getName());
             }
-            byte[] hash = HashUtil.getHash(output.toByteArray());
-            return new UniversalHashIndexExtension(hash);
         }
+        return digest.digest();
     }
 
-    private static byte[] getChildHash(IndexNode child) throws IOException {
-        if (child.isLink() || child.isFile()) {
-            if (child.hasExtensionType(FILE_HASH.value)) {
-                return child.getExtensionByType(FILE_HASH.value).getData();
-            }
-            return EMPTY_HASH;
-        } else if (child.isDirectory()) {
-            if (!child.hasExtensionType(UNIVERSAL_HASH.value)) {
-                UniversalHashIndexExtension extension = create(child);
-                child.addExtension(extension);
+    /**
+     * @return true if the directory has a universal hash of given algorithm which is reused by its parent
+     */
+    public static boolean hasValidHash(IndexNode dir, ContentHashAlgorithm algorithm) {
+        IndexExtension extension = dir.getExtensionByType(UNIVERSAL_HASH.value);
+        return extension != null && extension.getDataLength() == algorithm.getHashLength();
+    }
+
+    private static byte[] getChildHash(IndexNode child, ContentHashAlgorithm algorithm) throws IOException {
+        if (child.isDirectory()) {
+            if (!hasValidHash(child, algorithm)) {
+                child.addExtension(create(child, algorithm));
             }
             return child.getExtensionByType(UNIVERSAL_HASH.value).getData();
         }
-        return EMPTY_HASH;
+        return getContentHash(child, algorithm);
+    }
+
+    /**
+     * @return Content hash of a file or link which is used as child hash. If the node has no content
+     * hash or is another node type, the empty hash is returned
+     */
+    public static byte[] getContentHash(IndexNode node, ContentHashAlgorithm algorithm) {
+        byte type = algorithm.getExtensionType().value;
+        if ((node.isLink() || node.isFile()) && node.hasExtensionType(type)) {
+            return node.getExtensionByType(type).getData();
+        }
+        return getEmptyHash(algorithm);
+    }
+
+    private static byte[] getEmptyHash(ContentHashAlgorithm algorithm) {
+        byte[] hash = new byte[algorithm.getHashLength()];
+        Arrays.fill(hash, (byte) '0');
+        return hash;
     }
 
     @Override
     public String toString() {
         return "UniversalHash{" + HashUtil.toHex(getData()) + "}";
     }
+
+    /**
+     * Provides the hash of a child node
+     */
+    public interface ChildHashFunction {
+        byte[] getHash(IndexNode child) throws IOException;
+    }
 }
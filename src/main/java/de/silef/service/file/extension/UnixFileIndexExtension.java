@@ -1,6 +1,8 @@
 package de.silef.service.file.extension;
 
-import java.io.*;
+import de.silef.service.file.util.DataUtils;
+
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
@@ -9,18 +11,19 @@ import static de.silef.service.file.extension.ExtensionType.UNIX_FILE;
 
 /**
  * Created by sebastian on 23.09.16.
+ *
+ * The fields are decoded from the big endian data on each access like the basic file extension
+ * does.
  */
 public class UnixFileIndexExtension extends StandardIndexExtension {
 
     private static final int DATA_SIZE = 24;
 
-    private int mode;
-    private int userId;
-    private int groupId;
-    private long inode;
-    private int linkCount;
-
-    private boolean initialized = false;
+    private static final int MODE_OFFSET = 0;
+    private static final int USER_ID_OFFSET = 4;
+    private static final int GROUP_ID_OFFSET = 8;
+    private static final int INODE_OFFSET = 12;
+    private static final int LINK_COUNT_OFFSET = 20;
 
     public UnixFileIndexExtension(byte[] data) {
         super(UNIX_FILE.value, data);
@@ -42,38 +45,23 @@ public class UnixFileIndexExtension extends StandardIndexExtension {
     }
 
     public int getMode() {
-        if (!initialized) {
-            extractData();
-        }
-        return mode;
+        return getInt(MODE_OFFSET);
     }
 
     public int getUserId() {
-        if (!initialized) {
-            extractData();
-        }
-        return userId;
+        return getInt(USER_ID_OFFSET);
     }
 
     public int getGroupId() {
-        if (!initialized) {
-            extractData();
-        }
-        return groupId;
+        return getInt(GROUP_ID_OFFSET);
     }
 
     public long getInode() {
-        if (!initialized) {
-            extractData();
-        }
-        return inode;
+        return getLong(INODE_OFFSET);
     }
 
     public int getLinkCount() {
-        if (!initialized) {
-            extractData();
-        }
-        return linkCount;
+        return getInt(LINK_COUNT_OFFSET);
     }
 
     @Override
@@ -83,62 +71,39 @@ public class UnixFileIndexExtension extends StandardIndexExtension {
 
         UnixFileIndexExtension that = (UnixFileIndexExtension) o;
 
-        return inode == that.inode &&
-            mode == that.mode &&
-            userId == that.userId &&
-            groupId == that.groupId;
+        return getInode() == that.getInode() &&
+            getMode() == that.getMode() &&
+            getUserId() == that.getUserId() &&
+            getGroupId() == that.getGroupId();
     }
 
     @Override
     public int hashCode() {
-        int result = mode;
-        result = 31 * result + userId;
-        result = 31 * result + groupId;
-        result = 31 * result + (int) (inode ^ (inode >>> 32));
+        int result = getMode();
+        result = 31 * result + getUserId();
+        result = 31 * result + getGroupId();
+        result = 31 * result + Long.hashCode(getInode());
         return result;
     }
 
     @Override
     public String toString() {
-        if (!initialized) {
-            extractData();
-        }
         return "UnixFile{" +
-                "mode=" + mode +
-                ", userId=" + userId +
-                ", groupId=" + groupId +
-                ", inode=" + inode +
+                "mode=" + getMode() +
+                ", userId=" + getUserId() +
+                ", groupId=" + getGroupId() +
+                ", inode=" + getInode() +
                 '}';
     }
 
-    private static byte[] createData(int mode, int userId, int groupId, long inode, int linkCount) {
-        try (ByteArrayOutputStream output = new ByteArrayOutputStream();
-             DataOutputStream dataOutput = new DataOutputStream(output)) {
-            dataOutput.writeInt(mode);
-            dataOutput.writeInt(userId);
-            dataOutput.writeInt(groupId);
-            dataOutput.writeLong(inode);
-            dataOutput.writeInt(linkCount);
-
-            return output.toByteArray();
-        } catch (IOException e) {
-            throw new IndexExtensionInvalidDataException("Could not write data of Unix File Extension");
-        }
-    }
-
-    private void extractData() {
-        try (ByteArrayInputStream input = new ByteArrayInputStream(getData());
-             DataInputStream dataInput = new DataInputStream(input)) {
-            mode = dataInput.readInt();
-            userId = dataInput.readInt();
-            groupId = dataInput.readInt();
-            inode = dataInput.readLong();
-            linkCount = dataInput.readInt();
-
-            initialized = true;
-        } catch (IOException e) {
-            throw new IndexExtensionInvalidDataException("Could not read data of Unix File Extension");
-        }
+    static byte[] createData(int mode, int userId, int groupId, long inode, int linkCount) {
+        byte[] data = new byte[DATA_SIZE];
+        DataUtils.putInt(data, MODE_OFFSET, mode);
+        DataUtils.putInt(data, USER_ID_OFFSET, userId);
+        DataUtils.putInt(data, GROUP_ID_OFFSET, groupId);
+        DataUtils.putLong(data, INODE_OFFSET, inode);
+        DataUtils.putInt(data, LINK_COUNT_OFFSET, linkCount);
+        return data;
     }
 
 }
@@ -0,0 +1,218 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.util.FileKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of content hashes by device, inode, file size and modification time. The cache is
+ * independent of file names and indices, so hard links, moved files and files of other indices
+ * with the same inode are hashed only once.
+ *
+ * The cache is bounded by its entry count and evicts the least recently used entries. Files which
+ * were modified within the timestamp granularity are not cached, since a further modification
+ * within the same timestamp would not be detected.
+ *
+ * The cache is thread safe.
+ */
+public class ContentHashCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContentHashCache.class);
+
+    private static final int MAGIC_HEADER = 0x23100709;
+
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+
+    private final Map<Key, byte[]> keyToHash;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public ContentHashCache(int maxEntries) {
+        this.keyToHash = new LruMap(maxEntries);
+    }
+
+    /**
+     * @param type Extension type of the hash algorithm
+     * @return Cached hash or null
+     */
+    public byte[] get(BasicFileAttributes attributes, byte type) {
+        Key key = Key.create(attributes, type);
+        if (key == null) {
+            return null;
+        }
+        byte[] hash;
+        synchronized (keyToHash) {
+            hash = keyToHash.get(key);
+        }
+        if (hash == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return hash;
+    }
+
+    /**
+     * @param attributes Attributes of the file before it was hashed
+     * @param type Extension type of the hash algorithm
+     */
+    public void put(BasicFileAttributes attributes, byte type, byte[] hash) {
+        Key key = Key.create(attributes, type);
+        if (key == null || key.modifiedTime > System.currentTimeMillis() - TIMESTAMP_GRANULARITY) {
+            return;
+        }
+        synchronized (keyToHash) {
+            keyToHash.put(key, hash);
+        }
+    }
+
+    public int size() {
+        synchronized (keyToHash) {
+            return keyToHash.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public static ContentHashCache readFromPath(Path file, int maxEntries) throws IOException {
+        ContentHashCache cache = new ContentHashCache(maxEntries);
+        try (InputStream input = Files.newInputStream(file);
+             BufferedInputStream bufferedInput = new BufferedInputStream(input);
+             DataInputStream dataInput = new DataInputStream(bufferedInput)) {
+            if (dataInput.readInt() != MAGIC_HEADER) {
+                throw new IOException("Unexpected header of content hash cache " + file);
+            }
+            int count = dataInput.readInt();
+            for (int i = 0; i < count; i++) {
+                Key key = new Key(dataInput.readLong(), dataInput.readLong(), dataInput.readLong(), dataInput.readLong(), dataInput.readByte());
+                byte[] hash = new byte[dataInput.readUnsignedByte()];
+                dataInput.readFully(hash);
+                cache.keyToHash.put(key, hash);
+            }
+        }
+        LOG.debug("Read {} content hashes from cache {}", cache.size(), file);
+        return cache;
+    }
+
+    /**
+     * Write the cache in least recently used order via a temporary file
+     */
+    public void writeToPath(Path file) throws IOException {
+        Path tmp = file.getParent().resolve(file.getFileName() + ".tmp");
+        synchronized (keyToHash) {
+            try (OutputStream output = Files.newOutputStream(tmp);
+                 BufferedOutputStream bufferedOutput = new BufferedOutputStream(output);
+                 DataOutputStream dataOutput = new DataOutputStream(bufferedOutput)) {
+                dataOutput.writeInt(MAGIC_HEADER);
+                dataOutput.writeInt(keyToHash.size());
+                for (Map.Entry<Key, byte[]> entry : keyToHash.entrySet()) {
+                    Key key = entry.getKey();
+                    dataOutput.writeLong(key.device);
+                    dataOutput.writeLong(key.inode);
+                    dataOutput.writeLong(key.size);
+                    dataOutput.writeLong(key.modifiedTime);
+                    dataOutput.writeByte(key.type);
+                    dataOutput.writeByte(entry.getValue().length);
+                    dataOutput.write(entry.getValue());
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        LOG.debug("Written {} content hashes to cache {}", size(), file);
+    }
+
+    @Override
+    public String toString() {
+        return "ContentHashCache{entries=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+    }
+
+    /**
+     * Map in access order which removes the least recently used entry beyond the maximum entries
+     */
+    private static class LruMap extends LinkedHashMap<Key, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static class Key {
+
+        final long device;
+        final long inode;
+        final long size;
+        final long modifiedTime;
+        final byte type;
+
+        Key(long device, long inode, long size, long modifiedTime, byte type) {
+            this.device = device;
+            this.inode = inode;
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.type = type;
+        }
+
+        /**
+         * @return Key of the file or null if the file system has no device and inode
+         */
+        static Key create(BasicFileAttributes attributes, byte type) {
+            long device = FileKeyUtil.getDevice(attributes.fileKey());
+            long inode = FileKeyUtil.getInode(attributes.fileKey());
+            if (device == FileKeyUtil.UNKNOWN_DEVICE || inode == FileKeyUtil.UNKNOWN_INODE) {
+                return null;
+            }
+            return new Key(device, inode, attributes.size(), attributes.lastModifiedTime().toMillis(), type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+
+            return device == that.device &&
+                    inode == that.inode &&
+                    size == that.size &&
+                    modifiedTime == that.modifiedTime &&
+                    type == that.type;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (device ^ (device >>> 32));
+            result = 31 * result + (int) (inode ^ (inode >>> 32));
+            result = 31 * result + (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (modifiedTime ^ (modifiedTime >>> 32));
+            result = 31 * result + type;
+            return result;
+        }
+    }
+}
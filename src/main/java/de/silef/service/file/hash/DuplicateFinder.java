@@ -0,0 +1,281 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.util.ByteUtil;
+import de.silef.service.file.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.extension.ExtensionType.QUICK_FINGERPRINT;
+
+/**
+ * Finds files with equal content in a staged pipeline, so only files which still collide are
+ * read completely:
+ *
+ * 1. Group non empty regular files by file size
+ * 2. Group files of equal size by their quick fingerprint of head and tail
+ * 3. Group files of equal fingerprint by their full content hash
+ *
+ * Missing fingerprints and content hashes are created on demand by the hash workers of the
+ * calculator and attached by modifications of their file index. In copy on write mode each modification creates a new version, so the
+ * candidates are looked up again in the current version afterwards. Existing content hashes are
+ * reused and skip the fingerprint stage.
+ *
+ * With multiple indices only groups are returned which contain files of the first index and of
+ * any other index.
+ *
+ * Hard links are grouped by inode up front. Only one file per inode is fingerprinted and hashed.
+ * The hard links of the first file of a group are omitted since they share its inode already.
+ */
+public class DuplicateFinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    private final FileContentHashCalculator calculator;
+
+    private final ContentHashAlgorithm algorithm;
+
+    public DuplicateFinder(FileContentHashCalculator calculator, ContentHashAlgorithm algorithm) {
+        this.calculator = calculator;
+        this.algorithm = algorithm;
+    }
+
+    public List<DuplicateGroup> findDuplicates(FileIndex... indices) {
+        List<Candidate> files = new ArrayList<>();
+        long linkCount = 0;
+        for (FileIndex index : indices) {
+            InodeMap<Candidate> inodeToCandidate = new InodeMap<>();
+            List<IndexNode> nodes = index.getRoot().stream()
+                    .filter(IndexNode::isFile)
+                    .filter(n -> !n.isLink())
+                    .filter(n -> getFileSize(n) > 0)
+                    .collect(Collectors.toList());
+            for (IndexNode node : nodes) {
+                InodeKey key = InodeKey.create(node);
+                Path path = index.getBase().resolve(node.getRelativePath());
+                Candidate existing = key != null ? inodeToCandidate.get(key, path) : null;
+                if (existing != null) {
+                    existing.links.add(node);
+                    linkCount++;
+                    continue;
+                }
+                Candidate candidate = new Candidate(index, node, getFileSize(node));
+                files.add(candidate);
+                if (key != null) {
+                    inodeToCandidate.put(key, path, candidate);
+                }
+            }
+        }
+        LOG.debug("Skip {} hard links of {} files", linkCount, files.size());
+
+        List<List<Candidate>> sizeGroups = groupBy(Collections.singletonList(files), c -> c.size, indices);
+        LOG.info("Found {} of {} files with equal size of {}", countFiles(sizeGroups), files.size(), ByteUtil.toHumanSize(countBytes(sizeGroups)));
+
+        List<List<Candidate>> fingerprintGroups = groupByFingerprint(sizeGroups, indices);
+        long hashBytes = countMissingHashBytes(fingerprintGroups);
+        LOG.info("Found {} files with equal fingerprint. Hash {} of {} with equal size", countFiles(fingerprintGroups), ByteUtil.toHumanSize(hashBytes), ByteUtil.toHumanSize(countBytes(sizeGroups)));
+
+        createMissingHashes(fingerprintGroups, indices);
+
+        List<List<Candidate>> hashGroups = groupBy(fingerprintGroups, this::getHash, indices);
+        List<DuplicateGroup> duplicates = new ArrayList<>(hashGroups.size());
+        for (List<Candidate> group : hashGroups) {
+            Candidate first = group.get(0);
+            DuplicateGroup duplicate = new DuplicateGroup(HashUtil.toHex(first.node.getExtensionByType(algorithm.getExtensionType().value).getData()), first.size);
+            duplicate.add(first.index, first.node);
+            for (Candidate candidate : group.subList(1, group.size())) {
+                duplicate.add(candidate.index, candidate.node);
+                candidate.links.forEach(link -> duplicate.add(candidate.index, link));
+            }
+            duplicates.add(duplicate);
+        }
+        LOG.info("Found {} files in {} duplicate groups", countFiles(hashGroups), duplicates.size());
+        return duplicates;
+    }
+
+    private List<List<Candidate>> groupByFingerprint(List<List<Candidate>> sizeGroups, FileIndex[] indices) {
+        List<Candidate> missing = sizeGroups.stream()
+                .filter(group -> !hasHashes(group))
+                .flatMap(List::stream)
+                .filter(c -> !c.node.hasExtensionType(QUICK_FINGERPRINT.value))
+                .collect(Collectors.toList());
+        createMissingFingerprints(missing, indices);
+
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : sizeGroups) {
+            if (hasHashes(group)) {
+                result.add(group);
+            } else {
+                result.addAll(groupBy(Collections.singletonList(group), this::getFingerprint, indices));
+            }
+        }
+        return result;
+    }
+
+    private boolean hasHashes(List<Candidate> group) {
+        return group.stream().allMatch(c -> getHash(c) != null);
+    }
+
+    private void createMissingFingerprints(List<Candidate> missing, FileIndex[] indices) {
+        List<Path> paths = missing.stream().map(Candidate::getPath).collect(Collectors.toList());
+        List<IndexExtension> fingerprints = calculator.createFingerprints(paths);
+        Map<Candidate, IndexExtension> candidateToFingerprint = new IdentityHashMap<>();
+        for (int i = 0; i < missing.size(); i++) {
+            if (fingerprints.get(i) != null) {
+                candidateToFingerprint.put(missing.get(i), fingerprints.get(i));
+            }
+        }
+        for (FileIndex index : indices) {
+            attach(index, candidateToFingerprint);
+        }
+    }
+
+    /**
+     * Attach the extensions of candidates of the index by one modification and look up the
+     * candidates in the new version
+     */
+    private void attach(FileIndex index, Map<Candidate, IndexExtension> candidateToExtension) {
+        List<Candidate> candidates = candidateToExtension.keySet().stream()
+                .filter(c -> c.index == index)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return;
+        }
+        index.modify(editor -> {
+            for (Candidate candidate : candidates) {
+                IndexNode node = editor.edit(candidate.node.getRelativePath());
+                if (node != null) {
+                    node.addExtension(candidateToExtension.get(candidate));
+                }
+            }
+        });
+        candidates.forEach(Candidate::refresh);
+    }
+
+    private void createMissingHashes(List<List<Candidate>> groups, FileIndex[] indices) {
+        for (FileIndex index : indices) {
+            List<Candidate> candidates = groups.stream()
+                    .flatMap(List::stream)
+                    .filter(c -> c.index == index && getHash(c) == null)
+                    .collect(Collectors.toList());
+            if (candidates.isEmpty()) {
+                continue;
+            }
+            Set<IndexNode> missing = Collections.newSetFromMap(new IdentityHashMap<>());
+            candidates.forEach(c -> missing.add(c.node));
+            HashStatistics statistics = calculator.calculate(index, missing::contains);
+            candidates.forEach(Candidate::refresh);
+            LOG.debug("Created content hashes of duplicate candidates in {}: {}", index.getBase(), statistics);
+        }
+    }
+
+    /**
+     * Split each group by given key. Candidates without key are dropped
+     *
+     * @return Groups which are still duplicate candidates
+     */
+    private <K> List<List<Candidate>> groupBy(List<List<Candidate>> groups, Function<Candidate, K> keyFunction, FileIndex[] indices) {
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            Map<K, List<Candidate>> keyToCandidates = new LinkedHashMap<>();
+            for (Candidate candidate : group) {
+                K key = keyFunction.apply(candidate);
+                if (key != null) {
+                    keyToCandidates.computeIfAbsent(key, k -> new ArrayList<>()).add(candidate);
+                }
+            }
+            keyToCandidates.values().stream()
+                    .filter(g -> isCandidateGroup(g, indices))
+                    .forEach(result::add);
+        }
+        return result;
+    }
+
+    private static boolean isCandidateGroup(List<Candidate> group, FileIndex[] indices) {
+        if (group.size() < 2) {
+            return false;
+        } else if (indices.length < 2) {
+            return true;
+        }
+        FileIndex primary = indices[0];
+        return group.stream().anyMatch(c -> c.index == primary) && group.stream().anyMatch(c -> c.index != primary);
+    }
+
+    /**
+     * @return Read-only view of the fingerprint as group key without copy
+     */
+    private ByteBuffer getFingerprint(Candidate candidate) {
+        IndexExtension extension = candidate.node.getExtensionByType(QUICK_FINGERPRINT.value);
+        return extension != null ? extension.getDataView() : null;
+    }
+
+    /**
+     * @return Read-only view of the content hash as group key without copy
+     */
+    private ByteBuffer getHash(Candidate candidate) {
+        IndexExtension extension = candidate.node.getExtensionByType(algorithm.getExtensionType().value);
+        return extension != null ? extension.getDataView() : null;
+    }
+
+    private long countMissingHashBytes(List<List<Candidate>> groups) {
+        return groups.stream().flatMap(List::stream).filter(c -> getHash(c) == null).mapToLong(c -> c.size).sum();
+    }
+
+    private static long countFiles(List<List<Candidate>> groups) {
+        return groups.stream().mapToLong(List::size).sum();
+    }
+
+    private static long countBytes(List<List<Candidate>> groups) {
+        return groups.stream().flatMap(List::stream).mapToLong(c -> c.size).sum();
+    }
+
+    private static long getFileSize(IndexNode node) {
+        IndexExtension extension = node.getExtensionByType(BASIC_FILE.value);
+        if (extension instanceof BasicFileIndexExtension) {
+            return ((BasicFileIndexExtension) extension).getSize();
+        }
+        return 0;
+    }
+
+    private static class Candidate {
+
+        final FileIndex index;
+
+        IndexNode node;
+
+        final long size;
+
+        final List<IndexNode> links = new ArrayList<>();
+
+        Candidate(FileIndex index, IndexNode node, long size) {
+            this.index = index;
+            this.node = node;
+            this.size = size;
+        }
+
+        Path getPath() {
+            return index.getBase().resolve(node.getRelativePath());
+        }
+
+        /**
+         * Use the node of the current version of the index
+         */
+        void refresh() {
+            IndexNode current = index.find(node.getRelativePath());
+            if (current != null) {
+                node = current;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+
+import java.util.*;
+
+/**
+ * Files of one or more indices with equal size and equal content hash
+ */
+public class DuplicateGroup {
+
+    private final String hash;
+
+    private final long size;
+
+    private final Map<FileIndex, List<IndexNode>> indexToNodes = new LinkedHashMap<>();
+
+    DuplicateGroup(String hash, long size) {
+        this.hash = hash;
+        this.size = size;
+    }
+
+    void add(FileIndex index, IndexNode node) {
+        indexToNodes.computeIfAbsent(index, i -> new ArrayList<>()).add(node);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Nodes of given index in tree order. Empty if the index has no node in this group
+     */
+    public List<IndexNode> getNodes(FileIndex index) {
+        return indexToNodes.getOrDefault(index, Collections.emptyList());
+    }
+
+    public int getNodeCount() {
+        return indexToNodes.values().stream().mapToInt(List::size).sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateGroup{" + hash + ", " + getNodeCount() + " files of " + size + " bytes}";
+    }
+}
@@ -0,0 +1,516 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ChunkHashIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.FileContentHashIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.extension.QuickFingerprintIndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeEditor;
+import de.silef.service.file.node.IndexNodeWalker;
+import de.silef.service.file.tree.Visitor;
+import de.silef.service.file.util.ByteUtil;
+import de.silef.service.file.util.FastCdcChunker;
+import de.silef.service.file.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.extension.ExtensionType.CHUNK_HASH;
+import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
+
+/**
+ * Creates missing file content hashes with a pool of hash workers.
+ *
+ * The index tree is walked on the calling thread, which submits files to a bounded work queue.
+ * Workers read and digest the files. Results are attached on the calling thread only, in batches
+ * of all finished results. A batch of a file index is attached by one modification, which
+ * creates a new version of the tree in copy on write mode. Otherwise the nodes are modified in
+ * place while holding the monitor of the root node. So the tree is never modified concurrently
+ * and others can synchronize on the root node to read a consistent tree.
+ *
+ * Hard links of a file are read only once. Files with the same inode, size and modification
+ * time share the hash of the first submitted file.
+ *
+ * Quick fingerprints of duplicate candidates are created by the same number of workers and the
+ * same bounded work queue.
+ */
+public class FileContentHashCalculator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileContentHashCalculator.class);
+
+    private static final long LOG_INTERVAL = 1 << 30; // 1GB
+
+    private static final HashProgressListener NO_PROGRESS = (root, statistics) -> {};
+
+    private int threads;
+
+    private int queueSize;
+
+    private ContentHashAlgorithm algorithm;
+
+    private boolean createChunks;
+
+    private ContentHashCache hashCache;
+
+    public FileContentHashCalculator(int threads) {
+        this(threads, ContentHashAlgorithm.SHA1);
+    }
+
+    public FileContentHashCalculator(int threads, ContentHashAlgorithm algorithm) {
+        this(threads, threads * 4, algorithm);
+    }
+
+    public FileContentHashCalculator(int threads, int queueSize) {
+        this(threads, queueSize, ContentHashAlgorithm.SHA1);
+    }
+
+    /**
+     * @param threads Number of hash workers
+     * @param queueSize Maximum number of files which are submitted but not yet attached
+     * @param algorithm Hash algorithm of the file content hashes
+     */
+    public FileContentHashCalculator(int threads, int queueSize, ContentHashAlgorithm algorithm) {
+        this(threads, queueSize, algorithm, false);
+    }
+
+    /**
+     * @param createChunks Create content defined chunk hashes of regular files in the same read
+     *                     pass as the content hash
+     */
+    public FileContentHashCalculator(int threads, int queueSize, ContentHashAlgorithm algorithm, boolean createChunks) {
+        this(threads, queueSize, algorithm, createChunks, null);
+    }
+
+    /**
+     * @param hashCache Cache of content hashes which is used before files are read. Might be null
+     */
+    public FileContentHashCalculator(int threads, int queueSize, ContentHashAlgorithm algorithm, boolean createChunks, ContentHashCache hashCache) {
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Thread count and queue size must be greater than 0");
+        }
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.algorithm = algorithm;
+        this.createChunks = createChunks;
+        this.hashCache = hashCache;
+    }
+
+    /**
+     * Create file content hashes of files and links without hash. The nodes are modified in place
+     * while holding the monitor of the root node
+     *
+     * @param base Base path of the index
+     * @param root Root node of the index
+     * @param hashFileFilter Additional filter for files to hash
+     * @return Statistics of created hashes
+     */
+    public HashStatistics calculate(Path base, IndexNode root, Predicate<IndexNode> hashFileFilter) {
+        NodeModifier modifier = modification -> {
+            synchronized (root) {
+                modification.accept(IndexNodeEditor.inPlace(root));
+            }
+        };
+        return calculate(base, root, hashFileFilter, modifier, () -> root, NO_PROGRESS);
+    }
+
+    /**
+     * Create file content hashes of files and links without hash of the current version of the
+     * index. Hashes are attached by modifications of the index, so in copy on write mode each
+     * batch creates a new version and the walked version is not modified
+     *
+     * @param hashFileFilter Additional filter for files of the current version to hash
+     * @return Statistics of created hashes
+     * @see FileIndex#modify(java.util.function.Consumer)
+     */
+    public HashStatistics calculate(FileIndex index, Predicate<IndexNode> hashFileFilter) {
+        return calculate(index.getBase(), index.getRoot(), hashFileFilter, index::modify, index::getRoot, NO_PROGRESS);
+    }
+
+    /**
+     * The listener is called with the root of the version which contains the attached batch.
+     * Versions of a file index in copy on write mode are never modified afterwards, so the
+     * listener might keep the root and read it on other threads
+     *
+     * @param index File index in copy on write mode
+     * @param progressListener Listener which is called after each batch of attached file hashes
+     * @throws IllegalArgumentException if the index is not in copy on write mode
+     * @see #calculate(FileIndex, Predicate)
+     */
+    public HashStatistics calculate(FileIndex index, Predicate<IndexNode> hashFileFilter, HashProgressListener progressListener) {
+        if (!index.isCopyOnWrite()) {
+            throw new IllegalArgumentException("Progress of content hashes requires an index in copy on write mode");
+        }
+        return calculate(index.getBase(), index.getRoot(), hashFileFilter, index::modify, index::getRoot, progressListener);
+    }
+
+    private HashStatistics calculate(Path base, IndexNode root, Predicate<IndexNode> hashFileFilter, NodeModifier modifier, Supplier<IndexNode> currentRoot, HashProgressListener progressListener) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, createThreadFactory());
+        try {
+            HashRun run = new HashRun(base, modifier, currentRoot, new ExecutorCompletionService<>(executor), progressListener);
+            IndexNodeWalker.walk(root, new Visitor<IndexNode>() {
+                @Override
+                public VisitorResult visitFile(IndexNode file) throws IOException {
+                    if (requiresFileHash(file) && hashFileFilter.test(file)) {
+                        run.submit(file);
+                    }
+                    return super.visitFile(file);
+                }
+            });
+            run.awaitAll();
+            run.statistics.finish();
+            return run.statistics;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create quick fingerprints of the files with the hash workers. Files are submitted to the
+     * bounded work queue like files of content hashes
+     *
+     * @return Fingerprints in the order of the files. Fingerprints of unreadable files are null
+     */
+    public List<IndexExtension> createFingerprints(List<Path> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, createThreadFactory());
+        try {
+            CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+            IndexExtension[] fingerprints = new IndexExtension[files.size()];
+            int pending = 0;
+            for (int i = 0; i < files.size(); i++) {
+                if (pending >= queueSize) {
+                    takeFingerprint(completionService);
+                    pending--;
+                }
+                int index = i;
+                completionService.submit(() -> {
+                    fingerprints[index] = createFingerprint(files.get(index));
+                    return index;
+                });
+                pending++;
+            }
+            for (; pending > 0; pending--) {
+                takeFingerprint(completionService);
+            }
+            return Arrays.asList(fingerprints);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static IndexExtension createFingerprint(Path file) {
+        try {
+            return QuickFingerprintIndexExtension.create(file);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not create fingerprint of {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Wait for the next fingerprint. The completion service publishes the fingerprint of the
+     * worker to the calling thread
+     */
+    private static void takeFingerprint(CompletionService<Integer> completionService) {
+        try {
+            completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for fingerprints", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected error of hash worker", e.getCause());
+        }
+    }
+
+    private boolean requiresFileHash(IndexNode file) {
+        if (!file.isFile() && !file.isLink()) {
+            return false;
+        } else if (!file.hasExtensionType(algorithm.getExtensionType().value)) {
+            return true;
+        }
+        return createChunks && file.isFile() && !file.isLink() && !file.hasExtensionType(CHUNK_HASH.value);
+    }
+
+    private List<IndexExtension> createExtensions(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isRegularFile()) {
+            return Collections.singletonList(FileContentHashIndexExtension.create(path, algorithm));
+        }
+
+        byte type = algorithm.getExtensionType().value;
+        long size = attributes.size();
+        boolean chunking = createChunks && FastCdcChunker.getAverageSizeBits(size) <= FastCdcChunker.MAX_AVERAGE_SIZE_BITS;
+        if (!chunking && hashCache != null) {
+            byte[] cachedHash = hashCache.get(attributes, type);
+            if (cachedHash != null) {
+                return Collections.singletonList(new FileContentHashIndexExtension(type, cachedHash));
+            }
+        }
+
+        List<IndexExtension> extensions;
+        byte[] hash;
+        if (chunking) {
+            FastCdcChunker chunker = FastCdcChunker.createForSize(size);
+            hash = HashUtil.getFileHash(path, size, algorithm.createDigest(), chunker);
+            extensions = Arrays.asList(new FileContentHashIndexExtension(type, hash), ChunkHashIndexExtension.create(chunker));
+        } else {
+            hash = HashUtil.getFileHash(path, size, algorithm.createDigest());
+            extensions = Collections.singletonList(new FileContentHashIndexExtension(type, hash));
+        }
+        putHashCache(path, attributes, type, hash);
+        return extensions;
+    }
+
+    private void putHashCache(Path path, BasicFileAttributes attributes, byte type, byte[] hash) throws IOException {
+        if (hashCache == null) {
+            return;
+        }
+        BasicFileAttributes current = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (current.size() == attributes.size() && current.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+            hashCache.put(attributes, type, hash);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "hash-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static long getFileSize(IndexNode file) {
+        IndexExtension extension = file.getExtensionByType(BASIC_FILE.value);
+        if (extension instanceof BasicFileIndexExtension) {
+            return ((BasicFileIndexExtension) extension).getSize();
+        }
+        return 0;
+    }
+
+    /**
+     * Modifies nodes of the tree with an editor
+     */
+    private interface NodeModifier {
+
+        void modify(Consumer<IndexNodeEditor> modification);
+    }
+
+    private class HashRun {
+
+        private final Path base;
+
+        private final NodeModifier modifier;
+
+        private final Supplier<IndexNode> currentRoot;
+
+        private final CompletionService<HashResult> completionService;
+
+        private final HashProgressListener progressListener;
+
+        private final HashStatistics statistics = new HashStatistics();
+
+        private final InodeMap<InodeGroup> inodeToGroup = new InodeMap<>();
+
+        private int pending = 0;
+
+        private long lastLogByteCount = 0;
+
+        HashRun(Path base, NodeModifier modifier, Supplier<IndexNode> currentRoot, CompletionService<HashResult> completionService, HashProgressListener progressListener) {
+            this.base = base;
+            this.modifier = modifier;
+            this.currentRoot = currentRoot;
+            this.completionService = completionService;
+            this.progressListener = progressListener;
+        }
+
+        void submit(IndexNode file) {
+            Path path = base.resolve(file.getRelativePath());
+            InodeKey key = InodeKey.create(file);
+            InodeGroup group = null;
+            if (key != null) {
+                group = inodeToGroup.get(key, path);
+                if (group != null) {
+                    addLink(group, file);
+                    return;
+                }
+                group = new InodeGroup();
+                inodeToGroup.put(key, path, group);
+            }
+
+            while (pending >= queueSize) {
+                attachNext();
+            }
+            InodeGroup fileGroup = group;
+            completionService.submit(() -> hash(file, path, fileGroup));
+            pending++;
+        }
+
+        void awaitAll() {
+            while (pending > 0) {
+                attachNext();
+            }
+        }
+
+        private void addLink(InodeGroup group, IndexNode file) {
+            if (group.failed) {
+                statistics.addError();
+                return;
+            } else if (group.extensions == null) {
+                group.links.add(file);
+                return;
+            }
+            modifier.modify(editor -> {
+                attach(editor, file, group.extensions);
+                statistics.addLinkedFile();
+            });
+        }
+
+        private HashResult hash(IndexNode file, Path path, InodeGroup group) {
+            try {
+                return new HashResult(file, path, group, createExtensions(path), null);
+            } catch (IOException | RuntimeException e) {
+                return new HashResult(file, path, group, null, e);
+            }
+        }
+
+        /**
+         * Wait for the next result and attach it together with all other finished results
+         */
+        private void attachNext() {
+            List<HashResult> results = new ArrayList<>();
+            for (HashResult result = nextResult(true); result != null; result = nextResult(false)) {
+                if (result.extensions != null) {
+                    results.add(result);
+                    continue;
+                }
+                LOG.warn("Could not create content hash of " + result.path, result.error);
+                statistics.addError();
+                if (result.group != null) {
+                    // Hard links share the content and fail as well
+                    result.group.links.forEach(link -> statistics.addError());
+                    result.group.links.clear();
+                    result.group.failed = true;
+                }
+            }
+            if (results.isEmpty()) {
+                return;
+            }
+
+            modifier.modify(editor -> {
+                for (HashResult result : results) {
+                    attach(editor, result.file, result.extensions);
+                    statistics.addFile(getFileSize(result.file));
+                    if (result.group != null) {
+                        for (IndexNode link : result.group.links) {
+                            attach(editor, link, result.extensions);
+                            statistics.addLinkedFile();
+                        }
+                        result.group.links.clear();
+                        result.group.extensions = result.extensions;
+                    }
+                }
+            });
+            progressListener.onProgress(currentRoot.get(), statistics);
+            logProgress();
+        }
+
+        /**
+         * @param wait true to wait for the next result
+         * @return Next finished result or null if no result is finished and wait is false
+         */
+        private HashResult nextResult(boolean wait) {
+            try {
+                Future<HashResult> future = wait ? completionService.take() : completionService.poll();
+                if (future == null) {
+                    return null;
+                }
+                pending--;
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for content hashes", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Unexpected error of hash worker", e.getCause());
+            }
+        }
+
+        /**
+         * Attach the extensions to the node of the file in the edited tree. Files which were
+         * removed from the tree meanwhile are skipped
+         */
+        private void attach(IndexNodeEditor editor, IndexNode file, List<IndexExtension> extensions) {
+            IndexNode node = editor.edit(file.getRelativePath());
+            if (node == null) {
+                LOG.debug("Skip content hash of removed file {}", file.getRelativePath());
+                return;
+            }
+            node.addAllExtensions(extensions);
+            resetUniversalHashToRoot(node.getParent());
+        }
+
+        private void logProgress() {
+            if (lastLogByteCount + LOG_INTERVAL < statistics.getByteCount()) {
+                LOG.info("Created content hashes of {}", statistics);
+                lastLogByteCount = statistics.getByteCount() - statistics.getByteCount() % LOG_INTERVAL;
+            }
+        }
+
+        private void resetUniversalHashToRoot(IndexNode dir) {
+            if (dir == null) {
+                return;
+            }
+            if (dir.hasExtensionType(UNIVERSAL_HASH.value)) {
+                dir.removeExtensionType(UNIVERSAL_HASH.value);
+                resetUniversalHashToRoot(dir.getParent());
+            }
+        }
+    }
+
+    /**
+     * Hard links of a submitted file. Links are collected until the hash of the file is attached
+     */
+    private static class InodeGroup {
+
+        final List<IndexNode> links = new ArrayList<>();
+
+        List<IndexExtension> extensions;
+
+        boolean failed;
+    }
+
+    private static class HashResult {
+
+        final IndexNode file;
+
+        final Path path;
+
+        final InodeGroup group;
+
+        final List<IndexExtension> extensions;
+
+        final Exception error;
+
+        HashResult(IndexNode file, Path path, InodeGroup group, List<IndexExtension> extensions, Exception error) {
+            this.file = file;
+            this.path = path;
+            this.group = group;
+            this.extensions = extensions;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.util.ByteUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes checkpoints of the index during content hashing, so an aborted run loses at most one
+ * interval of work.
+ *
+ * A checkpoint is due after the given count of hashed bytes or the given time. The root of the
+ * progress is written as is on a background thread, so hash workers continue while the index is
+ * written. Progress is only reported for a file index in copy on write mode, whose versions are
+ * never modified afterwards. So taking the snapshot costs no copy and no lock. If the previous
+ * checkpoint is still written, the checkpoint is postponed.
+ */
+public class HashCheckpointer implements HashProgressListener, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashCheckpointer.class);
+
+    public interface CheckpointWriter {
+        void write(IndexNode root) throws IOException;
+    }
+
+    private final long byteInterval;
+
+    private final long timeInterval;
+
+    private final CheckpointWriter writer;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Future<?> pendingWrite;
+
+    private long lastByteCount = 0;
+
+    private long lastTime = System.currentTimeMillis();
+
+    /**
+     * @param byteInterval Hashed bytes between checkpoints. Use 0 to disable
+     * @param timeInterval Milliseconds between checkpoints. Use 0 to disable
+     * @param writer Writer of the index snapshot
+     */
+    public HashCheckpointer(long byteInterval, long timeInterval, CheckpointWriter writer) {
+        this.byteInterval = byteInterval;
+        this.timeInterval = timeInterval;
+        this.writer = writer;
+    }
+
+    @Override
+    public void onProgress(IndexNode root, HashStatistics statistics) {
+        long now = System.currentTimeMillis();
+        boolean bytesDue = byteInterval > 0 && statistics.getByteCount() - lastByteCount >= byteInterval;
+        boolean timeDue = timeInterval > 0 && now - lastTime >= timeInterval;
+        if (!bytesDue && !timeDue) {
+            return;
+        } else if (pendingWrite != null && !pendingWrite.isDone()) {
+            return;
+        }
+
+        IndexNode snapshot = root;
+        lastByteCount = statistics.getByteCount();
+        lastTime = now;
+        LOG.debug("Writing checkpoint after {} of hashed content", ByteUtil.toHumanSize(lastByteCount));
+        pendingWrite = executor.submit(() -> {
+            try {
+                writer.write(snapshot);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Could not write checkpoint", e);
+            }
+        });
+    }
+
+    /**
+     * Waits for a pending checkpoint write
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
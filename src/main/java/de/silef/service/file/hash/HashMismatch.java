@@ -0,0 +1,36 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.node.IndexNode;
+
+/**
+ * Stored hash of a file or directory which does not match its actual hash
+ */
+public class HashMismatch {
+
+    private final IndexNode node;
+
+    private final byte[] expected;
+
+    private final byte[] actual;
+
+    HashMismatch(IndexNode node, byte[] expected, byte[] actual) {
+        this.node = node;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    public IndexNode getNode() {
+        return node;
+    }
+
+    /**
+     * @return Stored hash of the index
+     */
+    public byte[] getExpected() {
+        return expected;
+    }
+
+    public byte[] getActual() {
+        return actual;
+    }
+}
@@ -0,0 +1,14 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.node.IndexNode;
+
+/**
+ * Listener of content hash progress of a file index in copy on write mode. It is called on the
+ * thread which attaches the hashes with the root of the version which contains the attached
+ * batch. The version is never modified afterwards, so the root might be kept and read on other
+ * threads without a lock.
+ */
+public interface HashProgressListener {
+
+    void onProgress(IndexNode root, HashStatistics statistics);
+}
@@ -0,0 +1,96 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.util.ByteUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregated throughput of a hash run
+ */
+public class HashStatistics {
+
+    private final long startNanos;
+
+    private long fileCount;
+
+    private long byteCount;
+
+    private long errorCount;
+
+    private long linkedFileCount;
+
+    private long endNanos;
+
+    public HashStatistics() {
+        startNanos = System.nanoTime();
+    }
+
+    void addFile(long bytes) {
+        fileCount++;
+        byteCount += bytes;
+    }
+
+    /**
+     * Count a hard link which shares the hash of an already hashed file
+     */
+    void addLinkedFile() {
+        linkedFileCount++;
+    }
+
+    void addError() {
+        errorCount++;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public long getLinkedFileCount() {
+        return linkedFileCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getElapsedMillis() {
+        long end = endNanos > 0 ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(byteCount);
+    }
+
+    public double getFilesPerSecond() {
+        return perSecond(fileCount);
+    }
+
+    private double perSecond(long value) {
+        long millis = getElapsedMillis();
+        if (millis <= 0) {
+            return 0;
+        }
+        return value * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files with %s and %d hard links in %.1fs (%.1f MB/s, %.1f files/s, %d errors)",
+                fileCount,
+                ByteUtil.toHumanSize(byteCount),
+                linkedFileCount,
+                getElapsedMillis() / 1000.0,
+                getBytesPerSecond() / (1 << 20),
+                getFilesPerSecond(),
+                errorCount);
+    }
+}
@@ -0,0 +1,68 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.util.FileKeyUtil;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+
+/**
+ * Identifies hard link candidates of the same file within an index by inode. File size and
+ * modification time guard against stale inodes of the index.
+ *
+ * The index does not store the device, so equal keys might still be files of different devices.
+ * See InodeMap which compares the devices of equal keys.
+ */
+class InodeKey {
+
+    private final long inode;
+
+    private final long size;
+
+    private final long modifiedTime;
+
+    private InodeKey(long inode, long size, long modifiedTime) {
+        this.inode = inode;
+        this.size = size;
+        this.modifiedTime = modifiedTime;
+    }
+
+    /**
+     * @return Key of a regular file or null if the inode is not available
+     */
+    static InodeKey create(IndexNode node) {
+        if (!node.isFile() || node.isLink()) {
+            return null;
+        }
+        IndexExtension extension = node.getExtensionByType(BASIC_FILE.value);
+        if (!(extension instanceof BasicFileIndexExtension)) {
+            return null;
+        }
+        BasicFileIndexExtension basicFile = (BasicFileIndexExtension) extension;
+        if (basicFile.getFileKey() == FileKeyUtil.UNKNOWN_INODE) {
+            return null;
+        }
+        return new InodeKey(basicFile.getFileKey(), basicFile.getSize(), basicFile.getModifiedTime());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        InodeKey that = (InodeKey) o;
+
+        return inode == that.inode &&
+                size == that.size &&
+                modifiedTime == that.modifiedTime;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (inode ^ (inode >>> 32));
+        result = 31 * result + (int) (size ^ (size >>> 32));
+        result = 31 * result + (int) (modifiedTime ^ (modifiedTime >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.util.FileKeyUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of files by inode key and device. The device is read from the file system only for
+ * files with equal inode keys, so files without hard links cost no file access. Files with
+ * unknown device have no equal file.
+ *
+ * The map is not thread safe.
+ */
+class InodeMap<V> {
+
+    private final Map<InodeKey, List<Entry<V>>> keyToEntries = new HashMap<>();
+
+    /**
+     * @param path Path of the file to read the device from
+     * @return Value of a file with equal inode key and device or null
+     */
+    V get(InodeKey key, Path path) {
+        List<Entry<V>> entries = keyToEntries.get(key);
+        if (entries == null) {
+            return null;
+        }
+        long device = readDevice(path);
+        if (device == FileKeyUtil.UNKNOWN_DEVICE) {
+            return null;
+        }
+        for (Entry<V> entry : entries) {
+            if (entry.getDevice() == device) {
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    void put(InodeKey key, Path path, V value) {
+        keyToEntries.computeIfAbsent(key, k -> new ArrayList<>(1)).add(new Entry<>(path, value));
+    }
+
+    private static long readDevice(Path path) {
+        try {
+            return FileKeyUtil.getDevice(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey());
+        } catch (IOException e) {
+            return FileKeyUtil.UNKNOWN_DEVICE;
+        }
+    }
+
+    private static class Entry<V> {
+
+        final Path path;
+
+        final V value;
+
+        private boolean hasDevice = false;
+
+        private long device;
+
+        Entry(Path path, V value) {
+            this.path = path;
+            this.value = value;
+        }
+
+        /**
+         * The device is read once on the first collision
+         */
+        long getDevice() {
+            if (!hasDevice) {
+                device = readDevice(path);
+                hasDevice = true;
+            }
+            return device;
+        }
+    }
+}
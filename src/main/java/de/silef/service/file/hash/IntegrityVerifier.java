@@ -0,0 +1,333 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.extension.LastVerifiedIndexExtension;
+import de.silef.service.file.extension.UniversalHashIndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeWalker;
+import de.silef.service.file.tree.Visitor;
+import de.silef.service.file.util.BandwidthLimiter;
+import de.silef.service.file.util.HashUtil;
+import de.silef.service.file.util.ThrottledDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
+
+/**
+ * Verifies stored content hashes against the current file content to detect bit rot.
+ *
+ * The file phase walks the index tree and rehashes regular files with stored content hash on a
+ * pool of workers. Files whose size or modification time differ from the index are modified
+ * and not verified. The directory phase checks the stored universal hashes of the Merkle tree
+ * with the actual hashes of the mismatched files, so corrupted files are localized by the
+ * mismatched directories from the root downwards.
+ *
+ * Files which match their stored content hash get the time of the verification as last verified
+ * extension. The extensions are attached by one modification of the index after both phases, so
+ * in copy on write mode they are attached to a new version and the verified version is not
+ * modified. The tree is not modified otherwise.
+ */
+public class IntegrityVerifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IntegrityVerifier.class);
+
+    private static final long LOG_INTERVAL = 1 << 30; // 1GB
+
+    private final int threads;
+
+    private final int queueSize;
+
+    private final ContentHashAlgorithm algorithm;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    public IntegrityVerifier(int threads, ContentHashAlgorithm algorithm) {
+        this(threads, threads * 4, algorithm, new BandwidthLimiter(0));
+    }
+
+    /**
+     * @param threads Number of hash workers
+     * @param queueSize Maximum number of files which are submitted but not yet compared
+     * @param algorithm Hash algorithm of the stored content hashes
+     * @param bandwidthLimiter Shared read bandwidth of all workers
+     */
+    public IntegrityVerifier(int threads, int queueSize, ContentHashAlgorithm algorithm, BandwidthLimiter bandwidthLimiter) {
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Thread count and queue size must be greater than 0");
+        }
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.algorithm = algorithm;
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * Verify all files with stored content hash of the current version of the index
+     */
+    public VerifyResult verify(FileIndex index) throws IOException {
+        IndexNode root = index.getRoot();
+        List<IndexNode> files = new ArrayList<>();
+        IndexNodeWalker.walk(root, new Visitor<IndexNode>() {
+            @Override
+            public VisitorResult visitFile(IndexNode file) throws IOException {
+                if (isVerifiable(file)) {
+                    files.add(file);
+                }
+                return super.visitFile(file);
+            }
+        });
+        return verify(index, root, files, 0);
+    }
+
+    /**
+     * Verify given files in their order. No further files are submitted if the time budget is
+     * exceeded, already submitted files are verified
+     *
+     * @param files Files of the current version of the index to verify
+     * @param timeBudget Maximum milliseconds of the file phase. Use 0 for unlimited time
+     */
+    public VerifyResult verify(FileIndex index, List<IndexNode> files, long timeBudget) throws IOException {
+        return verify(index, index.getRoot(), files, timeBudget);
+    }
+
+    private VerifyResult verify(FileIndex index, IndexNode root, List<IndexNode> files, long timeBudget) throws IOException {
+        VerifyResult result = new VerifyResult();
+        VerifyRun run = verifyFiles(index.getBase(), files, timeBudget, result);
+
+        long start = System.nanoTime();
+        if (root.isDirectory()) {
+            verifyDirectory(root, run.actualHashes, result);
+        }
+        result.setDirectoryNanos(System.nanoTime() - start);
+
+        if (!run.verifiedTimes.isEmpty()) {
+            index.modify(editor -> run.verifiedTimes.forEach((file, time) -> {
+                IndexNode node = editor.edit(file.getRelativePath());
+                if (node != null) {
+                    node.addExtension(LastVerifiedIndexExtension.create(time));
+                }
+            }));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the node is a regular file with stored content hash
+     */
+    public boolean isVerifiable(IndexNode file) {
+        return file.isFile() && file.hasExtensionType(algorithm.getExtensionType().value);
+    }
+
+    private VerifyRun verifyFiles(Path base, List<IndexNode> files, long timeBudget, VerifyResult result) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, createThreadFactory());
+        try {
+            VerifyRun run = new VerifyRun(base, new ExecutorCompletionService<>(executor), result);
+            result.startFiles();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudget);
+            for (IndexNode file : files) {
+                if (timeBudget > 0 && System.nanoTime() - deadline > 0) {
+                    LOG.info("Stop verification due exceeded time budget of {}s", timeBudget / 1000);
+                    result.setBudgetExceeded();
+                    break;
+                }
+                if (isVerifiable(file)) {
+                    run.submit(file);
+                }
+            }
+            run.awaitAll();
+            result.getFileStatistics().finish();
+            return run;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private byte[] verifyDirectory(IndexNode dir, Map<IndexNode, byte[]> actualHashes, VerifyResult result) throws IOException {
+        byte[] hash = UniversalHashIndexExtension.createHash(dir, algorithm, child -> {
+            if (child.isDirectory()) {
+                return verifyDirectory(child, actualHashes, result);
+            } else if (actualHashes.containsKey(child)) {
+                return actualHashes.get(child);
+            }
+            return UniversalHashIndexExtension.getContentHash(child, algorithm);
+        });
+
+        if (UniversalHashIndexExtension.hasValidHash(dir, algorithm)) {
+            result.addDirectory();
+            byte[] expected = dir.getExtensionByType(UNIVERSAL_HASH.value).getData();
+            if (!Arrays.equals(expected, hash)) {
+                result.addDirectoryMismatch(new HashMismatch(dir, expected, hash));
+            }
+        }
+        return hash;
+    }
+
+    private byte[] getFileHash(Path path, BasicFileAttributes attributes) throws IOException {
+        MessageDigest digest = new ThrottledDigest(algorithm.createDigest(), bandwidthLimiter);
+        return HashUtil.getFileHash(path, attributes.size(), digest);
+    }
+
+    /**
+     * Files of index format version 1 have no modified time. They are compared by size and
+     * identity instead
+     */
+    private static boolean isModified(IndexNode file, BasicFileAttributes attributes) {
+        if (!attributes.isRegularFile()) {
+            return true;
+        }
+        IndexExtension extension = file.getExtensionByType(BASIC_FILE.value);
+        if (!(extension instanceof BasicFileIndexExtension)) {
+            return false;
+        }
+        BasicFileIndexExtension basicFile = (BasicFileIndexExtension) extension;
+        if (!basicFile.hasModifiedTime()) {
+            return !basicFile.hasEqualSizeAndIdentity(BasicFileIndexExtension.createFromAttributes(attributes));
+        }
+        return basicFile.getSize() != attributes.size() || basicFile.getModifiedTime() != attributes.lastModifiedTime().toMillis();
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "verify-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class VerifyRun {
+
+        private final Path base;
+
+        private final CompletionService<FileResult> completionService;
+
+        private final VerifyResult result;
+
+        private final Map<IndexNode, byte[]> actualHashes = new IdentityHashMap<>();
+
+        private final Map<IndexNode, Long> verifiedTimes = new IdentityHashMap<>();
+
+        private int pending = 0;
+
+        private long lastLogByteCount = 0;
+
+        VerifyRun(Path base, CompletionService<FileResult> completionService, VerifyResult result) {
+            this.base = base;
+            this.completionService = completionService;
+            this.result = result;
+        }
+
+        void submit(IndexNode file) {
+            while (pending >= queueSize) {
+                compareNext();
+            }
+            Path path = base.resolve(file.getRelativePath());
+            completionService.submit(() -> verify(file, path));
+            pending++;
+        }
+
+        void awaitAll() {
+            while (pending > 0) {
+                compareNext();
+            }
+        }
+
+        private FileResult verify(IndexNode file, Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (isModified(file, attributes)) {
+                    return new FileResult(file, path, 0, null, null);
+                }
+                long time = System.currentTimeMillis();
+                byte[] hash = getFileHash(path, attributes);
+                BasicFileAttributes current = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (isModified(file, current) || !current.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+                    return new FileResult(file, path, 0, null, null);
+                }
+                return new FileResult(file, path, attributes.size(), hash, null, time);
+            } catch (IOException | RuntimeException e) {
+                return new FileResult(file, path, 0, null, e);
+            }
+        }
+
+        private void compareNext() {
+            FileResult fileResult;
+            try {
+                fileResult = completionService.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for content hashes", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Unexpected error of verify worker", e.getCause());
+            } finally {
+                pending--;
+            }
+
+            HashStatistics statistics = result.getFileStatistics();
+            if (fileResult.error != null) {
+                LOG.warn("Could not verify content hash of " + fileResult.path, fileResult.error);
+                statistics.addError();
+                return;
+            } else if (fileResult.hash == null) {
+                LOG.debug("Skip verification of modified file {}", fileResult.path);
+                result.addModifiedFile();
+                return;
+            }
+
+            statistics.addFile(fileResult.size);
+            byte[] expected = fileResult.file.getExtensionByType(algorithm.getExtensionType().value).getData();
+            if (!Arrays.equals(expected, fileResult.hash)) {
+                LOG.warn("Content hash mismatch of {}", fileResult.path);
+                result.addFileMismatch(new HashMismatch(fileResult.file, expected, fileResult.hash));
+                actualHashes.put(fileResult.file, fileResult.hash);
+            } else {
+                verifiedTimes.put(fileResult.file, fileResult.time);
+            }
+            if (lastLogByteCount + LOG_INTERVAL < statistics.getByteCount()) {
+                LOG.info("Verified content hashes of {}", statistics);
+                lastLogByteCount = statistics.getByteCount() - statistics.getByteCount() % LOG_INTERVAL;
+            }
+        }
+    }
+
+    private static class FileResult {
+        final IndexNode file;
+        final Path path;
+        final long size;
+        final byte[] hash;
+        final Exception error;
+        final long time;
+
+        FileResult(IndexNode file, Path path, long size, byte[] hash, Exception error) {
+            this(file, path, size, hash, error, 0);
+        }
+
+        FileResult(IndexNode file, Path path, long size, byte[] hash, Exception error, long time) {
+            this.file = file;
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+            this.error = error;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.extension.LastVerifiedIndexExtension;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeWalker;
+import de.silef.service.file.tree.Visitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.extension.ExtensionType.LAST_VERIFIED;
+
+/**
+ * Selects the files of a scrub run. Each run verifies a fraction of the content bytes, so all
+ * files are verified within 1 / fraction runs without reading the whole tree at once.
+ *
+ * Files are ordered by their last verification time. Files which were never verified come
+ * first. Larger files come first on equal verification time.
+ */
+public class ScrubScheduler {
+
+    private final Predicate<IndexNode> verifiableFilter;
+
+    /**
+     * @param verifiableFilter Filter of files which can be verified
+     */
+    public ScrubScheduler(Predicate<IndexNode> verifiableFilter) {
+        this.verifiableFilter = verifiableFilter;
+    }
+
+    /**
+     * @param root Root of the index tree
+     * @param fraction Fraction of all verifiable content bytes between 0 and 1
+     * @return Least recently verified files with the given fraction of content bytes. At least
+     * one file is selected if there are verifiable files
+     */
+    public List<IndexNode> select(IndexNode root, double fraction) throws IOException {
+        List<IndexNode> files = new ArrayList<>();
+        long[] totalSize = new long[1];
+        IndexNodeWalker.walk(root, new Visitor<IndexNode>() {
+            @Override
+            public VisitorResult visitFile(IndexNode file) throws IOException {
+                if (verifiableFilter.test(file)) {
+                    files.add(file);
+                    totalSize[0] += getSize(file);
+                }
+                return super.visitFile(file);
+            }
+        });
+        files.sort(Comparator.comparingLong(ScrubScheduler::getLastVerified)
+                .thenComparing(Comparator.comparingLong(ScrubScheduler::getSize).reversed()));
+
+        long maxSize = (long) Math.ceil(totalSize[0] * Math.min(1, Math.max(0, fraction)));
+        long size = 0;
+        int count = 0;
+        while (count < files.size() && (count == 0 || size < maxSize)) {
+            size += getSize(files.get(count++));
+        }
+        return new ArrayList<>(files.subList(0, count));
+    }
+
+    /**
+     * @return Time of last verification in milliseconds since epoch. 0 if the file was never verified
+     */
+    public static long getLastVerified(IndexNode file) {
+        IndexExtension extension = file.getExtensionByType(LAST_VERIFIED.value);
+        if (extension instanceof LastVerifiedIndexExtension) {
+            return ((LastVerifiedIndexExtension) extension).getTime();
+        }
+        return 0;
+    }
+
+    private static long getSize(IndexNode file) {
+        IndexExtension extension = file.getExtensionByType(BASIC_FILE.value);
+        if (extension instanceof BasicFileIndexExtension) {
+            return ((BasicFileIndexExtension) extension).getSize();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,160 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.UniversalHashIndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.DirtyDirectoryTracker;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeEditor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bottom-up Merkle builder of universal hashes. Sub directories without a valid universal hash
+ * are forked as own tasks, so hashes of sibling sub trees are created in parallel. A directory
+ * hash is created and attached when all hashes of its sub directories are known.
+ *
+ * The result is identical to UniversalHashIndexExtension.create(IndexNode, ContentHashAlgorithm)
+ * since each directory hash is created by it with already attached sub directory hashes.
+ *
+ * With a dirty tracker, hashes of dirty directories are recomputed, too. Since dirty directories
+ * and directories without hash are closed towards the root, only the dirty paths are visited.
+ *
+ * Hashes are attached to the nodes of an editor. For a file index in copy on write mode the
+ * hashed directories are copied, and the walked version is not modified.
+ */
+public class UniversalHashCalculator {
+
+    private final int parallelism;
+
+    private final ContentHashAlgorithm algorithm;
+
+    private final DirtyDirectoryTracker dirtyTracker;
+
+    private final AtomicLong recomputedCount = new AtomicLong();
+
+    public UniversalHashCalculator(int parallelism, ContentHashAlgorithm algorithm) {
+        this(parallelism, algorithm, new DirtyDirectoryTracker());
+    }
+
+    public UniversalHashCalculator(int parallelism, ContentHashAlgorithm algorithm, DirtyDirectoryTracker dirtyTracker) {
+        this.parallelism = Math.max(1, parallelism);
+        this.algorithm = algorithm;
+        this.dirtyTracker = dirtyTracker;
+    }
+
+    /**
+     * Creates the universal hash of the root and attaches missing or dirty universal hashes to all
+     * directories of the tree including the root. The dirty tracker is cleared afterwards
+     *
+     * @param root Root directory
+     * @return Universal hash of the root directory
+     * @throws IOException on digest errors
+     */
+    public UniversalHashIndexExtension calculate(IndexNode root) throws IOException {
+        try {
+            return calculate(root, IndexNodeEditor.inPlace(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Creates the universal hash of the root of the index and attaches missing or dirty universal
+     * hashes by a modification of the index. The dirty tracker is cleared afterwards
+     *
+     * @return Universal hash of the root directory
+     * @throws IOException on digest errors
+     * @see FileIndex#modify(java.util.function.Consumer)
+     */
+    public UniversalHashIndexExtension calculate(FileIndex index) throws IOException {
+        AtomicReference<UniversalHashIndexExtension> extension = new AtomicReference<>();
+        try {
+            index.modify(editor -> extension.set(calculate(index.getRoot(), editor)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return extension.get();
+    }
+
+    private UniversalHashIndexExtension calculate(IndexNode root, IndexNodeEditor editor) {
+        if (!root.isDirectory()) {
+            throw new IllegalArgumentException("Universal hash is only allowed on directory nodes");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            UniversalHashIndexExtension extension = pool.invoke(new DirectoryHashTask(root, editor));
+            dirtyTracker.clear();
+            return extension;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return Number of directory hashes which were created by this calculator
+     */
+    public long getRecomputedCount() {
+        return recomputedCount.get();
+    }
+
+    private boolean needsHash(IndexNode dir) {
+        return !UniversalHashIndexExtension.hasValidHash(dir, algorithm) || dirtyTracker.isDirty(dir);
+    }
+
+    private class DirectoryHashTask extends RecursiveTask<UniversalHashIndexExtension> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IndexNode dir;
+
+        private final IndexNodeEditor editor;
+
+        DirectoryHashTask(IndexNode dir, IndexNodeEditor editor) {
+            this.dir = dir;
+            this.editor = editor;
+        }
+
+        @Override
+        protected UniversalHashIndexExtension compute() {
+            List<DirectoryHashTask> tasks = new ArrayList<>();
+            for (IndexNode child : dir.getChildren()) {
+                if (child.isDirectory() && needsHash(child)) {
+                    DirectoryHashTask task = new DirectoryHashTask(child, editor);
+                    task.fork();
+                    tasks.add(task);
+                }
+            }
+            for (DirectoryHashTask task : tasks) {
+                task.join();
+            }
+            try {
+                IndexNode target = edit();
+                UniversalHashIndexExtension extension = UniversalHashIndexExtension.create(target, algorithm);
+                target.addExtension(extension);
+                recomputedCount.incrementAndGet();
+                return extension;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * The editor is shared by all tasks. The sub directories are edited before, so the
+         * edited directory has their hashes
+         */
+        private IndexNode edit() {
+            synchronized (editor) {
+                return editor.edit(dir.getRelativePath());
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.util.ByteUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of an integrity verification with mismatches and statistics of the file and the
+ * directory phase
+ */
+public class VerifyResult {
+
+    private HashStatistics fileStatistics = new HashStatistics();
+
+    private final List<HashMismatch> fileMismatches = new ArrayList<>();
+
+    private final List<HashMismatch> directoryMismatches = new ArrayList<>();
+
+    private long modifiedFileCount;
+
+    private long directoryCount;
+
+    private long directoryNanos;
+
+    private boolean budgetExceeded;
+
+    void startFiles() {
+        fileStatistics = new HashStatistics();
+    }
+
+    void addFileMismatch(HashMismatch mismatch) {
+        fileMismatches.add(mismatch);
+    }
+
+    /**
+     * Count a file which was modified after its hash was created. It is not verified
+     */
+    void addModifiedFile() {
+        modifiedFileCount++;
+    }
+
+    void addDirectory() {
+        directoryCount++;
+    }
+
+    void addDirectoryMismatch(HashMismatch mismatch) {
+        directoryMismatches.add(mismatch);
+    }
+
+    void setDirectoryNanos(long directoryNanos) {
+        this.directoryNanos = directoryNanos;
+    }
+
+    void setBudgetExceeded() {
+        budgetExceeded = true;
+    }
+
+    /**
+     * @return true if the file phase stopped before all files were verified due its time budget
+     */
+    public boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    public boolean hasMismatches() {
+        return !fileMismatches.isEmpty() || !directoryMismatches.isEmpty();
+    }
+
+    /**
+     * @return Statistics of verified files. Bytes and elapsed time cover the file phase only
+     */
+    public HashStatistics getFileStatistics() {
+        return fileStatistics;
+    }
+
+    public List<HashMismatch> getFileMismatches() {
+        return Collections.unmodifiableList(fileMismatches);
+    }
+
+    /**
+     * @return Directories whose stored universal hash does not match the hash of the verified
+     * content. The deepest mismatched directories localize the corrupted sub trees
+     */
+    public List<HashMismatch> getDirectoryMismatches() {
+        return Collections.unmodifiableList(directoryMismatches);
+    }
+
+    public long getModifiedFileCount() {
+        return modifiedFileCount;
+    }
+
+    /**
+     * @return Number of directories with a stored universal hash
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    public long getDirectoryElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(directoryNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("files: %s, %d modified, %d mismatches; directories: %d in %.1fs, %d mismatches; verified %s",
+                fileStatistics,
+                modifiedFileCount,
+                fileMismatches.size(),
+                directoryCount,
+                getDirectoryElapsedMillis() / 1000.0,
+                directoryMismatches.size(),
+                ByteUtil.toHumanSize(fileStatistics.getByteCount()));
+    }
+}
@@ -0,0 +1,167 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.change.IndexNodeChange;
+import de.silef.service.file.change.IndexNodeChangeFactory;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.util.OffHeapBuffer;
+
+import java.util.*;
+
+/**
+ * Compares two columnar indices directory by directory. IndexNodes are only created for
+ * changed nodes and their ancestors. Created and removed directories are created with their
+ * sub tree, so the changes can be expanded
+ */
+class ColumnarDiff {
+
+    private final ColumnarFileIndex origin;
+
+    private final ColumnarFileIndex current;
+
+    private final IndexNodeChangeFactory changeFactory;
+
+    private final List<IndexNodeChange> changes;
+
+    private final Map<Integer, IndexNode> originNodes = new HashMap<>();
+
+    private final Map<Integer, IndexNode> currentNodes = new HashMap<>();
+
+    ColumnarDiff(ColumnarFileIndex origin, ColumnarFileIndex current, IndexNodeChangeFactory changeFactory, List<IndexNodeChange> changes) {
+        this.origin = origin;
+        this.current = current;
+        this.changeFactory = changeFactory;
+        this.changes = changes;
+    }
+
+    void diffRoot() {
+        compare(0, 0);
+        if (origin.isDirectory(0) && current.isDirectory(0)) {
+            diffDirectory(0, 0);
+        }
+    }
+
+    private void diffDirectory(int originDir, int currentDir) {
+        Map<String, Integer> currentChildren = new LinkedHashMap<>();
+        int currentEnd = current.getEnd(currentDir);
+        for (int child = currentDir + 1; child < currentEnd; child = current.getEnd(child)) {
+            currentChildren.put(current.getName(child), child);
+        }
+
+        int originEnd = origin.getEnd(originDir);
+        for (int child = originDir + 1; child < originEnd; child = origin.getEnd(child)) {
+            Integer currentChild = currentChildren.remove(origin.getName(child));
+            if (currentChild == null) {
+                removed(child);
+            } else if (origin.getType(child) != current.getType(currentChild)) {
+                removed(child);
+                created(originDir, currentChild);
+            } else {
+                compare(child, currentChild);
+                if (origin.isDirectory(child)) {
+                    diffDirectory(child, currentChild);
+                }
+            }
+        }
+        for (int currentChild : currentChildren.values()) {
+            created(originDir, currentChild);
+        }
+    }
+
+    private void compare(int originId, int currentId) {
+        if (hasEqualExtensions(originId, currentId)) {
+            return;
+        }
+        IndexNode originNode = getNode(origin, originNodes, originId);
+        IndexNode currentNode = getNode(current, currentNodes, currentId);
+        IndexNodeChange change = changeFactory.createIndexNodeChange(originNode, currentNode);
+        if (change.getChange() == IndexNodeChange.Change.MODIFIED) {
+            changes.add(change);
+        }
+    }
+
+    private void created(int originParent, int currentId) {
+        IndexNode parent = getNode(origin, originNodes, originParent);
+        changes.add(new IndexNodeChange(IndexNodeChange.Change.CREATED, parent, getTree(current, currentNodes, currentId)));
+    }
+
+    private void removed(int originId) {
+        changes.add(new IndexNodeChange(IndexNodeChange.Change.REMOVED, getTree(origin, originNodes, originId), null));
+    }
+
+    private boolean hasEqualExtensions(int originId, int currentId) {
+        if (origin.hasBasicFile(originId) != current.hasBasicFile(currentId) ||
+                origin.hasContentHash(originId) != current.hasContentHash(currentId)) {
+            return false;
+        }
+        if (origin.hasBasicFile(originId) && (
+                origin.getSize(originId) != current.getSize(currentId) ||
+                origin.getCreationTime(originId) != current.getCreationTime(currentId) ||
+                origin.getModifiedTime(originId) != current.getModifiedTime(currentId) ||
+                origin.getFileKey(originId) != current.getFileKey(currentId))) {
+            return false;
+        }
+        if (origin.hasContentHash(originId) && (origin.getAlgorithm() != current.getAlgorithm() ||
+                !origin.hasEqualContentHash(originId, current, currentId))) {
+            return false;
+        }
+        return hasEqualFurtherExtensions(originId, currentId);
+    }
+
+    private boolean hasEqualFurtherExtensions(int originId, int currentId) {
+        long originPosition = origin.getFurtherExtensionPosition(originId);
+        long currentPosition = current.getFurtherExtensionPosition(currentId);
+        if (originPosition < 0 || currentPosition < 0) {
+            return originPosition == currentPosition;
+        }
+        long length = getFurtherExtensionLength(origin, originPosition);
+        if (length != getFurtherExtensionLength(current, currentPosition)) {
+            return false;
+        }
+        OffHeapBuffer originSlab = origin.getExtensionSlab();
+        OffHeapBuffer currentSlab = current.getExtensionSlab();
+        for (long i = 0; i < length; i++) {
+            if (originSlab.getByte(originPosition + i) != currentSlab.getByte(currentPosition + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getFurtherExtensionLength(ColumnarFileIndex index, long position) {
+        long start = position;
+        int count = index.getExtensionSlab().getByte(position++) & 0xff;
+        for (int i = 0; i < count; i++) {
+            position += 3 + index.getExtensionDataSize(position);
+        }
+        return position - start;
+    }
+
+    /**
+     * @return IndexNode of the id with its ancestors but without children
+     */
+    private static IndexNode getNode(ColumnarFileIndex index, Map<Integer, IndexNode> nodes, int id) {
+        IndexNode node = nodes.get(id);
+        if (node == null) {
+            int parent = index.getParent(id);
+            node = index.createIndexNode(id, parent >= 0 ? getNode(index, nodes, parent) : null);
+            nodes.put(id, node);
+        }
+        return node;
+    }
+
+    /**
+     * @return IndexNode of the id with its ancestors and its sub tree
+     */
+    private static IndexNode getTree(ColumnarFileIndex index, Map<Integer, IndexNode> nodes, int id) {
+        IndexNode node = getNode(index, nodes, id);
+        int end = index.getEnd(id);
+        if (end > id + 1) {
+            List<IndexNode> children = new ArrayList<>();
+            for (int child = id + 1; child < end; child = index.getEnd(child)) {
+                children.add(getTree(index, nodes, child));
+            }
+            node.setChildren(children);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,677 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.change.IndexChange;
+import de.silef.service.file.change.IndexNodeChange;
+import de.silef.service.file.change.IndexNodeChangeFactory;
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.node.IndexEntry;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeFactory;
+import de.silef.service.file.node.IndexNodeType;
+import de.silef.service.file.tree.Visitor;
+import de.silef.service.file.util.OffHeapBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.tree.Visitor.VisitorResult.*;
+
+/**
+ * Read-only index which stores its nodes as columns in off-heap memory instead of an object per
+ * node. The heap usage does not grow with the number of nodes, so garbage collections do not
+ * need to scan the tree.
+ *
+ * Nodes are identified by their id in depth first order of the index file. The root has id 0.
+ * The sub tree of a node covers the ids from the node id up to its end id, so the first child
+ * follows its parent and the next sibling follows the end of the previous sibling.
+ *
+ * Columns per node:
+ *
+ * - parent id, end id of the sub tree and name id (4 bytes each)
+ * - node type and flags (1 byte each)
+ * - size, creation time, modified time and file key of the basic file extension (8 bytes each)
+ * - content hash of the index algorithm (hash length)
+ * - position of further extensions in the extension slab (8 bytes)
+ * - position of the children in the child slab (4 bytes)
+ *
+ * The child slab has the children count and the child ids of each node with children. Child ids
+ * are ordered by name like the index file, so children are found by binary search.
+ *
+ * Names are stored once per name id in the name slab with 2 bytes length and modified UTF-8
+ * bytes like in the index file. Entries and IndexNodes are only created on demand, for example
+ * for changes of a diff.
+ */
+public class ColumnarFileIndex implements IndexBackend {
+
+    private static final byte HAS_BASIC_FILE = 1;
+
+    private static final byte HAS_CONTENT_HASH = 2;
+
+    private static final int BASIC_FILE_SIZE = 32;
+
+    private final Path base;
+
+    private final ContentHashAlgorithm algorithm;
+
+    private final IndexNodeFactory nodeFactory;
+
+    private final int hashLength;
+
+    private int nodeCount = 0;
+
+    private int nameCount = 0;
+
+    private final OffHeapBuffer parents = new OffHeapBuffer();
+
+    private final OffHeapBuffer ends = new OffHeapBuffer();
+
+    private final OffHeapBuffer nameIds = new OffHeapBuffer();
+
+    private final OffHeapBuffer types = new OffHeapBuffer();
+
+    private final OffHeapBuffer flags = new OffHeapBuffer();
+
+    private final OffHeapBuffer sizes = new OffHeapBuffer();
+
+    private final OffHeapBuffer creationTimes = new OffHeapBuffer();
+
+    private final OffHeapBuffer modifiedTimes = new OffHeapBuffer();
+
+    private final OffHeapBuffer fileKeys = new OffHeapBuffer();
+
+    private final OffHeapBuffer hashes = new OffHeapBuffer();
+
+    /**
+     * Position + 1 of the further extensions in the extension slab. 0 if the node has no further
+     * extensions
+     */
+    private final OffHeapBuffer extensionPositions = new OffHeapBuffer();
+
+    /**
+     * Further extensions with 1 byte count followed by the extensions in index file format
+     */
+    private final OffHeapBuffer extensionSlab = new OffHeapBuffer();
+
+    /**
+     * Slot + 1 of the children count in the child slab. 0 if the node has no children
+     */
+    private final OffHeapBuffer childPositions = new OffHeapBuffer();
+
+    /**
+     * Children count followed by the child ids of each node with children, 4 bytes per slot
+     */
+    private final OffHeapBuffer childSlab = new OffHeapBuffer();
+
+    private int childSlotCount = 0;
+
+    private final OffHeapBuffer namePositions = new OffHeapBuffer();
+
+    private final OffHeapBuffer nameSlab = new OffHeapBuffer();
+
+    /**
+     * @param algorithm Algorithm of content hashes which are stored in the hash column
+     * @param nodeFactory Factory to create extensions and nodes on demand
+     */
+    public ColumnarFileIndex(Path base, ContentHashAlgorithm algorithm, IndexNodeFactory nodeFactory) {
+        this.base = base;
+        this.algorithm = algorithm;
+        this.nodeFactory = nodeFactory;
+        this.hashLength = algorithm.getHashLength();
+    }
+
+    public static ColumnarFileIndex readFromPath(Path base, Path indexfile, ContentHashAlgorithm algorithm, IndexNodeFactory nodeFactory) throws IOException {
+        ColumnarFileIndex index = new ColumnarFileIndex(base, algorithm, nodeFactory);
+        new ColumnarIndexReader().read(indexfile, index);
+        return index;
+    }
+
+    /**
+     * @param name Name as 2 bytes length followed by the modified UTF-8 bytes
+     * @return Id of the name
+     */
+    int addName(byte[] name, int length) {
+        int id = nameCount++;
+        namePositions.ensureSize(8L * nameCount);
+        namePositions.putLong(8L * id, nameSlab.append(name, 0, length));
+        return id;
+    }
+
+    /**
+     * @return Id of the new node. The end of its sub tree must be set by setEnd()
+     */
+    int addNode(int parent, byte type, int nameId) {
+        if (nameId < 0 || nameId >= nameCount) {
+            throw new IllegalArgumentException("Invalid name id " + nameId + " of " + nameCount + " names");
+        }
+        int id = nodeCount++;
+        parents.ensureSize(4L * nodeCount);
+        parents.putInt(4L * id, parent);
+        ends.ensureSize(4L * nodeCount);
+        ends.putInt(4L * id, nodeCount);
+        nameIds.ensureSize(4L * nodeCount);
+        nameIds.putInt(4L * id, nameId);
+        types.ensureSize(nodeCount);
+        types.putByte(id, type);
+        flags.ensureSize(nodeCount);
+        sizes.ensureSize(8L * nodeCount);
+        creationTimes.ensureSize(8L * nodeCount);
+        modifiedTimes.ensureSize(8L * nodeCount);
+        fileKeys.ensureSize(8L * nodeCount);
+        hashes.ensureSize((long) hashLength * nodeCount);
+        extensionPositions.ensureSize(8L * nodeCount);
+        childPositions.ensureSize(4L * nodeCount);
+        return id;
+    }
+
+    /**
+     * Reserve the child slots of a node. The children are set by setChild() in name order
+     */
+    void setChildCount(int id, int count) {
+        if (count == 0) {
+            return;
+        }
+        int slot = childSlotCount;
+        childSlotCount += count + 1;
+        childSlab.ensureSize(4L * childSlotCount);
+        childSlab.putInt(4L * slot, count);
+        childPositions.putInt(4L * id, slot + 1);
+    }
+
+    void setChild(int id, int index, int child) {
+        int slot = childPositions.getInt(4L * id) - 1;
+        childSlab.putInt(4L * (slot + 1 + index), child);
+    }
+
+    void setEnd(int id, int end) {
+        ends.putInt(4L * id, end);
+    }
+
+    void setBasicFile(int id, long size, long creationTime, long modifiedTime, long fileKey) {
+        sizes.putLong(8L * id, size);
+        creationTimes.putLong(8L * id, creationTime);
+        modifiedTimes.putLong(8L * id, modifiedTime);
+        fileKeys.putLong(8L * id, fileKey);
+        flags.putByte(id, (byte) (flags.getByte(id) | HAS_BASIC_FILE));
+    }
+
+    void setContentHash(int id, byte[] hash) {
+        hashes.put((long) hashLength * id, hash, 0, hashLength);
+        flags.putByte(id, (byte) (flags.getByte(id) | HAS_CONTENT_HASH));
+    }
+
+    /**
+     * @param extensions Extension count followed by the extensions in index file format
+     */
+    void setFurtherExtensions(int id, byte[] extensions, int length) {
+        extensionPositions.putLong(8L * id, extensionSlab.append(extensions, 0, length) + 1);
+    }
+
+    public ContentHashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    int getNameCount() {
+        return nameCount;
+    }
+
+    /**
+     * @return Parent id or -1 for the root
+     */
+    public int getParent(int id) {
+        return parents.getInt(4L * id);
+    }
+
+    /**
+     * @return Id of the first child or -1 if the node has no children
+     */
+    public int getFirstChild(int id) {
+        return id + 1 < getEnd(id) ? id + 1 : -1;
+    }
+
+    /**
+     * @return Id of the next sibling or -1 if the node is the last child
+     */
+    public int getNextSibling(int id) {
+        int parent = getParent(id);
+        int next = getEnd(id);
+        return parent >= 0 && next < getEnd(parent) ? next : -1;
+    }
+
+    int getEnd(int id) {
+        return ends.getInt(4L * id);
+    }
+
+    int getNameId(int id) {
+        return nameIds.getInt(4L * id);
+    }
+
+    public IndexNodeType getNodeType(int id) {
+        return IndexNodeType.create(getType(id));
+    }
+
+    byte getType(int id) {
+        return types.getByte(id);
+    }
+
+    public boolean isDirectory(int id) {
+        return (getType(id) & IndexNodeType.DIRECTORY.getByte()) != 0;
+    }
+
+    public String getName(int id) {
+        long position = namePositions.getLong(8L * getNameId(id));
+        int length = getNameLength(position);
+        byte[] bytes = new byte[length + 2];
+        nameSlab.get(position, bytes, 0, bytes.length);
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid name of node " + id, e);
+        }
+    }
+
+    public Path getRelativePath(int id) {
+        if (id == 0) {
+            return Paths.get("");
+        }
+        Deque<String> names = new ArrayDeque<>();
+        for (int node = id; node > 0; node = getParent(node)) {
+            names.push(getName(node));
+        }
+        return Paths.get(names.pop(), names.toArray(new String[names.size()]));
+    }
+
+    public boolean hasBasicFile(int id) {
+        return (flags.getByte(id) & HAS_BASIC_FILE) != 0;
+    }
+
+    public long getSize(int id) {
+        return sizes.getLong(8L * id);
+    }
+
+    public long getCreationTime(int id) {
+        return creationTimes.getLong(8L * id);
+    }
+
+    public long getModifiedTime(int id) {
+        return modifiedTimes.getLong(8L * id);
+    }
+
+    public long getFileKey(int id) {
+        return fileKeys.getLong(8L * id);
+    }
+
+    public boolean hasContentHash(int id) {
+        return (flags.getByte(id) & HAS_CONTENT_HASH) != 0;
+    }
+
+    /**
+     * @return Copy of the content hash or null if the node has no content hash
+     */
+    public byte[] getContentHash(int id) {
+        if (!hasContentHash(id)) {
+            return null;
+        }
+        byte[] hash = new byte[hashLength];
+        hashes.get((long) hashLength * id, hash, 0, hashLength);
+        return hash;
+    }
+
+    /**
+     * Compares the content hashes in place without copies
+     *
+     * @return true if both nodes have a content hash of equal length and data
+     */
+    boolean hasEqualContentHash(int id, ColumnarFileIndex other, int otherId) {
+        if (!hasContentHash(id) || !other.hasContentHash(otherId) || hashLength != other.hashLength) {
+            return false;
+        }
+        long position = (long) hashLength * id;
+        long otherPosition = (long) hashLength * otherId;
+        for (int i = 0; i < hashLength; i++) {
+            if (hashes.getByte(position + i) != other.hashes.getByte(otherPosition + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Position of further extensions in the extension slab or -1
+     */
+    long getFurtherExtensionPosition(int id) {
+        return extensionPositions.getLong(8L * id) - 1;
+    }
+
+    OffHeapBuffer getExtensionSlab() {
+        return extensionSlab;
+    }
+
+    /**
+     * @return Name as 2 bytes length followed by the modified UTF-8 bytes
+     */
+    byte[] getNameBytes(int nameId) {
+        long position = namePositions.getLong(8L * nameId);
+        byte[] bytes = new byte[getNameLength(position) + 2];
+        nameSlab.get(position, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private int getNameLength(long position) {
+        return ((nameSlab.getByte(position) & 0xff) << 8) | (nameSlab.getByte(position + 1) & 0xff);
+    }
+
+    /**
+     * @return New extension of the node or null
+     */
+    public IndexExtension getExtension(int id, byte type) {
+        if (type == BASIC_FILE.value && hasBasicFile(id)) {
+            return new BasicFileIndexExtension(createBasicFileData(id));
+        } else if (type == algorithm.getExtensionType().value && hasContentHash(id)) {
+            return nodeFactory.createExtension(type, getContentHash(id));
+        }
+        long position = getFurtherExtensionPosition(id);
+        if (position < 0) {
+            return null;
+        }
+        int count = extensionSlab.getByte(position++) & 0xff;
+        for (int i = 0; i < count; i++) {
+            byte extensionType = extensionSlab.getByte(position);
+            int size = getExtensionDataSize(position);
+            if (extensionType == type) {
+                byte[] data = new byte[size];
+                extensionSlab.get(position + 3, data, 0, size);
+                return nodeFactory.createExtension(type, data);
+            }
+            position += 3 + size;
+        }
+        return null;
+    }
+
+    /**
+     * @return New list of all extensions of the node
+     */
+    public List<IndexExtension> getExtensions(int id) {
+        List<IndexExtension> extensions = new ArrayList<>();
+        if (hasBasicFile(id)) {
+            extensions.add(new BasicFileIndexExtension(createBasicFileData(id)));
+        }
+        if (hasContentHash(id)) {
+            extensions.add(nodeFactory.createExtension(algorithm.getExtensionType().value, getContentHash(id)));
+        }
+        long position = getFurtherExtensionPosition(id);
+        if (position >= 0) {
+            int count = extensionSlab.getByte(position++) & 0xff;
+            for (int i = 0; i < count; i++) {
+                int size = getExtensionDataSize(position);
+                byte[] data = new byte[size];
+                extensionSlab.get(position + 3, data, 0, size);
+                extensions.add(nodeFactory.createExtension(extensionSlab.getByte(position), data));
+                position += 3 + size;
+            }
+        }
+        return extensions;
+    }
+
+    int getExtensionDataSize(long position) {
+        return ((extensionSlab.getByte(position + 1) & 0xff) << 8) | (extensionSlab.getByte(position + 2) & 0xff);
+    }
+
+    private byte[] createBasicFileData(int id) {
+        return ByteBuffer.allocate(BASIC_FILE_SIZE)
+                .putLong(getSize(id))
+                .putLong(getCreationTime(id))
+                .putLong(getModifiedTime(id))
+                .putLong(getFileKey(id))
+                .array();
+    }
+
+    /**
+     * @return Number of allocated off-heap bytes of all columns
+     */
+    public long getOffHeapSize() {
+        long size = 0;
+        for (OffHeapBuffer buffer : Arrays.asList(parents, ends, nameIds, types, flags, sizes, creationTimes,
+                modifiedTimes, fileKeys, hashes, extensionPositions, extensionSlab, childPositions, childSlab, namePositions, nameSlab)) {
+            size += buffer.getCapacity();
+        }
+        return size;
+    }
+
+    @Override
+    public Path getBase() {
+        return base;
+    }
+
+    /**
+     * Walk with a single entry which is moved to the visited node. Visitors must not keep the
+     * entry. Use ColumnarEntry.getId() with the column accessors to read nodes without allocation
+     */
+    @Override
+    public void walk(Visitor<IndexEntry> visitor) {
+        if (nodeCount == 0) {
+            return;
+        }
+        try {
+            walk(0, new ColumnarEntry(), visitor);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to walk columnar index of " + base, e);
+        }
+    }
+
+    private Visitor.VisitorResult walk(int dir, ColumnarEntry entry, Visitor<IndexEntry> visitor) throws IOException {
+        if (!isDirectory(dir)) {
+            return SKIP;
+        }
+        Visitor.VisitorResult result = visitor.preVisitDirectory(entry.moveTo(dir));
+        if (result != CONTINUE) {
+            return result;
+        }
+
+        result = walkChildren(dir, true, entry, visitor);
+        if (result != SKIP_SIBLINGS && result != TERMINATE) {
+            result = walkChildren(dir, false, entry, visitor);
+        }
+        if (result == TERMINATE) {
+            return TERMINATE;
+        }
+        return visitor.postVisitDirectory(entry.moveTo(dir));
+    }
+
+    private Visitor.VisitorResult walkChildren(int dir, boolean directories, ColumnarEntry entry, Visitor<IndexEntry> visitor) throws IOException {
+        Visitor.VisitorResult result = CONTINUE;
+        int end = getEnd(dir);
+        for (int child = dir + 1; child < end; child = getEnd(child)) {
+            if (isDirectory(child) != directories) {
+                continue;
+            }
+            if (directories) {
+                result = walk(child, entry, visitor);
+            } else {
+                result = visitor.visitFile(entry.moveTo(child));
+            }
+            if (result == SKIP_SIBLINGS || result == TERMINATE) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public IndexEntry find(Path relativePath) {
+        int id = findId(relativePath);
+        return id >= 0 ? new ColumnarEntry().moveTo(id) : null;
+    }
+
+    /**
+     * @return Id of the node with given relative path or -1
+     */
+    public int findId(Path relativePath) {
+        if (nodeCount == 0) {
+            return -1;
+        }
+        int node = 0;
+        for (Path name : relativePath) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            node = findChild(node, name.toString());
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return node;
+    }
+
+    private int findChild(int dir, String name) {
+        int slot = childPositions.getInt(4L * dir) - 1;
+        if (slot < 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = childSlab.getInt(4L * slot) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int child = childSlab.getInt(4L * (slot + 1 + middle));
+            int result = compareName(child, name);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle - 1;
+            } else {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the modified UTF-8 name of the node char by char with the name like
+     * String.compareTo() does, so the name is not encoded or decoded
+     */
+    private int compareName(int id, String name) {
+        long position = namePositions.getLong(8L * getNameId(id));
+        long end = position + 2 + getNameLength(position);
+        position += 2;
+        int i = 0;
+        while (position < end && i < name.length()) {
+            int b = nameSlab.getByte(position++) & 0xff;
+            int c;
+            if (b < 0x80) {
+                c = b;
+            } else if (b < 0xe0) {
+                c = ((b & 0x1f) << 6) | (nameSlab.getByte(position++) & 0x3f);
+            } else {
+                c = ((b & 0x0f) << 12) | ((nameSlab.getByte(position++) & 0x3f) << 6) | (nameSlab.getByte(position++) & 0x3f);
+            }
+            int result = c - name.charAt(i++);
+            if (result != 0) {
+                return result;
+            }
+        }
+        if (position < end) {
+            return 1;
+        }
+        return i < name.length() ? -1 : 0;
+    }
+
+    /**
+     * Compare this index with an other columnar index. Nodes with equal type and equal extensions
+     * are unchanged. Only nodes with different extensions are created as IndexNodes and passed to
+     * the change factory
+     */
+    @Override
+    public IndexChange getChanges(IndexBackend other, IndexNodeChangeFactory changeFactory) {
+        if (!(other instanceof ColumnarFileIndex)) {
+            throw new IllegalArgumentException("Changes are only supported to other columnar index but was " + other.getClass().getSimpleName());
+        }
+        ColumnarFileIndex current = (ColumnarFileIndex) other;
+        List<IndexNodeChange> changes = new LinkedList<>();
+        if (nodeCount > 0 && current.nodeCount > 0) {
+            new ColumnarDiff(this, current, changeFactory, changes).diffRoot();
+        }
+        return new IndexChange(base, changes);
+    }
+
+    @Override
+    public void writeToPath(Path indexfile) throws IOException {
+        new ColumnarIndexWriter().write(this, indexfile);
+    }
+
+    @Override
+    public long getTotalFileSize() {
+        long totalSize = 0;
+        for (int id = 0; id < nodeCount; id++) {
+            if (hasBasicFile(id)) {
+                totalSize += getSize(id);
+            }
+        }
+        return totalSize;
+    }
+
+    @Override
+    public long getTotalFileCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return Detached IndexNode of given node with the given parent and without children
+     */
+    IndexNode createIndexNode(int id, IndexNode parent) {
+        return nodeFactory.createIndexNode(parent, getNodeType(id), getName(id), getExtensions(id));
+    }
+
+    /**
+     * Entry of a node in the columnar index
+     */
+    public class ColumnarEntry implements IndexEntry {
+
+        private int id;
+
+        ColumnarEntry moveTo(int id) {
+            this.id = id;
+            return this;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return ColumnarFileIndex.this.getName(id);
+        }
+
+        @Override
+        public IndexNodeType getNodeType() {
+            return ColumnarFileIndex.this.getNodeType(id);
+        }
+
+        @Override
+        public Path getRelativePath() {
+            return ColumnarFileIndex.this.getRelativePath(id);
+        }
+
+        @Override
+        public IndexExtension getExtensionByType(byte type) {
+            return getExtension(id, type);
+        }
+
+        @Override
+        public String toString() {
+            return getNodeType() + " " + getRelativePath();
+        }
+    }
+}
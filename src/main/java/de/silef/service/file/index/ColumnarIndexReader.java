@@ -0,0 +1,127 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.node.IndexNodeReader;
+import de.silef.service.file.util.DataUtils;
+
+import java.io.*;
+import java.nio.file.Path;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.node.IndexNodeWriter.MAGIC_HEADER;
+import static de.silef.service.file.node.IndexNodeWriter.MAGIC_HEADER_V1;
+
+/**
+ * Reads an index file of version 1, 2 or 3 into the columns of a columnar index. Basic file
+ * extensions and content hashes of the index algorithm are stored in their columns, all other
+ * extensions in the extension slab. Version 1 files have no name table, so each node gets its
+ * own name.
+ */
+class ColumnarIndexReader {
+
+    private static final int BASIC_FILE_SIZE = 32;
+
+    private byte[] buffer = new byte[256];
+
+    private final ByteArrayOutputStream furtherExtensions = new ByteArrayOutputStream();
+
+    void read(Path file, ColumnarFileIndex index) throws IOException {
+        try (InputStream input = IndexNodeReader.openInflatedStream(file);
+             BufferedInputStream bufferedInput = new BufferedInputStream(input);
+             DataInputStream dataInput = new DataInputStream(bufferedInput)) {
+
+            int header = dataInput.readInt();
+            if (header == MAGIC_HEADER) {
+                readNameTable(dataInput, index);
+                readNode(-1, true, dataInput, index);
+            } else if (header == MAGIC_HEADER_V1) {
+                readNode(-1, false, dataInput, index);
+            } else {
+                throw new IOException("Unexpected header: " + header);
+            }
+        }
+    }
+
+    private void readNameTable(DataInputStream dataInput, ColumnarFileIndex index) throws IOException {
+        int nameCount = DataUtils.readVarInt(dataInput);
+        for (int i = 0; i < nameCount; i++) {
+            readName(dataInput, index);
+        }
+    }
+
+    private int readName(DataInputStream dataInput, ColumnarFileIndex index) throws IOException {
+        int length = dataInput.readUnsignedShort();
+        ensureBuffer(length + 2);
+        buffer[0] = (byte) (length >>> 8);
+        buffer[1] = (byte) length;
+        dataInput.readFully(buffer, 2, length);
+        return index.addName(buffer, length + 2);
+    }
+
+    private int readNode(int parent, boolean hasNameTable, DataInputStream dataInput, ColumnarFileIndex index) throws IOException {
+        byte type = dataInput.readByte();
+        int nameId = hasNameTable ? DataUtils.readVarInt(dataInput) : readName(dataInput, index);
+        if (nameId >= index.getNameCount()) {
+            throw new IOException("Invalid name id " + nameId + " of name table with " + index.getNameCount() + " names");
+        }
+        int id = index.addNode(parent, type, nameId);
+
+        readExtensions(id, !hasNameTable, dataInput, index);
+
+        int childrenCount = dataInput.readInt();
+        index.setChildCount(id, childrenCount);
+        for (int i = 0; i < childrenCount; i++) {
+            index.setChild(id, i, readNode(id, hasNameTable, dataInput, index));
+        }
+        index.setEnd(id, index.getNodeCount());
+        return id;
+    }
+
+    /**
+     * @param isVersion1 Read modified times of basic file extensions as unknown, since version 1
+     * stored the creation time
+     */
+    private void readExtensions(int id, boolean isVersion1, DataInputStream dataInput, ColumnarFileIndex index) throws IOException {
+        byte hashType = index.getAlgorithm().getExtensionType().value;
+        int hashLength = index.getAlgorithm().getHashLength();
+
+        int extensionCount = dataInput.readByte() & 0xff;
+        int furtherCount = 0;
+        furtherExtensions.reset();
+        furtherExtensions.write(0);
+        for (int i = 0; i < extensionCount; i++) {
+            byte type = dataInput.readByte();
+            int size = dataInput.readUnsignedShort();
+            if (type == BASIC_FILE.value && size == BASIC_FILE_SIZE) {
+                long fileSize = dataInput.readLong();
+                long creationTime = dataInput.readLong();
+                long modifiedTime = dataInput.readLong();
+                long fileKey = dataInput.readLong();
+                index.setBasicFile(id, fileSize, creationTime, isVersion1 ? BasicFileIndexExtension.UNKNOWN_TIME : modifiedTime, fileKey);
+                continue;
+            }
+            ensureBuffer(size);
+            dataInput.readFully(buffer, 0, size);
+            if (type == hashType && size == hashLength) {
+                index.setContentHash(id, buffer);
+            } else {
+                furtherExtensions.write(type);
+                furtherExtensions.write(size >>> 8);
+                furtherExtensions.write(size);
+                furtherExtensions.write(buffer, 0, size);
+                furtherCount++;
+            }
+        }
+        if (furtherCount > 0) {
+            byte[] extensions = furtherExtensions.toByteArray();
+            extensions[0] = (byte) furtherCount;
+            index.setFurtherExtensions(id, extensions, extensions.length);
+        }
+    }
+
+    private void ensureBuffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+    }
+}
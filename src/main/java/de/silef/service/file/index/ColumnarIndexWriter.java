@@ -0,0 +1,117 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.util.DataUtils;
+import de.silef.service.file.util.OffHeapBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DeflaterOutputStream;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static de.silef.service.file.node.IndexNodeWriter.MAGIC_HEADER;
+
+/**
+ * Writes a columnar index in index format version 2. The name table is written in name id
+ * order and extensions are written sorted by type like the IndexNodeWriter does.
+ */
+class ColumnarIndexWriter {
+
+    private byte[] buffer = new byte[256];
+
+    void write(ColumnarFileIndex index, Path path) throws IOException {
+        if (!Files.isDirectory(path.getParent())) {
+            Files.createDirectories(path.getParent());
+        }
+        try (OutputStream output = Files.newOutputStream(path, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+             DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output);
+             BufferedOutputStream bufferedOutput = new BufferedOutputStream(deflaterOutput);
+             DataOutputStream dataOutput = new DataOutputStream(bufferedOutput)) {
+
+            dataOutput.writeInt(MAGIC_HEADER);
+            DataUtils.writeVarInt(dataOutput, index.getNameCount());
+            for (int i = 0; i < index.getNameCount(); i++) {
+                dataOutput.write(index.getNameBytes(i));
+            }
+            if (index.getNodeCount() > 0) {
+                writeNode(0, index, dataOutput);
+            }
+        }
+    }
+
+    private void writeNode(int id, ColumnarFileIndex index, DataOutputStream dataOutput) throws IOException {
+        dataOutput.writeByte(index.getType(id));
+        DataUtils.writeVarInt(dataOutput, index.getNameId(id));
+
+        writeExtensions(id, index, dataOutput);
+
+        int end = index.getEnd(id);
+        int childrenCount = 0;
+        for (int child = id + 1; child < end; child = index.getEnd(child)) {
+            childrenCount++;
+        }
+        dataOutput.writeInt(childrenCount);
+        for (int child = id + 1; child < end; child = index.getEnd(child)) {
+            writeNode(child, index, dataOutput);
+        }
+    }
+
+    private void writeExtensions(int id, ColumnarFileIndex index, DataOutputStream dataOutput) throws IOException {
+        OffHeapBuffer slab = index.getExtensionSlab();
+        long position = index.getFurtherExtensionPosition(id);
+        int furtherCount = position >= 0 ? slab.getByte(position++) & 0xff : 0;
+        boolean hasBasicFile = index.hasBasicFile(id);
+        boolean hasContentHash = index.hasContentHash(id);
+        byte hashType = index.getAlgorithm().getExtensionType().value;
+
+        dataOutput.writeByte(furtherCount + (hasBasicFile ? 1 : 0) + (hasContentHash ? 1 : 0));
+        for (int i = 0; i < furtherCount; i++) {
+            byte type = slab.getByte(position);
+            if (hasBasicFile && BASIC_FILE.value < type) {
+                writeBasicFile(id, index, dataOutput);
+                hasBasicFile = false;
+            }
+            if (hasContentHash && hashType < type) {
+                writeContentHash(id, index, dataOutput);
+                hasContentHash = false;
+            }
+            int size = index.getExtensionDataSize(position);
+            ensureBuffer(size + 3);
+            slab.get(position, buffer, 0, size + 3);
+            dataOutput.write(buffer, 0, size + 3);
+            position += size + 3;
+        }
+        if (hasBasicFile) {
+            writeBasicFile(id, index, dataOutput);
+        }
+        if (hasContentHash) {
+            writeContentHash(id, index, dataOutput);
+        }
+    }
+
+    private void writeBasicFile(int id, ColumnarFileIndex index, DataOutputStream dataOutput) throws IOException {
+        dataOutput.writeByte(BASIC_FILE.value);
+        dataOutput.writeShort(32);
+        dataOutput.writeLong(index.getSize(id));
+        dataOutput.writeLong(index.getCreationTime(id));
+        dataOutput.writeLong(index.getModifiedTime(id));
+        dataOutput.writeLong(index.getFileKey(id));
+    }
+
+    private void writeContentHash(int id, ColumnarFileIndex index, DataOutputStream dataOutput) throws IOException {
+        byte[] hash = index.getContentHash(id);
+        dataOutput.writeByte(index.getAlgorithm().getExtensionType().value);
+        dataOutput.writeShort(hash.length);
+        dataOutput.write(hash);
+    }
+
+    private void ensureBuffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+    }
+}
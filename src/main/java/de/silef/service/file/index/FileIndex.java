@@ -4,31 +4,61 @@ import de.silef.service.file.change.IndexChange;
 import de.silef.service.file.change.IndexChangeCreator;
 import de.silef.service.file.change.IndexNodeChangeFactory;
 import de.silef.service.file.extension.BasicFileIndexExtension;
-import de.silef.service.file.extension.ExtensionType;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.node.CopyOnWriteEditor;
+import de.silef.service.file.node.DirectoryAggregate;
+import de.silef.service.file.node.DirtyDirectoryTracker;
+import de.silef.service.file.node.IndexEntry;
 import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeEditor;
 import de.silef.service.file.node.IndexNodeFactory;
 import de.silef.service.file.node.IndexNodeReader;
+import de.silef.service.file.node.IndexNodeWalker;
 import de.silef.service.file.node.IndexNodeWriter;
 import de.silef.service.file.path.PathInfoFilter;
 import de.silef.service.file.path.IndexNodePathCreator;
 import de.silef.service.file.path.IndexNodePathFactory;
+import de.silef.service.file.path.PathInfoLister;
+import de.silef.service.file.tree.Visitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
 
 /**
  * Created by sebastian on 17.09.16.
+ *
+ * In copy on write mode applied changes and modifications create a new version of the tree by
+ * path copying which shares unchanged sub trees with the previous version. The root is swapped
+ * atomically, so readers of a root returned by getRoot() see a consistent version while changes
+ * are applied and never block the writer. Nodes of a version are never modified afterwards.
+ * Without copy on write mode the current version is modified in place while holding the monitor
+ * of the root node. The mode is off by default, since modifications in place are cheaper if
+ * nobody reads the index concurrently.
  */
-public class FileIndex {
+public class FileIndex implements IndexBackend {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileIndex.class);
 
     private Path base;
 
-    private IndexNode root;
+    private volatile IndexNode root;
+
+    private volatile boolean copyOnWrite = false;
+
+    private DirtyDirectoryTracker dirtyTracker = new DirtyDirectoryTracker();
 
     public FileIndex(Path base, IndexNode root) throws IOException {
         this.base = base;
@@ -40,7 +70,15 @@ public class FileIndex {
     }
 
     public static FileIndex create(Path base, PathInfoFilter pathInfoFilter, IndexNodePathFactory nodePathFactory) throws IOException {
-        IndexNodePathCreator pathCreator = new IndexNodePathCreator(nodePathFactory);
+        return create(base, pathInfoFilter, nodePathFactory, 1);
+    }
+
+    public static FileIndex create(Path base, PathInfoFilter pathInfoFilter, IndexNodePathFactory nodePathFactory, int parallelism) throws IOException {
+        return create(base, pathInfoFilter, new PathInfoLister(nodePathFactory), parallelism);
+    }
+
+    public static FileIndex create(Path base, PathInfoFilter pathInfoFilter, PathInfoLister pathLister, int parallelism) throws IOException {
+        IndexNodePathCreator pathCreator = new IndexNodePathCreator(pathLister, parallelism);
         IndexNode root = pathCreator.create(base, pathInfoFilter);
 
         return new FileIndex(base, root);
@@ -56,10 +94,138 @@ public class FileIndex {
         return changeCreator.create(this.getBase(), this.getRoot(), other.getRoot());
     }
 
-    public void applyChanges(IndexChange change) {
-        change.apply();
+    @Override
+    public IndexChange getChanges(IndexBackend other, IndexNodeChangeFactory changeFactory) {
+        if (!(other instanceof FileIndex)) {
+            throw new IllegalArgumentException("Changes are only supported to other file index but was " + other.getClass().getSimpleName());
+        }
+        return getChanges((FileIndex) other, changeFactory);
+    }
+
+    @Override
+    public void walk(Visitor<IndexEntry> visitor) {
+        IndexNodeWalker.walk(root, visitor);
+    }
+
+    @Override
+    public IndexNode find(Path relativePath) {
+        IndexNode node = root;
+        for (Path name : relativePath) {
+            if (node == null) {
+                return null;
+            } else if (!name.toString().isEmpty()) {
+                node = node.getChildByName(name.toString());
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Find a node by its relative path with '/' or the platform separator between the names.
+     * Empty names and '.' are skipped. The names are looked up in place, so a lookup costs
+     * O(depth) binary searches without creating Path or String objects
+     *
+     * @return Node or null if not found
+     */
+    @Override
+    public IndexNode find(String relativePath) {
+        IndexNode node = root;
+        int length = relativePath.length();
+        int start = 0;
+        while (node != null && start < length) {
+            int end = start;
+            while (end < length && !isSeparator(relativePath.charAt(end))) {
+                end++;
+            }
+            if (end > start && !(end - start == 1 && relativePath.charAt(start) == '.')) {
+                node = node.getChildByName(relativePath, start, end);
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == File.separatorChar;
+    }
+
+    public synchronized void applyChanges(IndexChange change) {
+        if (copyOnWrite) {
+            root = change.applyCopyOnWrite(root, dirtyTracker);
+        } else {
+            change.apply(dirtyTracker);
+        }
+    }
+
+    /**
+     * Modify extensions of nodes. In copy on write mode the editor copies the edited nodes and
+     * their ancestors and the new root is swapped after the modification. Otherwise the editor
+     * returns the nodes of the current tree and the modification holds the monitor of the root.
+     * Modifications and applied changes are serialized
+     */
+    public synchronized void modify(Consumer<IndexNodeEditor> modification) {
+        if (copyOnWrite) {
+            CopyOnWriteEditor editor = new CopyOnWriteEditor(root);
+            modification.accept(editor);
+            root = editor.getRoot();
+            dirtyTracker.rebase(editor);
+        } else {
+            IndexNode current = root;
+            synchronized (current) {
+                modification.accept(IndexNodeEditor.inPlace(current));
+            }
+        }
+    }
+
+    /**
+     * Take the modified times of nodes with unknown modified time from the current index if
+     * size, creation time and file key are unchanged. Index files of version 1 stored the
+     * creation time as modified time, so their nodes have an unknown modified time. Other nodes
+     * keep the unknown time and are detected as modified by the next comparison
+     *
+     * @return Number of nodes with adopted modified time
+     */
+    public synchronized long adoptModifiedTimes(FileIndex current) {
+        List<IndexNode> nodes = root.stream()
+                .filter(n -> !getBasicFile(n).map(BasicFileIndexExtension::hasModifiedTime).orElse(true))
+                .collect(Collectors.toList());
+        Map<Path, BasicFileIndexExtension> pathToBasicFile = new HashMap<>();
+        for (IndexNode node : nodes) {
+            Path relativePath = node.getRelativePath();
+            IndexNode currentNode = current.find(relativePath);
+            if (currentNode == null || !currentNode.getNodeType().equals(node.getNodeType())) {
+                continue;
+            }
+            BasicFileIndexExtension stored = getBasicFile(node).get();
+            Optional<BasicFileIndexExtension> currentBasicFile = getBasicFile(currentNode);
+            if (currentBasicFile.isPresent() && currentBasicFile.get().hasModifiedTime() && stored.hasEqualSizeAndIdentity(currentBasicFile.get())) {
+                pathToBasicFile.put(relativePath, currentBasicFile.get());
+            }
+        }
+        if (!pathToBasicFile.isEmpty()) {
+            modify(editor -> pathToBasicFile.forEach((path, basicFile) -> editor.edit(path).addExtension(basicFile)));
+        }
+        return pathToBasicFile.size();
     }
 
+    private static Optional<BasicFileIndexExtension> getBasicFile(IndexNode node) {
+        IndexExtension extension = node.getExtensionByType(BASIC_FILE.value);
+        return extension instanceof BasicFileIndexExtension ? Optional.of((BasicFileIndexExtension) extension) : Optional.empty();
+    }
+
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    /**
+     * @param copyOnWrite true if applied changes and modifications should create a new version of
+     * the tree
+     */
+    public void setCopyOnWrite(boolean copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+    }
+
+    @Override
     public void writeToPath(Path indexfile) throws IOException {
         if (!Files.isDirectory(indexfile.getParent())) {
             Files.createDirectories(indexfile.getParent());
@@ -71,17 +237,41 @@ public class FileIndex {
         return root;
     }
 
+    /**
+     * @return Directories which are changed by applied changes since the last universal hash update
+     */
+    public DirtyDirectoryTracker getDirtyTracker() {
+        return dirtyTracker;
+    }
+
+    /**
+     * @return Sum of the sizes of all nodes from the cached aggregate of the root
+     */
+    @Override
     public long getTotalFileSize() {
-        return root.stream()
-                .filter(n -> n.hasExtensionType(ExtensionType.BASIC_FILE.value))
-                .map(n -> ((BasicFileIndexExtension) n.getExtensionByType(ExtensionType.BASIC_FILE.value)).getSize())
-                .reduce(0L, (a, b) -> a + b);
+        DirectoryAggregate aggregate = root.getAggregate();
+        return aggregate != null ? aggregate.getTotalSize() : 0;
     }
 
+    /**
+     * @return Number of all nodes from the cached aggregate of the root
+     */
+    @Override
     public long getTotalFileCount() {
-        return root.stream().count();
+        DirectoryAggregate aggregate = root.getAggregate();
+        return aggregate != null ? aggregate.getNodeCount() : 0;
+    }
+
+    /**
+     * @return Sum of the sizes of regular files without content hash of given algorithm from the
+     * cached aggregate of the root
+     */
+    public long getMissingHashBytes(ContentHashAlgorithm algorithm) {
+        DirectoryAggregate aggregate = root.getAggregate();
+        return aggregate != null ? aggregate.getMissingHashBytes(algorithm) : 0;
     }
 
+    @Override
     public Path getBase() {
         return base;
     }
@@ -0,0 +1,51 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.change.IndexChange;
+import de.silef.service.file.change.IndexNodeChangeFactory;
+import de.silef.service.file.node.IndexEntry;
+import de.silef.service.file.tree.Visitor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Common operations of index representations. The FileIndex keeps an object per node on the
+ * heap and supports all operations. The ColumnarFileIndex stores nodes in off-heap columns for
+ * read-only operations on very large trees.
+ */
+public interface IndexBackend {
+
+    Path getBase();
+
+    /**
+     * Walk the tree depth first. Directories are visited before other nodes
+     */
+    void walk(Visitor<IndexEntry> visitor);
+
+    /**
+     * @param relativePath Path relative to the base
+     * @return Entry of the path or null if the path is not indexed
+     */
+    IndexEntry find(Path relativePath);
+
+    /**
+     * @param relativePath Path relative to the base with '/' between the names
+     * @return Entry of the path or null if the path is not indexed
+     */
+    default IndexEntry find(String relativePath) {
+        return find(Paths.get(relativePath));
+    }
+
+    /**
+     * @param other Index of the same backend type
+     * @return Changes from this index to the other index
+     */
+    IndexChange getChanges(IndexBackend other, IndexNodeChangeFactory changeFactory);
+
+    void writeToPath(Path indexfile) throws IOException;
+
+    long getTotalFileSize();
+
+    long getTotalFileCount();
+}
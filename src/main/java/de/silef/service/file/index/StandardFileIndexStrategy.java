@@ -6,6 +6,7 @@ import de.silef.service.file.extension.*;
 import de.silef.service.file.node.IndexNode;
 import de.silef.service.file.node.IndexNodeFactory;
 import de.silef.service.file.node.IndexNodeType;
+import de.silef.service.file.node.NameTable;
 import de.silef.service.file.path.IndexNodePathFactory;
 import de.silef.service.file.path.PathInfo;
 import de.silef.service.file.path.PathInfoFilter;
@@ -16,14 +17,18 @@ import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Arrays;
 import java.util.List;
 
 /**
  * Created by sebastian on 23.09.16.
+ *
+ * Names of scanned nodes are shared by a bounded name table. Names of read nodes are shared by
+ * the name table of the index file, so they are not interned again.
  */
 public class StandardFileIndexStrategy implements IndexNodeFactory, IndexNodePathFactory, PathInfoFilter, IndexNodeChangeFactory {
 
+    private final NameTable nameTable = new NameTable();
+
     @Override
     public IndexNode createIndexNode(IndexNode parent, IndexNodeType type, String name, List<IndexExtension> extensions) {
         return new IndexNode(parent, type, name, extensions);
@@ -38,9 +43,17 @@ public class StandardFileIndexStrategy implements IndexNodeFactory, IndexNodePat
             case UNIX_FILE:
                 return new UnixFileIndexExtension(data);
             case FILE_HASH:
-                return new FileContentHashIndexExtension(data);
+            case FILE_HASH_SHA256:
+            case FILE_HASH_XXHASH64:
+                return new FileContentHashIndexExtension(type, data);
             case UNIVERSAL_HASH:
                 return new UniversalHashIndexExtension(data);
+            case QUICK_FINGERPRINT:
+                return new QuickFingerprintIndexExtension(data);
+            case CHUNK_HASH:
+                return new ChunkHashIndexExtension(data);
+            case LAST_VERIFIED:
+                return new LastVerifiedIndexExtension(data);
             default:
                 return new StandardIndexExtension(type, data);
         }
@@ -65,7 +78,7 @@ public class StandardFileIndexStrategy implements IndexNodeFactory, IndexNodePat
     public IndexNode createIndexNode(IndexNode parent, PathInfo pathInfo) throws IOException {
         BasicFileAttributes attributes = pathInfo.getAttributes();
         IndexNodeType type = IndexNodeType.create(attributes.isDirectory(), attributes.isRegularFile(), attributes.isSymbolicLink());
-        IndexNode node = new IndexNode(parent, type, pathInfo.getFileName());
+        IndexNode node = new IndexNode(parent, type, nameTable.intern(pathInfo.getFileName()));
         if (!attributes.isOther()) {
             node.addExtension(BasicFileIndexExtension.createFromAttributes(attributes));
             // Do not use UnixFile extension in favour of speed. You can save about 60%
@@ -117,7 +130,7 @@ public class StandardFileIndexStrategy implements IndexNodeFactory, IndexNodePat
         IndexExtension originExtension = origin.getExtensionByType(type.value);
         IndexExtension currentExtension = current.getExtensionByType(type.value);
 
-        if (originExtension != null && currentExtension != null && !Arrays.equals(originExtension.getData(), currentExtension.getData())) {
+        if (originExtension != null && currentExtension != null && !originExtension.hasEqualData(currentExtension)) {
             return IndexNodeChange.Change.MODIFIED;
         }
         return IndexNodeChange.Change.SAME;
@@ -0,0 +1,91 @@
+package de.silef.service.file.node;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Creates a new version of a node tree by path copying. Editing a node copies the node and its
+ * ancestors once, all other nodes are shared with the given tree. The given tree is never
+ * modified, so readers of it are not affected by the edits.
+ *
+ * Shared nodes keep their parent in the version they were created in. Their names and relative
+ * paths are the same in all versions, but getParent() of a shared node might return a node of
+ * an older version. Navigate from the root of a version to get its nodes.
+ */
+public class CopyOnWriteEditor implements IndexNodeEditor {
+
+    private final Set<IndexNode> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Map<IndexNode, IndexNode> originalToCopy = new IdentityHashMap<>();
+
+    /**
+     * Copies with a children array of their own, which is not shared with the given tree
+     */
+    private final Set<IndexNode> ownChildren = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private IndexNode root;
+
+    public CopyOnWriteEditor(IndexNode root) {
+        this.root = root;
+    }
+
+    /**
+     * @return Root of the new version or the given root if nothing was edited
+     */
+    public IndexNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @param relativePath Path relative to the root
+     * @return Writable copy of the node of given path in the new version or null if the path
+     * does not exist
+     */
+    @Override
+    public IndexNode edit(Path relativePath) {
+        IndexNode node = editRoot();
+        for (Path name : relativePath) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            IndexNode child = node.getChildByName(name.toString());
+            if (child == null) {
+                return null;
+            }
+            node = editChild(node, child);
+        }
+        return node;
+    }
+
+    /**
+     * @param action Action which is called with each edited node of the given tree and its copy
+     */
+    void forEachCopy(BiConsumer<IndexNode, IndexNode> action) {
+        originalToCopy.forEach(action);
+    }
+
+    private IndexNode editRoot() {
+        if (!copies.contains(root)) {
+            IndexNode copy = root.copyShallow(null);
+            originalToCopy.put(root, copy);
+            root = copy;
+            copies.add(root);
+        }
+        return root;
+    }
+
+    private IndexNode editChild(IndexNode parentCopy, IndexNode child) {
+        if (copies.contains(child)) {
+            return child;
+        }
+        IndexNode copy = child.copyShallow(parentCopy);
+        parentCopy.replaceChild(copy, !ownChildren.add(parentCopy));
+        originalToCopy.put(child, copy);
+        copies.add(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,144 @@
+package de.silef.service.file.node;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.IndexExtension;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+
+/**
+ * Cached totals of a directory sub tree including the directory itself. Each directory node
+ * carries its aggregate, which is updated incrementally when children are added or removed or
+ * when basic file or content hash extensions change. Totals of a tree are read in O(1) from its
+ * root.
+ *
+ * The totals cover the nodes of the stream() of the directory: the directory, its sub
+ * directories and their other children. Bytes without content hash are counted for regular
+ * files with basic file extension which have no content hash of the algorithm.
+ */
+public class DirectoryAggregate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ContentHashAlgorithm[] ALGORITHMS = ContentHashAlgorithm.values();
+
+    private long fileCount;
+
+    private long directoryCount;
+
+    private long totalSize;
+
+    private final long[] missingHashBytes;
+
+    DirectoryAggregate() {
+        missingHashBytes = new long[ALGORITHMS.length];
+    }
+
+    DirectoryAggregate(DirectoryAggregate other) {
+        fileCount = other.fileCount;
+        directoryCount = other.directoryCount;
+        totalSize = other.totalSize;
+        missingHashBytes = other.missingHashBytes.clone();
+    }
+
+    /**
+     * @return Number of nodes which are not directories
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return Number of directories including this directory
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return Number of all nodes including this directory
+     */
+    public long getNodeCount() {
+        return fileCount + directoryCount;
+    }
+
+    /**
+     * @return Sum of the sizes of the basic file extensions
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return Sum of the sizes of regular files without content hash of given algorithm
+     */
+    public long getMissingHashBytes(ContentHashAlgorithm algorithm) {
+        return missingHashBytes[algorithm.ordinal()];
+    }
+
+    /**
+     * Add or subtract the totals of a child: the aggregate of a directory or the own totals of
+     * another node
+     */
+    void addTotals(IndexNode child, int sign) {
+        DirectoryAggregate aggregate = child.getAggregate();
+        if (aggregate != null) {
+            add(aggregate, sign);
+        } else {
+            addOwn(child, sign);
+        }
+    }
+
+    void add(DirectoryAggregate other, int sign) {
+        fileCount += sign * other.fileCount;
+        directoryCount += sign * other.directoryCount;
+        totalSize += sign * other.totalSize;
+        for (int i = 0; i < missingHashBytes.length; i++) {
+            missingHashBytes[i] += sign * other.missingHashBytes[i];
+        }
+    }
+
+    /**
+     * Add or subtract the totals of the node itself without its children
+     */
+    void addOwn(IndexNode node, int sign) {
+        if (node.isDirectory()) {
+            directoryCount += sign;
+        } else {
+            fileCount += sign;
+        }
+        IndexExtension extension = node.getExtensionByType(BASIC_FILE.value);
+        if (!(extension instanceof BasicFileIndexExtension)) {
+            return;
+        }
+        long size = ((BasicFileIndexExtension) extension).getSize();
+        totalSize += sign * size;
+        if (!node.isFile()) {
+            return;
+        }
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            if (!node.hasExtensionType(ALGORITHMS[i].getExtensionType().value)) {
+                missingHashBytes[i] += sign * size;
+            }
+        }
+    }
+
+    void clear() {
+        fileCount = 0;
+        directoryCount = 0;
+        totalSize = 0;
+        Arrays.fill(missingHashBytes, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryAggregate{" +
+                "fileCount=" + fileCount +
+                ", directoryCount=" + directoryCount +
+                ", totalSize=" + totalSize +
+                '}';
+    }
+}
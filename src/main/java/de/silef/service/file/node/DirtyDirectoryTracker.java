@@ -0,0 +1,91 @@
+package de.silef.service.file.node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set of directories whose derived data like the universal hash is outdated by tree changes.
+ *
+ * Marking a node marks its directory and all ancestors up to the root. Therefore the dirty set is
+ * always closed towards the root and a bottom-up pass only needs to descend into dirty directories.
+ * The marking stops at the first already dirty ancestor, so marking n changes costs O(n * depth).
+ *
+ * Directories are tracked by identity. After a new version of a copy on write tree the tracker is
+ * rebased to the copies, so it refers to the current version only and does not keep older
+ * versions reachable.
+ */
+public class DirtyDirectoryTracker {
+
+    private final Set<IndexNode> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Marks the directory of the node and its ancestors. For non directory nodes the parent
+     * directory is marked
+     */
+    public synchronized void markDirty(IndexNode node) {
+        IndexNode dir = node.isDirectory() ? node : node.getParent();
+        while (dir != null && dirty.add(dir)) {
+            dir = dir.getParent();
+        }
+    }
+
+    /**
+     * Marks all directories of the sub tree and the ancestors of the node
+     */
+    public synchronized void markTree(IndexNode node) {
+        markDirty(node);
+        node.stream()
+                .filter(IndexNode::isDirectory)
+                .forEach(dirty::add);
+    }
+
+    /**
+     * Unmarks all directories of a removed sub tree
+     */
+    public synchronized void unmarkTree(IndexNode node) {
+        if (dirty.isEmpty() || !node.isDirectory()) {
+            return;
+        }
+        node.stream()
+                .filter(IndexNode::isDirectory)
+                .forEach(dirty::remove);
+    }
+
+    /**
+     * Replace dirty directories which were copied by the editor with their copies. Costs
+     * O(copies) of the editor
+     */
+    public synchronized void rebase(CopyOnWriteEditor editor) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        editor.forEachCopy((original, copy) -> {
+            if (dirty.remove(original)) {
+                dirty.add(copy);
+            }
+        });
+    }
+
+    public synchronized boolean isDirty(IndexNode dir) {
+        return dirty.contains(dir);
+    }
+
+    public synchronized boolean hasDirty() {
+        return !dirty.isEmpty();
+    }
+
+    public synchronized List<IndexNode> getDirty() {
+        return new ArrayList<>(dirty);
+    }
+
+    public synchronized int getDirtyCount() {
+        return dirty.size();
+    }
+
+    public synchronized void clear() {
+        dirty.clear();
+    }
+}
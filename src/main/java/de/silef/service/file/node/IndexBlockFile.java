@@ -0,0 +1,261 @@
+package de.silef.service.file.node;
+
+import de.silef.service.file.util.DataUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static de.silef.service.file.node.IndexNodeWriter.MAGIC_HEADER_V3;
+
+/**
+ * Random access to an index file of version 3. The file starts with the uncompressed header
+ * followed by independently deflated blocks, the deflated footer and the uncompressed trailer
+ * with the footer offset and the header.
+ *
+ * The footer has the file offset and compressed length of each block and the directory table.
+ * Directories are numbered in depth first order of the node records. Each directory has its
+ * parent, its name id, the block and the offset in the inflated block of its node record and
+ * the end of its sub tree: the directories of a sub tree are the ids from the directory to its
+ * end.
+ */
+class IndexBlockFile {
+
+    static final int HEADER_SIZE = 4;
+
+    static final int TRAILER_SIZE = 12;
+
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+
+    private final FileChannel channel;
+
+    private final long[] blockOffsets;
+
+    private final int[] blockLengths;
+
+    private final int[] parents;
+
+    private final int[] nameIds;
+
+    private final int[] blocks;
+
+    private final int[] offsets;
+
+    private final int[] ends;
+
+    private IndexBlockFile(FileChannel channel, int blockCount, int directoryCount) {
+        this.channel = channel;
+        blockOffsets = new long[blockCount];
+        blockLengths = new int[blockCount];
+        parents = new int[directoryCount];
+        nameIds = new int[directoryCount];
+        blocks = new int[directoryCount];
+        offsets = new int[directoryCount];
+        ends = new int[directoryCount];
+    }
+
+    static boolean hasBlockHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        return readFully(channel, header, 0) && header.getInt(0) == MAGIC_HEADER_V3;
+    }
+
+    /**
+     * Read the footer. The channel is used by all streams of the block file and is not closed
+     */
+    static IndexBlockFile read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        if (size < HEADER_SIZE + TRAILER_SIZE || !readFully(channel, trailer, size - TRAILER_SIZE)) {
+            throw new IOException("Index file is truncated");
+        }
+        long footerOffset = trailer.getLong(0);
+        if (trailer.getInt(8) != MAGIC_HEADER_V3 || footerOffset < HEADER_SIZE || footerOffset > size - TRAILER_SIZE) {
+            throw new IOException("Invalid index file trailer");
+        }
+
+        try (InputStream input = new BlockInflaterInputStream(new BlockInputStream(channel, footerOffset, size - TRAILER_SIZE));
+             BufferedInputStream bufferedInput = new BufferedInputStream(input);
+             DataInputStream dataInput = new DataInputStream(bufferedInput)) {
+
+            int blockCount = DataUtils.readVarInt(dataInput);
+            int directoryCount = DataUtils.readVarInt(dataInput);
+            IndexBlockFile blockFile = new IndexBlockFile(channel, blockCount, directoryCount);
+            blockFile.readFooter(dataInput, footerOffset);
+            return blockFile;
+        }
+    }
+
+    private void readFooter(DataInputStream dataInput, long footerOffset) throws IOException {
+        for (int i = 0; i < blockOffsets.length; i++) {
+            blockOffsets[i] = dataInput.readLong();
+            blockLengths[i] = dataInput.readInt();
+            if (blockOffsets[i] < HEADER_SIZE || blockOffsets[i] + blockLengths[i] > footerOffset) {
+                throw new IOException("Invalid offset of block " + i);
+            }
+        }
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = DataUtils.readVarInt(dataInput) - 1;
+            nameIds[i] = DataUtils.readVarInt(dataInput);
+            blocks[i] = DataUtils.readVarInt(dataInput);
+            offsets[i] = DataUtils.readVarInt(dataInput);
+            ends[i] = i + DataUtils.readVarInt(dataInput);
+            if (parents[i] >= i || blocks[i] >= blockOffsets.length || ends[i] <= i || ends[i] > parents.length) {
+                throw new IOException("Invalid entry of directory " + i);
+            }
+        }
+    }
+
+    /**
+     * @return Inflated stream of all blocks from the first block to the end of the node records
+     */
+    InputStream openBlocks(int firstBlock) {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int block = firstBlock;
+
+            @Override
+            public boolean hasMoreElements() {
+                return block < blockOffsets.length;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!hasMoreElements()) {
+                    throw new NoSuchElementException();
+                }
+                long offset = blockOffsets[block];
+                long end = offset + blockLengths[block];
+                block++;
+                return new BlockInflaterInputStream(new BlockInputStream(channel, offset, end));
+            }
+        });
+    }
+
+    /**
+     * @return Inflated stream starting at the node record of the directory
+     */
+    InputStream openDirectory(int directory) throws IOException {
+        InputStream input = openBlocks(blocks[directory]);
+        long remaining = offsets[directory];
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                input.close();
+                throw new EOFException("Could not skip to directory " + directory);
+            }
+            remaining -= skipped;
+        }
+        return input;
+    }
+
+    /**
+     * @return Directory id of the relative path or -1 if the path is not a directory
+     */
+    int findDirectory(String[] names, Path relativePath) {
+        if (parents.length == 0) {
+            return -1;
+        }
+        int directory = 0;
+        for (Path element : relativePath) {
+            String name = element.toString();
+            if (name.isEmpty() || name.equals(".")) {
+                continue;
+            }
+            directory = findChild(names, directory, name);
+            if (directory < 0) {
+                return -1;
+            }
+        }
+        return directory;
+    }
+
+    private int findChild(String[] names, int directory, String name) {
+        for (int child = directory + 1; child < ends[directory]; child = ends[child]) {
+            int nameId = nameIds[child];
+            if (nameId < names.length && names[nameId].equals(name)) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    int getParent(int directory) {
+        return parents[directory];
+    }
+
+    int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a range of the file with positional reads, so streams of different blocks do not
+     * share the channel position
+     */
+    private static class BlockInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private final long end;
+
+        BlockInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int size = (int) Math.min(length, end - position);
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, size), position);
+            if (read < 0) {
+                throw new EOFException("Index file is truncated");
+            }
+            position += read;
+            return read;
+        }
+    }
+
+    /**
+     * Inflater stream with a larger buffer which releases its inflater on close
+     */
+    private static class BlockInflaterInputStream extends InflaterInputStream {
+
+        BlockInflaterInputStream(InputStream input) {
+            super(input, new Inflater(), INFLATE_BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package de.silef.service.file.node;
+
+import de.silef.service.file.extension.IndexExtension;
+
+import java.nio.file.Path;
+
+/**
+ * Read-only view of a node of an index backend. An entry is either an IndexNode or a view of a
+ * node in a columnar index. Entries of a columnar index are only valid while they are visited
+ */
+public interface IndexEntry {
+
+    String getName();
+
+    IndexNodeType getNodeType();
+
+    default boolean isDirectory() {
+        return getNodeType().isDirectory();
+    }
+
+    default boolean isFile() {
+        return getNodeType().isFile();
+    }
+
+    Path getRelativePath();
+
+    IndexExtension getExtensionByType(byte type);
+
+    default boolean hasExtensionType(byte type) {
+        return getExtensionByType(type) != null;
+    }
+}
@@ -1,32 +1,53 @@
 package de.silef.service.file.node;
 
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.ExtensionType;
 import de.silef.service.file.extension.IndexExtension;
-import de.silef.service.file.tree.Visitor;
 
-import java.io.IOException;
+import java.io.File;
 import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by sebastian on 17.09.16.
+ *
+ * Children are stored in a single array sorted by name. Lookups by name use binary search. The
+ * array is replaced on each modification (copy on write), so getChildren() and getChildNames()
+ * return read-only views without copying which are not affected by later modifications.
+ *
+ * Extensions of known types are stored in an array indexed by the slot of their ExtensionType.
+ * The array is as long as the highest used slot. Extensions of unknown types are stored in an
+ * overflow array sorted by type which is replaced on modification. Lookups by type do not
+ * allocate.
+ *
+ * The relative path is not stored. It is rendered from the names of the ancestors on demand,
+ * so a node does not retain a Path object once its path was requested.
  */
-public class IndexNode implements Serializable {
+public class IndexNode implements IndexEntry, Serializable {
+
+    private static final IndexNode[] NO_CHILDREN = new IndexNode[0];
+
+    private static final Comparator<IndexNode> BY_NAME = (a, b) -> a.getName().compareTo(b.getName());
+
+    private static final IndexExtension[] NO_EXTENSIONS = new IndexExtension[0];
 
     private IndexNode parent = null;
 
     private IndexNodeType nodeType;
 
-    private Map<Byte, IndexExtension> typeToExtension = new HashMap<>();
+    private IndexExtension[] extensions = NO_EXTENSIONS;
+
+    private IndexExtension[] unknownExtensions = NO_EXTENSIONS;
 
-    private List<IndexNode> children = new ArrayList<>();
-    private Map<String, IndexNode> nameToChild = new HashMap<>();
+    private IndexNode[] children = NO_CHILDREN;
 
     private String name;
 
-    private Path relativePath = null;
+    private DirectoryAggregate aggregate;
 
     public IndexNode(IndexNode parent, IndexNodeType nodeType, String name) {
         this(parent, nodeType, name, null);
@@ -36,18 +57,15 @@ public class IndexNode implements Serializable {
         this.parent = parent;
         this.nodeType = nodeType;
         this.name = name;
-        this.typeToExtension = makeExtensionMap(extensions);
-    }
-
-    private Map<Byte, IndexExtension> makeExtensionMap(List<IndexExtension> extensions) {
-        Map<Byte, IndexExtension> typeToExtension = new HashMap<>();
-        if (extensions == null) {
-            return typeToExtension;
+        if (extensions != null) {
+            for (IndexExtension extension : extensions) {
+                putExtension(extension);
+            }
         }
-        for (IndexExtension extension : extensions) {
-            typeToExtension.put(extension.getType(), extension);
+        if (nodeType.isDirectory()) {
+            aggregate = new DirectoryAggregate();
+            aggregate.addOwn(this, 1);
         }
-        return typeToExtension;
     }
 
     public boolean isRoot() {
@@ -60,7 +78,6 @@ public class IndexNode implements Serializable {
 
     void setParent(IndexNode parent) {
         this.parent = parent;
-        this.relativePath = null;
     }
 
     public IndexNodeType getNodeType() {
@@ -83,39 +100,197 @@ public class IndexNode implements Serializable {
         return name;
     }
 
+    /**
+     * @return Cached totals of this directory and its descendants or null if this node is not a
+     * directory
+     */
+    public DirectoryAggregate getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @return New list of all extensions. Known types come first in slot order followed by
+     * unknown types
+     */
     public List<IndexExtension> getExtensions() {
-        return new ArrayList<>(typeToExtension.values());
+        List<IndexExtension> result = new ArrayList<>(extensions.length + unknownExtensions.length);
+        for (IndexExtension extension : extensions) {
+            if (extension != null) {
+                result.add(extension);
+            }
+        }
+        result.addAll(Arrays.asList(unknownExtensions));
+        return result;
     }
 
     public IndexExtension getExtensionByType(byte type) {
-        return typeToExtension.get(type);
+        int slot = ExtensionType.slotOf(type);
+        if (slot > 0) {
+            return slot < extensions.length ? extensions[slot] : null;
+        }
+        int index = indexOfUnknownExtension(type);
+        return index >= 0 ? unknownExtensions[index] : null;
     }
 
     public boolean hasExtensionType(byte type) {
-        return typeToExtension.containsKey(type);
+        return getExtensionByType(type) != null;
     }
 
     public void addExtension(IndexExtension extension) {
-        typeToExtension.put(extension.getType(), extension);
+        boolean affectsTotals = affectsTotals(extension.getType());
+        if (affectsTotals) {
+            updateOwnTotals(-1);
+        }
+        putExtension(extension);
+        if (affectsTotals) {
+            updateOwnTotals(1);
+        }
+    }
+
+    private void putExtension(IndexExtension extension) {
+        byte type = extension.getType();
+        int slot = ExtensionType.slotOf(type);
+        if (slot > 0) {
+            if (slot >= extensions.length) {
+                extensions = Arrays.copyOf(extensions, slot + 1);
+            }
+            extensions[slot] = extension;
+            return;
+        }
+
+        int index = indexOfUnknownExtension(type);
+        if (index >= 0) {
+            IndexExtension[] newExtensions = unknownExtensions.clone();
+            newExtensions[index] = extension;
+            unknownExtensions = newExtensions;
+        } else {
+            int insert = -index - 1;
+            IndexExtension[] newExtensions = new IndexExtension[unknownExtensions.length + 1];
+            System.arraycopy(unknownExtensions, 0, newExtensions, 0, insert);
+            newExtensions[insert] = extension;
+            System.arraycopy(unknownExtensions, insert, newExtensions, insert + 1, unknownExtensions.length - insert);
+            unknownExtensions = newExtensions;
+        }
     }
 
     public void addAllExtensions(List<IndexExtension> extensions) {
+        updateOwnTotals(-1);
         for (IndexExtension extension : extensions) {
-            addExtension(extension);
+            putExtension(extension);
         }
+        updateOwnTotals(1);
     }
 
     public void setExtensions(List<IndexExtension> extensions) {
-        typeToExtension.clear();
-        addAllExtensions(extensions);
+        updateOwnTotals(-1);
+        this.extensions = NO_EXTENSIONS;
+        this.unknownExtensions = NO_EXTENSIONS;
+        for (IndexExtension extension : extensions) {
+            putExtension(extension);
+        }
+        updateOwnTotals(1);
     }
 
     public IndexExtension removeExtensionType(byte type) {
-        return typeToExtension.remove(type);
+        boolean affectsTotals = affectsTotals(type);
+        if (affectsTotals) {
+            updateOwnTotals(-1);
+        }
+        IndexExtension extension = deleteExtension(type);
+        if (affectsTotals) {
+            updateOwnTotals(1);
+        }
+        return extension;
     }
 
+    private IndexExtension deleteExtension(byte type) {
+        int slot = ExtensionType.slotOf(type);
+        if (slot > 0) {
+            if (slot >= extensions.length) {
+                return null;
+            }
+            IndexExtension extension = extensions[slot];
+            extensions[slot] = null;
+            int length = extensions.length;
+            while (length > 0 && extensions[length - 1] == null) {
+                length--;
+            }
+            if (length < extensions.length) {
+                extensions = length > 0 ? Arrays.copyOf(extensions, length) : NO_EXTENSIONS;
+            }
+            return extension;
+        }
+
+        int index = indexOfUnknownExtension(type);
+        if (index < 0) {
+            return null;
+        }
+        IndexExtension extension = unknownExtensions[index];
+        if (unknownExtensions.length == 1) {
+            unknownExtensions = NO_EXTENSIONS;
+        } else {
+            IndexExtension[] newExtensions = new IndexExtension[unknownExtensions.length - 1];
+            System.arraycopy(unknownExtensions, 0, newExtensions, 0, index);
+            System.arraycopy(unknownExtensions, index + 1, newExtensions, index, unknownExtensions.length - index - 1);
+            unknownExtensions = newExtensions;
+        }
+        return extension;
+    }
+
+    private static boolean affectsTotals(byte type) {
+        return type == ExtensionType.BASIC_FILE.value || ContentHashAlgorithm.fromExtensionType(type) != null;
+    }
+
+    /**
+     * Add or subtract the own totals of this node to the aggregates of this directory and of all
+     * attached ancestors
+     */
+    private void updateOwnTotals(int sign) {
+        IndexNode dir = aggregate != null ? this : (isAttached() ? parent : null);
+        while (dir != null && dir.aggregate != null) {
+            dir.aggregate.addOwn(this, sign);
+            dir = dir.isAttached() ? dir.parent : null;
+        }
+    }
+
+    /**
+     * Add or subtract the totals of a child to the aggregates of this directory and of all
+     * attached ancestors
+     */
+    private void updateChildTotals(IndexNode child, int sign) {
+        IndexNode dir = this;
+        while (dir != null && dir.aggregate != null) {
+            dir.aggregate.addTotals(child, sign);
+            dir = dir.isAttached() ? dir.parent : null;
+        }
+    }
+
+    /**
+     * @return true if this node is a child of its parent. Nodes under construction or removed
+     * nodes might have a parent which does not contain them
+     */
+    private boolean isAttached() {
+        return parent != null && parent.getChildByName(name) == this;
+    }
+
+    private int indexOfUnknownExtension(byte type) {
+        IndexExtension[] unknown = unknownExtensions;
+        for (int i = 0; i < unknown.length; i++) {
+            byte other = unknown[i].getType();
+            if (other == type) {
+                return i;
+            } else if (other > type) {
+                return -(i + 1);
+            }
+        }
+        return -(unknown.length + 1);
+    }
+
+    /**
+     * @return Read-only view of the children sorted by name
+     */
     public List<IndexNode> getChildren() {
-        return new ArrayList<>(children);
+        return Collections.unmodifiableList(Arrays.asList(children));
     }
 
     public void addChild(IndexNode node) {
@@ -125,65 +300,292 @@ public class IndexNode implements Serializable {
         }
         node.setParent(this);
 
-        IndexNode oldNode = removeChildByName(node.getName());
-        if (oldNode != null) {
-            oldNode.setParent(null);
+        int index = indexOfChild(node.getName());
+        if (index >= 0) {
+            updateChildTotals(children[index], -1);
+            IndexNode[] newChildren = children.clone();
+            children[index].setParent(null);
+            newChildren[index] = node;
+            children = newChildren;
+        } else {
+            int insert = -index - 1;
+            IndexNode[] newChildren = new IndexNode[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newChildren[insert] = node;
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            children = newChildren;
         }
-        nameToChild.put(node.getName(), node);
-        children.add(node);
+        updateChildTotals(node, 1);
     }
 
     public void setChildren(List<IndexNode> children) {
-        this.children = new ArrayList<>(children);
-        nameToChild = new HashMap<>();
-        for (IndexNode child : children) {
+        IndexNode[] newChildren = children.toArray(new IndexNode[children.size()]);
+        Arrays.sort(newChildren, BY_NAME);
+        for (IndexNode child : newChildren) {
             child.setParent(this);
-            nameToChild.put(child.getName(), child);
+        }
+        this.children = newChildren.length > 0 ? newChildren : NO_CHILDREN;
+        if (aggregate != null) {
+            DirectoryAggregate old = new DirectoryAggregate(aggregate);
+            aggregate.clear();
+            aggregate.addOwn(this, 1);
+            for (IndexNode child : newChildren) {
+                aggregate.addTotals(child, 1);
+            }
+            IndexNode dir = isAttached() ? parent : null;
+            while (dir != null && dir.aggregate != null) {
+                dir.aggregate.add(old, -1);
+                dir.aggregate.add(aggregate, 1);
+                dir = dir.isAttached() ? dir.parent : null;
+            }
         }
     }
 
     public IndexNode removeChildByName(String name) {
-        IndexNode node = getChildByName(name);
-        children.remove(node);
-        nameToChild.remove(name);
+        int index = indexOfChild(name);
+        if (index < 0) {
+            return null;
+        }
+        IndexNode node = children[index];
+        if (children.length == 1) {
+            children = NO_CHILDREN;
+        } else {
+            IndexNode[] newChildren = new IndexNode[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            children = newChildren;
+        }
+        updateChildTotals(node, -1);
         return node;
     }
 
+    /**
+     * Lookup a child by the name between start and end of given path without creating a String
+     *
+     * @return Child or null if not found
+     */
+    public IndexNode getChildByName(CharSequence path, int start, int end) {
+        IndexNode[] nodes = children;
+        int low = 0;
+        int high = nodes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareName(nodes[mid].getName(), path, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return nodes[mid];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same order as String.compareTo() of the name and the path region
+     */
+    private static int compareName(String name, CharSequence path, int start, int end) {
+        int length = end - start;
+        int limit = Math.min(name.length(), length);
+        for (int i = 0; i < limit; i++) {
+            char c1 = name.charAt(i);
+            char c2 = path.charAt(start + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return name.length() - length;
+    }
+
+    private int indexOfChild(String name) {
+        IndexNode[] nodes = children;
+        int low = 0;
+        int high = nodes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = nodes[mid].getName().compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return Deep copy of this node and its descendants without parent. Extensions are shared
+     */
+    public IndexNode copy() {
+        return copy(null);
+    }
+
+    /**
+     * @return Copy of this node with given parent which shares the children and extensions.
+     * The children array and the unknown extensions are replaced on modification, the slot array
+     * of extensions is copied
+     */
+    IndexNode copyShallow(IndexNode parent) {
+        IndexNode copy = new IndexNode(parent, nodeType, name);
+        copy.extensions = extensions.length > 0 ? extensions.clone() : NO_EXTENSIONS;
+        copy.unknownExtensions = unknownExtensions;
+        copy.children = children;
+        copy.aggregate = aggregate != null ? new DirectoryAggregate(aggregate) : null;
+        return copy;
+    }
+
+    private IndexNode copy(IndexNode parent) {
+        IndexNode copy = new IndexNode(parent, nodeType, name);
+        copy.extensions = extensions.length > 0 ? extensions.clone() : NO_EXTENSIONS;
+        copy.unknownExtensions = unknownExtensions;
+        IndexNode[] childCopies = new IndexNode[children.length];
+        for (int i = 0; i < children.length; i++) {
+            childCopies[i] = children[i].copy(copy);
+        }
+        copy.children = childCopies.length > 0 ? childCopies : NO_CHILDREN;
+        copy.aggregate = aggregate != null ? new DirectoryAggregate(aggregate) : null;
+        return copy;
+    }
+
+    /**
+     * @return Current children array without copy. It must not be modified
+     */
+    IndexNode[] getChildArray() {
+        return children;
+    }
+
+    /**
+     * Replace the child of the same name without changing the parent of the replaced child or
+     * the aggregate. The child must have the same totals like the replaced one
+     *
+     * @param isOwnChildren true if the children array is not shared with other nodes and might be
+     * modified in place. Otherwise the array is copied
+     */
+    void replaceChild(IndexNode child, boolean isOwnChildren) {
+        int index = indexOfChild(child.getName());
+        if (index < 0) {
+            throw new IllegalArgumentException("Child " + child.getName() + " not found");
+        }
+        if (!isOwnChildren) {
+            children = children.clone();
+        }
+        children[index] = child;
+    }
+
     public IndexNode getChildByName(String name) {
-        return nameToChild.get(name);
+        int index = indexOfChild(name);
+        return index >= 0 ? children[index] : null;
     }
 
+    /**
+     * @return Read-only view of the child names in sorted order
+     */
     public Set<String> getChildNames() {
-        return new HashSet<>(nameToChild.keySet());
+        return new ChildNameSet(children);
     }
 
+    /**
+     * @return New path relative to the root. Use appendRelativePath() to render paths without
+     * Path objects
+     */
     public Path getRelativePath() {
-        if (relativePath == null) {
-            relativePath = parent == null ? Paths.get("") : parent.getRelativePath().resolve(name);
+        if (parent == null) {
+            return Paths.get("");
+        }
+        return Paths.get(appendRelativePath(new StringBuilder()).toString());
+    }
+
+    /**
+     * Append the names from the root to this node separated by the platform separator. The
+     * root is rendered as empty path
+     *
+     * @return Given builder
+     */
+    public StringBuilder appendRelativePath(StringBuilder builder) {
+        if (parent == null) {
+            return builder;
+        }
+        if (parent.parent != null) {
+            parent.appendRelativePath(builder).append(File.separatorChar);
         }
-        return relativePath;
+        return builder.append(name);
     }
 
+    /**
+     * @return Lazy stream of this directory and its descendants in the order of the
+     * IndexNodeWalker. Empty if this node is not a directory
+     */
     public Stream<IndexNode> stream() {
-        Stream.Builder<IndexNode> streamConsumer = Stream.builder();
-        IndexNodeWalker.walk(this, new Visitor<IndexNode>() {
-            @Override
-            public VisitorResult preVisitDirectory(IndexNode dir) throws IOException {
-                streamConsumer.accept(dir);
-                return super.preVisitDirectory(dir);
-            }
+        return StreamSupport.stream(new IndexNodeSpliterator(this), false);
+    }
 
-            @Override
-            public VisitorResult visitFile(IndexNode file) throws IOException {
-                streamConsumer.accept(file);
-                return super.visitFile(file);
-            }
-        });
-        return streamConsumer.build();
+    /**
+     * @return Parallel stream like stream(). The tree is split at directory boundaries
+     */
+    public Stream<IndexNode> parallelStream() {
+        return StreamSupport.stream(new IndexNodeSpliterator(this), true);
     }
 
     @Override
     public String toString() {
         return nodeType + " " + getRelativePath();
     }
+
+    private static class ChildNameSet extends AbstractSet<String> {
+
+        private final IndexNode[] children;
+
+        ChildNameSet(IndexNode[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < children.length;
+                }
+
+                @Override
+                public String next() {
+                    if (index >= children.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return children[index++].getName();
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = children[mid].getName().compareTo((String) o);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return children.length;
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package de.silef.service.file.node;
+
+import java.nio.file.Path;
+
+/**
+ * Provides writable nodes of a tree by their relative path. Extensions of an edited node might be
+ * changed, the aggregates of its directory and ancestors are updated by the node.
+ */
+public interface IndexNodeEditor {
+
+    /**
+     * @param relativePath Path relative to the root
+     * @return Writable node of the given path or null if the path does not exist
+     */
+    IndexNode edit(Path relativePath);
+
+    /**
+     * @return Editor which returns the nodes of the given tree for modification in place
+     */
+    static IndexNodeEditor inPlace(IndexNode root) {
+        return relativePath -> {
+            IndexNode node = root;
+            for (Path name : relativePath) {
+                if (node == null) {
+                    return null;
+                } else if (!name.toString().isEmpty()) {
+                    node = node.getChildByName(name.toString());
+                }
+            }
+            return node;
+        };
+    }
+}
@@ -1,21 +1,30 @@
 package de.silef.service.file.node;
 
+import de.silef.service.file.extension.BasicFileIndexExtension;
 import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.util.DataUtils;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.zip.InflaterInputStream;
 
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
 import static de.silef.service.file.node.IndexNodeWriter.MAGIC_HEADER;
+import static de.silef.service.file.node.IndexNodeWriter.MAGIC_HEADER_V1;
 
 /**
  * Created by sebastian on 17.09.16.
+ *
+ * Reads the index format version 3 with blocks and footer, version 2 with name table and
+ * version 1 with inline names. Version 1 stored the creation time as modified time of basic file
+ * extensions, so their modified time is read as unknown. A sub tree of version 3 is read from the blocks of its directory
+ * and the node records of its ancestors only. Older versions are read completely and pruned.
  */
 public class IndexNodeReader {
 
@@ -25,60 +34,198 @@ public class IndexNodeReader {
         this.nodeFactory = nodeFactory;
     }
 
+    /**
+     * Open the inflated data of an index file: the data of version 2 for files of version 3 or
+     * the inflated file of version 1 and 2, both starting with their header
+     */
+    public static InputStream openInflatedStream(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (IndexBlockFile.hasBlockHeader(channel)) {
+                InputStream blocks = IndexBlockFile.read(channel).openBlocks(0);
+                return new FilterInputStream(blocks) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            channel.close();
+                        }
+                    }
+                };
+            }
+            return new InflaterInputStream(Channels.newInputStream(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
     public IndexNode read(Path file) throws IOException {
-        try (InputStream input = Files.newInputStream(file)) {
+        try (InputStream input = openInflatedStream(file)) {
             return read(input);
         }
     }
 
-    private IndexNode read(InputStream input) throws IOException {
-        try (InflaterInputStream inflaterInput = new InflaterInputStream(input);
-             BufferedInputStream bufferedInput = new BufferedInputStream(inflaterInput);
-             DataInputStream dataInput = new DataInputStream(bufferedInput)) {
+    /**
+     * Read the sub tree of a directory. The returned root contains only the ancestors of the
+     * directory, each with the next ancestor as only child, and the complete sub tree of the
+     * directory.
+     *
+     * @param relativePath Relative path of the directory. An empty path reads the whole tree
+     * @return Root of the partial tree or null if the path is not a directory of the index
+     */
+    public IndexNode readSubtree(Path file, Path relativePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (IndexBlockFile.hasBlockHeader(channel)) {
+                return readSubtree(IndexBlockFile.read(channel), relativePath);
+            }
+        }
+        return pruneToSubtree(read(file), relativePath);
+    }
 
+    private IndexNode readSubtree(IndexBlockFile blockFile, Path relativePath) throws IOException {
+        String[] names;
+        try (DataInputStream dataInput = createDataInput(blockFile.openBlocks(0))) {
             int header = dataInput.readInt();
             if (header != MAGIC_HEADER) {
                 throw new IOException("Unexpected header: " + header);
             }
-            return readNode(null, dataInput);
+            names = readNameTable(dataInput);
+        }
+
+        int directory = blockFile.findDirectory(names, relativePath);
+        if (directory < 0) {
+            return null;
+        }
+        List<Integer> ancestors = new ArrayList<>();
+        for (int ancestor = blockFile.getParent(directory); ancestor >= 0; ancestor = blockFile.getParent(ancestor)) {
+            ancestors.add(ancestor);
+        }
+        Collections.reverse(ancestors);
+
+        try {
+            List<IndexNode> path = new ArrayList<>(ancestors.size() + 1);
+            IndexNode parent = null;
+            for (int ancestor : ancestors) {
+                try (DataInputStream dataInput = createDataInput(blockFile.openDirectory(ancestor))) {
+                    parent = readNodeRecord(parent, names, dataInput);
+                }
+                path.add(parent);
+            }
+            try (DataInputStream dataInput = createDataInput(blockFile.openDirectory(directory))) {
+                path.add(readNode(parent, names, dataInput));
+            }
+
+            for (int i = path.size() - 2; i >= 0; i--) {
+                path.get(i).setChildren(Collections.singletonList(path.get(i + 1)));
+            }
+            return path.get(0);
         } catch (ClassNotFoundException | ClassCastException e) {
             throw new IOException("Could not read cache nodes", e);
         }
     }
 
-    private IndexNode readNode(IndexNode parent, DataInputStream dataInput)
-            throws ClassNotFoundException, IOException {
+    private IndexNode pruneToSubtree(IndexNode root, Path relativePath) {
+        IndexNode node = root;
+        for (Path element : relativePath) {
+            String name = element.toString();
+            if (name.isEmpty() || name.equals(".")) {
+                continue;
+            }
+            IndexNode child = node.getChildByName(name);
+            if (child == null || !child.isDirectory()) {
+                return null;
+            }
+            node.setChildren(Collections.singletonList(child));
+            node = child;
+        }
+        return node.isDirectory() ? root : null;
+    }
 
-        IndexNodeType type = IndexNodeType.create(dataInput.readByte());
-        String name = dataInput.readUTF();
-        List<IndexExtension> extensions = readExtensions(dataInput);
+    private DataInputStream createDataInput(InputStream input) {
+        return new DataInputStream(new BufferedInputStream(input));
+    }
+
+    private IndexNode read(InputStream input) throws IOException {
+        try (DataInputStream dataInput = createDataInput(input)) {
+
+            int header = dataInput.readInt();
+            if (header == MAGIC_HEADER) {
+                return readNode(null, readNameTable(dataInput), dataInput);
+            } else if (header == MAGIC_HEADER_V1) {
+                return readNode(null, null, dataInput);
+            }
+            throw new IOException("Unexpected header: " + header);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Could not read cache nodes", e);
+        }
+    }
+
+    private String[] readNameTable(DataInputStream dataInput) throws IOException {
+        int nameCount = DataUtils.readVarInt(dataInput);
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = dataInput.readUTF();
+        }
+        return names;
+    }
+
+    /**
+     * @param names Name table of version 2 or null for inline names of version 1
+     */
+    private IndexNode readNode(IndexNode parent, String[] names, DataInputStream dataInput)
+            throws ClassNotFoundException, IOException {
 
-        IndexNode node = nodeFactory.createIndexNode(parent, type, name, extensions);
+        IndexNode node = readNodeRecord(parent, names, dataInput);
 
-        List<IndexNode> children = readChildren(dataInput, node);
+        List<IndexNode> children = readChildren(dataInput, names, node);
         node.setChildren(children);
 
         return node;
     }
 
-    private List<IndexNode> readChildren(DataInputStream input, IndexNode parent) throws IOException, ClassNotFoundException {
+    /**
+     * Read the node without its children count and children
+     */
+    private IndexNode readNodeRecord(IndexNode parent, String[] names, DataInputStream dataInput) throws IOException {
+        IndexNodeType type = IndexNodeType.create(dataInput.readByte());
+        String name = names != null ? readName(names, dataInput) : dataInput.readUTF();
+        List<IndexExtension> extensions = readExtensions(dataInput, names == null);
+
+        return nodeFactory.createIndexNode(parent, type, name, extensions);
+    }
+
+    private String readName(String[] names, DataInputStream dataInput) throws IOException {
+        int id = DataUtils.readVarInt(dataInput);
+        if (id >= names.length) {
+            throw new IOException("Invalid name id " + id + " of name table with " + names.length + " names");
+        }
+        return names[id];
+    }
+
+    private List<IndexNode> readChildren(DataInputStream input, String[] names, IndexNode parent) throws IOException, ClassNotFoundException {
         int childrenCount = input.readInt();
         List<IndexNode> children = new ArrayList<>(childrenCount);
         for (int i = 0; i < childrenCount; i++) {
-            children.add(readNode(parent, input));
+            children.add(readNode(parent, names, input));
         }
         return children;
     }
 
-    private List<IndexExtension> readExtensions(DataInputStream input) throws IOException {
+    /**
+     * @param isVersion1 Reset modified times of basic file extensions, which were creation times
+     */
+    private List<IndexExtension> readExtensions(DataInputStream input, boolean isVersion1) throws IOException {
         int extensionCount = input.readByte() & 0xff;
         List<IndexExtension> extensions = new ArrayList<>(extensionCount);
         for (int i = 0; i < extensionCount; i++) {
             byte type = input.readByte();
             int size = input.readShort();
             byte[] data = new byte[size];
-            if (input.read(data) != size) {
-                throw new IOException("Could not read extension data");
+            input.readFully(data);
+            if (isVersion1 && type == BASIC_FILE.value) {
+                BasicFileIndexExtension.resetLegacyModifiedTime(data);
             }
             extensions.add(nodeFactory.createExtension(type, data));
         }
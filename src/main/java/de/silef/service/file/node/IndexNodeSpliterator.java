@@ -0,0 +1,105 @@
+package de.silef.service.file.node;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazy depth first spliterator over a node tree in the order of the IndexNodeWalker: a directory
+ * is followed by its sub directories and then by its other children.
+ *
+ * Pending sub trees are kept on a stack and expanded when their directory is reached. A split
+ * hands the first half of the pending sub trees to the new spliterator, so splits happen at
+ * directory boundaries and keep the encounter order. A single pending directory is expanded
+ * before the split and its node is emitted by the new spliterator.
+ */
+class IndexNodeSpliterator implements Spliterator<IndexNode> {
+
+    private final ArrayDeque<IndexNode> singles;
+
+    private final ArrayDeque<IndexNode> stack;
+
+    private long estimatedSize;
+
+    IndexNodeSpliterator(IndexNode root) {
+        this(new ArrayDeque<>(), new ArrayDeque<>(), Long.MAX_VALUE);
+        if (root.isDirectory()) {
+            stack.push(root);
+        }
+    }
+
+    private IndexNodeSpliterator(ArrayDeque<IndexNode> singles, ArrayDeque<IndexNode> stack, long estimatedSize) {
+        this.singles = singles;
+        this.stack = stack;
+        this.estimatedSize = estimatedSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super IndexNode> action) {
+        IndexNode node = singles.pollFirst();
+        if (node == null) {
+            node = stack.pollFirst();
+            if (node == null) {
+                return false;
+            }
+            if (node.isDirectory()) {
+                pushChildren(node);
+            }
+        }
+        action.accept(node);
+        return true;
+    }
+
+    private void pushChildren(IndexNode dir) {
+        IndexNode[] children = dir.getChildArray();
+        for (int i = children.length - 1; i >= 0; i--) {
+            if (!children[i].isDirectory()) {
+                stack.push(children[i]);
+            }
+        }
+        for (int i = children.length - 1; i >= 0; i--) {
+            if (children[i].isDirectory()) {
+                stack.push(children[i]);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<IndexNode> trySplit() {
+        ArrayDeque<IndexNode> prefixSingles = new ArrayDeque<>();
+        if (stack.size() == 1) {
+            IndexNode dir = stack.peek();
+            if (!dir.isDirectory() || dir.getChildArray().length < 2) {
+                return null;
+            }
+            stack.pop();
+            pushChildren(dir);
+            prefixSingles.addAll(singles);
+            singles.clear();
+            prefixSingles.add(dir);
+        } else if (stack.size() < 2) {
+            return null;
+        } else {
+            prefixSingles.addAll(singles);
+            singles.clear();
+        }
+
+        int prefixSize = stack.size() / 2;
+        ArrayDeque<IndexNode> prefixStack = new ArrayDeque<>(prefixSize);
+        for (int i = 0; i < prefixSize; i++) {
+            prefixStack.addLast(stack.pollFirst());
+        }
+        estimatedSize >>>= 1;
+        return new IndexNodeSpliterator(prefixSingles, prefixStack, estimatedSize);
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+}
@@ -6,8 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 import static de.silef.service.file.tree.Visitor.VisitorResult.*;
@@ -37,17 +35,10 @@ public class IndexNodeWalker {
             return result;
         }
 
-        List<IndexNode> sortedChildren = new ArrayList<>(node.getChildren());
-        sortedChildren.sort(sortByTypeAndName());
-        for (IndexNode child : sortedChildren) {
-            if (child.isDirectory()) {
-                result = walk(child, visitor);
-            } else {
-                result = visitor.visitFile(child);
-            }
-            if (result == SKIP_SIBLINGS || result == TERMINATE) {
-                break;
-            }
+        List<IndexNode> children = node.getChildren();
+        result = walkChildren(children, true, visitor);
+        if (result != SKIP_SIBLINGS && result != TERMINATE) {
+            result = walkChildren(children, false, visitor);
         }
         if (result == TERMINATE) {
             return TERMINATE;
@@ -55,16 +46,25 @@ public class IndexNodeWalker {
         return visitor.postVisitDirectory(node);
     }
 
-    private static Comparator<IndexNode> sortByTypeAndName() {
-        return (a, b) -> {
-            if (a.isDirectory() && !b.isDirectory()) {
-                return -1;
-            } else if (!a.isDirectory() && b.isDirectory()) {
-                return 1;
+    /**
+     * Children are sorted by name. Directories are walked before other nodes
+     */
+    private static Visitor.VisitorResult walkChildren(List<IndexNode> children, boolean directories, Visitor<? super IndexNode> visitor) throws IOException {
+        Visitor.VisitorResult result = CONTINUE;
+        for (IndexNode child : children) {
+            if (child.isDirectory() != directories) {
+                continue;
+            }
+            if (directories) {
+                result = walk(child, visitor);
             } else {
-                return a.getName().compareTo(b.getName());
+                result = visitor.visitFile(child);
             }
-        };
+            if (result == SKIP_SIBLINGS || result == TERMINATE) {
+                break;
+            }
+        }
+        return result;
     }
 
 }
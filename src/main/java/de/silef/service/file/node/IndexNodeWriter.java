@@ -1,23 +1,51 @@
 package de.silef.service.file.node;
 
 import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.util.DataUtils;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 /**
  * Created by sebastian on 17.09.16.
+ *
+ * Writes the index format version 3. All distinct node names are written once into a name
+ * table in front of the nodes. Nodes reference their name by its table index. Frequent names
+ * get low indices to use fewer bytes.
+ *
+ * The name table and the node records of version 2 are split into independently deflated
+ * blocks of about BLOCK_SIZE bytes. A footer maps each directory to the block and offset of its
+ * node record, so a sub tree can be read without inflating the blocks in front of it. The
+ * inflated blocks in order are the data of version 2.
  */
 public class IndexNodeWriter {
 
-    static int MAGIC_HEADER = 0x23100702;
+    /**
+     * Header of version 1 without name table
+     */
+    public static final int MAGIC_HEADER_V1 = 0x23100702;
+
+    /**
+     * Header of version 2 with name table. It starts the data of the blocks of version 3
+     */
+    public static final int MAGIC_HEADER = 0x23100703;
+
+    /**
+     * Uncompressed header of version 3 with blocks and footer. A zlib stream never starts with
+     * this byte, so version 3 files are distinguished from deflated files of version 1 and 2
+     */
+    public static final int MAGIC_HEADER_V3 = 0x23100704;
+
+    /**
+     * Minimum size of inflated block data before a new block is started at the next node
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
 
     public void write(IndexNode root, Path path) throws IOException {
         try (OutputStream output = Files.newOutputStream(path, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)) {
@@ -26,21 +54,63 @@ public class IndexNodeWriter {
     }
 
     public void write(IndexNode root, OutputStream output) throws IOException {
-        try (DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output);
-             BufferedOutputStream bufferedOutput = new BufferedOutputStream(deflaterOutput);
-             DataOutputStream dataOutput = new DataOutputStream(bufferedOutput)) {
+        try (BufferedOutputStream bufferedOutput = new BufferedOutputStream(output);
+             DataOutputStream fileOutput = new DataOutputStream(bufferedOutput)) {
+
+            BlockOutput blockOutput = new BlockOutput(fileOutput);
+            try {
+                DataOutputStream dataOutput = blockOutput.getDataOutput();
+                dataOutput.writeInt(MAGIC_HEADER);
+                Map<String, Integer> nameToId = writeNameTable(root, dataOutput);
+                blockOutput.flushBlock();
+                writeNode(root, -1, nameToId, blockOutput);
+                blockOutput.finish();
+            } finally {
+                blockOutput.end();
+            }
+        }
+    }
+
+    private Map<String, Integer> writeNameTable(IndexNode root, DataOutputStream dataOutput) throws IOException {
+        Map<String, Integer> nameToCount = new HashMap<>();
+        countNames(root, nameToCount);
+
+        List<String> names = new ArrayList<>(nameToCount.keySet());
+        names.sort((a, b) -> {
+            int result = nameToCount.get(b) - nameToCount.get(a);
+            return result != 0 ? result : a.compareTo(b);
+        });
+
+        Map<String, Integer> nameToId = new HashMap<>(names.size() * 4 / 3 + 1);
+        DataUtils.writeVarInt(dataOutput, names.size());
+        for (String name : names) {
+            nameToId.put(name, nameToId.size());
+            dataOutput.writeUTF(name);
+        }
+        return nameToId;
+    }
 
-            dataOutput.writeInt(MAGIC_HEADER);
-            writeNode(root, dataOutput);
+    private void countNames(IndexNode node, Map<String, Integer> nameToCount) {
+        nameToCount.merge(node.getName(), 1, Integer::sum);
+        for (IndexNode child : node.getChildren()) {
+            countNames(child, nameToCount);
         }
     }
 
-    private void writeNode(IndexNode node, DataOutputStream dataOutput) throws IOException {
+    private void writeNode(IndexNode node, int parentDirectory, Map<String, Integer> nameToId, BlockOutput output) throws IOException {
+        int nameId = nameToId.get(node.getName());
+        int directory = output.startNode(node.isDirectory(), parentDirectory, nameId);
+
+        DataOutputStream dataOutput = output.getDataOutput();
         dataOutput.writeByte(node.getNodeType().getByte());
-        dataOutput.writeUTF(node.getName());
+        DataUtils.writeVarInt(dataOutput, nameId);
 
         writeExtensions(node, dataOutput);
-        writeChildren(node, dataOutput);
+        writeChildren(node, directory, nameToId, output);
+
+        if (directory >= 0) {
+            output.endDirectory(directory);
+        }
     }
 
     private void writeExtensions(IndexNode node, DataOutputStream dataOutput) throws IOException {
@@ -61,12 +131,115 @@ public class IndexNodeWriter {
         return (a, b) -> a.getType() - b.getType();
     }
 
-    private void writeChildren(IndexNode node, DataOutputStream output) throws IOException {
+    private void writeChildren(IndexNode node, int directory, Map<String, Integer> nameToId, BlockOutput output) throws IOException {
         Collection<IndexNode> children = node.getChildren();
-        output.writeInt(children.size());
+        output.getDataOutput().writeInt(children.size());
         for (IndexNode child : children) {
-            writeNode(child, output);
+            writeNode(child, directory, nameToId, output);
         }
     }
 
+    /**
+     * Collects the data of the current block, deflates full blocks into the file and records
+     * the block and directory tables of the footer
+     */
+    private static class BlockOutput {
+
+        private final DataOutputStream fileOutput;
+
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + 4096);
+
+        private final DataOutputStream dataOutput = new DataOutputStream(block);
+
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(BLOCK_SIZE);
+
+        private final Deflater deflater = new Deflater();
+
+        private final List<long[]> blocks = new ArrayList<>();
+
+        /**
+         * Parent + 1, name id, block, offset in block and end of sub tree of each directory
+         */
+        private final List<int[]> directories = new ArrayList<>();
+
+        private long position;
+
+        BlockOutput(DataOutputStream fileOutput) throws IOException {
+            this.fileOutput = fileOutput;
+            fileOutput.writeInt(MAGIC_HEADER_V3);
+            position = IndexBlockFile.HEADER_SIZE;
+        }
+
+        DataOutputStream getDataOutput() {
+            return dataOutput;
+        }
+
+        /**
+         * Start a new block if the current one is full. Register a directory with the block and
+         * offset of its node record
+         *
+         * @return Directory id or -1 for other nodes
+         */
+        int startNode(boolean isDirectory, int parentDirectory, int nameId) throws IOException {
+            if (block.size() >= BLOCK_SIZE) {
+                flushBlock();
+            }
+            if (!isDirectory) {
+                return -1;
+            }
+            directories.add(new int[] {parentDirectory + 1, nameId, blocks.size(), block.size(), 0});
+            return directories.size() - 1;
+        }
+
+        void endDirectory(int directory) {
+            directories.get(directory)[4] = directories.size() - directory;
+        }
+
+        void flushBlock() throws IOException {
+            if (block.size() == 0) {
+                return;
+            }
+            blocks.add(new long[] {position, deflateBlock()});
+        }
+
+        private int deflateBlock() throws IOException {
+            compressed.reset();
+            deflater.reset();
+            try (DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(compressed, deflater)) {
+                block.writeTo(deflaterOutput);
+            }
+            block.reset();
+            compressed.writeTo(fileOutput);
+            position += compressed.size();
+            return compressed.size();
+        }
+
+        /**
+         * Write the last block, the footer and the trailer
+         */
+        void finish() throws IOException {
+            flushBlock();
+
+            long footerOffset = position;
+            DataUtils.writeVarInt(dataOutput, blocks.size());
+            DataUtils.writeVarInt(dataOutput, directories.size());
+            for (long[] entry : blocks) {
+                dataOutput.writeLong(entry[0]);
+                dataOutput.writeInt((int) entry[1]);
+            }
+            for (int[] entry : directories) {
+                for (int value : entry) {
+                    DataUtils.writeVarInt(dataOutput, value);
+                }
+            }
+            deflateBlock();
+
+            fileOutput.writeLong(footerOffset);
+            fileOutput.writeInt(MAGIC_HEADER_V3);
+        }
+
+        void end() {
+            deflater.end();
+        }
+    }
 }
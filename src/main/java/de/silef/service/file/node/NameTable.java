@@ -0,0 +1,64 @@
+package de.silef.service.file.node;
+
+import java.util.Arrays;
+
+/**
+ * Bounded dictionary of node names. Equal names of different nodes share a single String
+ * instance, since names like index.html or numbered image names repeat in many directories.
+ *
+ * The table has a fixed number of slots, one name per slot by the hash of the name. A new name
+ * replaces the name of its slot, so the table never keeps more names than slots and names of
+ * removed nodes are dropped eventually. Frequent names stay in their slot and are shared.
+ *
+ * The table is thread safe: a slot holds a reference to an immutable String, so concurrent
+ * writers might only replace each other's names and miss a sharing.
+ */
+public class NameTable {
+
+    private static final int DEFAULT_SLOT_COUNT = 1 << 14;
+
+    private final String[] slots;
+
+    public NameTable() {
+        this(DEFAULT_SLOT_COUNT);
+    }
+
+    /**
+     * @param slotCount Maximum number of names. It is rounded up to a power of two
+     */
+    public NameTable(int slotCount) {
+        int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        slots = new String[size];
+    }
+
+    /**
+     * @return Shared instance of the given name
+     */
+    public String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        int hash = name.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+        String existing = slots[slot];
+        if (name.equals(existing)) {
+            return existing;
+        }
+        slots[slot] = name;
+        return name;
+    }
+
+    public int size() {
+        int size = 0;
+        for (String name : slots) {
+            if (name != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, null);
+    }
+}
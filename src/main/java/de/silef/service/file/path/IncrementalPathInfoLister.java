@@ -0,0 +1,158 @@
+package de.silef.service.file.path;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.node.IndexNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+
+/**
+ * Lists directories by the child names of a stored index if the directory is unchanged.
+ *
+ * Creating, removing or renaming a directory entry updates the modification time of the
+ * directory. If the current timestamps and file key of a directory match the stored
+ * BasicFileIndexExtension, the stored child names are still valid and reading the directory
+ * can be skipped. The children are still read by their attributes, since content changes of
+ * files and changes of nested directories do not change the timestamp of the directory.
+ *
+ * With reused file attributes the stored attributes of files and links of unchanged directories
+ * are taken as well, so they are not read at all. A sub tree without changed directories then
+ * costs one attribute read per directory only. Files which are modified in place do not change
+ * their directory, so they are detected only after their directory changes.
+ *
+ * On file systems with coarse timestamps a directory might change within the same tick it was
+ * indexed. Therefore only directories with a modification time before the trusted timestamp
+ * are listed from the stored index. All other directories are suspect and read from disk.
+ * Directories with an unknown modified time have an incomplete listing and are read from disk,
+ * too.
+ */
+public class IncrementalPathInfoLister extends PathInfoLister {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalPathInfoLister.class);
+
+    private Path base;
+
+    private IndexNode storedRoot;
+
+    private long trustedBefore;
+
+    private boolean reuseFileAttributes;
+
+    private AtomicLong reusedDirCount = new AtomicLong();
+    private AtomicLong listedDirCount = new AtomicLong();
+    private AtomicLong reusedFileCount = new AtomicLong();
+
+    /**
+     * @param pathFactory Factory to create path infos of directory entries
+     * @param base Base path of the stored index
+     * @param storedRoot Root node of the stored index
+     * @param trustedBefore Timestamp in milliseconds. Directories modified at or after this
+     *                      timestamp are read from disk
+     */
+    public IncrementalPathInfoLister(IndexNodePathFactory pathFactory, Path base, IndexNode storedRoot, long trustedBefore) {
+        this(pathFactory, base, storedRoot, trustedBefore, false);
+    }
+
+    /**
+     * @param reuseFileAttributes Take the stored attributes of files and links of unchanged
+     *                            directories instead of reading them
+     */
+    public IncrementalPathInfoLister(IndexNodePathFactory pathFactory, Path base, IndexNode storedRoot, long trustedBefore, boolean reuseFileAttributes) {
+        super(pathFactory);
+        this.base = base;
+        this.storedRoot = storedRoot;
+        this.trustedBefore = trustedBefore;
+        this.reuseFileAttributes = reuseFileAttributes;
+    }
+
+    @Override
+    public List<PathInfo> list(PathInfo dir) throws IOException {
+        IndexNode storedDir = findStoredNode(dir.getPath());
+        if (storedDir == null || !isUnchanged(storedDir, dir)) {
+            listedDirCount.incrementAndGet();
+            return super.list(dir);
+        }
+
+        List<PathInfo> pathInfos = new ArrayList<>();
+        for (IndexNode child : storedDir.getChildren()) {
+            Path path = dir.getPath().resolve(child.getName());
+            BasicFileIndexExtension storedFile = reuseFileAttributes ? getReusableFile(child) : null;
+            if (storedFile != null) {
+                pathInfos.add(new PathInfo(path, new StoredFileAttributes(child, storedFile)));
+                reusedFileCount.incrementAndGet();
+                continue;
+            }
+            try {
+                pathInfos.add(getPathFactory().createPathInfo(path));
+            } catch (RuntimeException e) {
+                LOG.debug("Stored directory entry {} is not readable. Read directory {}", child.getName(), dir.getPath(), e);
+                listedDirCount.incrementAndGet();
+                return super.list(dir);
+            }
+        }
+        pathInfos.sort(sortByModeAndName());
+        reusedDirCount.incrementAndGet();
+        return pathInfos;
+    }
+
+    public long getReusedDirCount() {
+        return reusedDirCount.get();
+    }
+
+    public long getListedDirCount() {
+        return listedDirCount.get();
+    }
+
+    /**
+     * @return Number of files and links whose stored attributes were taken
+     */
+    public long getReusedFileCount() {
+        return reusedFileCount.get();
+    }
+
+    private IndexNode findStoredNode(Path dir) {
+        if (dir.equals(base)) {
+            return storedRoot;
+        }
+        IndexNode node = storedRoot;
+        for (Path name : base.relativize(dir)) {
+            node = node.getChildByName(name.toString());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return Stored basic file extension of a file or link with known modified time or null
+     */
+    private static BasicFileIndexExtension getReusableFile(IndexNode child) {
+        IndexExtension extension = child.getExtensionByType(BASIC_FILE.value);
+        if (child.isDirectory() || !(extension instanceof BasicFileIndexExtension)) {
+            return null;
+        }
+        BasicFileIndexExtension basicFile = (BasicFileIndexExtension) extension;
+        return basicFile.hasModifiedTime() ? basicFile : null;
+    }
+
+    private boolean isUnchanged(IndexNode storedDir, PathInfo dir) {
+        BasicFileIndexExtension stored = (BasicFileIndexExtension) storedDir.getExtensionByType(BASIC_FILE.value);
+        if (!storedDir.isDirectory() || stored == null) {
+            return false;
+        }
+        BasicFileIndexExtension current = BasicFileIndexExtension.createFromAttributes(dir.getAttributes());
+        return stored.getModifiedTime() < trustedBefore &&
+                stored.getModifiedTime() == current.getModifiedTime() &&
+                stored.getCreationTime() == current.getCreationTime() &&
+                stored.getFileKey() == current.getFileKey();
+    }
+}
@@ -1,5 +1,7 @@
 package de.silef.service.file.path;
 
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
 import de.silef.service.file.node.IndexNode;
 import de.silef.service.file.tree.SuppressErrorPathVisitor;
 import de.silef.service.file.tree.Visitor;
@@ -7,18 +9,55 @@ import de.silef.service.file.tree.VisitorChain;
 import de.silef.service.file.tree.VisitorFilter;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
 
 /**
  * Created by sebastian on 25.09.16.
+ *
+ * Directories with entries which could not be indexed, like unreadable sub directories or
+ * entries excluded by the path filter, get an unknown modified time. Such an entry might become
+ * readable or valid without a change of the modified time of its directory, so incremental scans
+ * must not trust the stored listing.
  */
 public class IndexNodePathCreator {
 
     private IndexNodePathFactory pathFactory;
 
+    private PathInfoLister pathLister;
+
+    private int parallelism;
+
     public IndexNodePathCreator(IndexNodePathFactory pathFactory) {
-        this.pathFactory = pathFactory;
+        this(pathFactory, 1);
+    }
+
+    /**
+     * @param pathFactory Factory for path infos and index nodes
+     * @param parallelism Number of threads to scan the directory tree. With 1 the tree is walked
+     *                    sequentially, otherwise sub trees are scanned in a fork/join pool
+     */
+    public IndexNodePathCreator(IndexNodePathFactory pathFactory, int parallelism) {
+        this(new PathInfoLister(pathFactory), parallelism);
+    }
+
+    /**
+     * @param pathLister Lister of directory entries which also provides the path factory
+     * @param parallelism Number of threads to scan the directory tree
+     */
+    public IndexNodePathCreator(PathInfoLister pathLister, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be greater than 0");
+        }
+        this.pathFactory = pathLister.getPathFactory();
+        this.pathLister = pathLister;
+        this.parallelism = parallelism;
     }
 
     public IndexNode create(Path base) throws IOException {
@@ -32,18 +71,73 @@ public class IndexNodePathCreator {
             throw new IOException("Base path must not a symbolic link");
         }
         Visitor<PathInfo> resolveLinkVisitor = new ResolveLinkVisitorFilter(base);
-        Visitor<PathInfo> filterVisitor = new VisitorFilter<>(pathFilter::isValidPathInfo);
-        PathInfoVisitor nodeVisitor = new PathInfoVisitor(pathFactory);
-        VisitorChain<PathInfo> visitorChain = new VisitorChain<>(resolveLinkVisitor, filterVisitor, nodeVisitor);
-
-        Visitor<PathInfo> suppressErrorVisitor = new SuppressErrorPathVisitor<>(visitorChain);
+        Set<Path> excludedParents = ConcurrentHashMap.newKeySet();
+        Visitor<PathInfo> filterVisitor = new VisitorFilter<>(p -> {
+            if (pathFilter.isValidPathInfo(p)) {
+                return true;
+            }
+            excludedParents.add(p.getPath().getParent());
+            return false;
+        });
         PathInfo pathInfo = pathFactory.createPathInfo(base);
-        new PathWalker(pathFactory).walk(pathInfo, suppressErrorVisitor);
 
-        IndexNode root = nodeVisitor.getRoot();
+        IndexNode root;
+        if (parallelism > 1) {
+            VisitorChain<PathInfo> visitorChain = new VisitorChain<PathInfo>(resolveLinkVisitor, filterVisitor);
+            Visitor<PathInfo> suppressErrorVisitor = new SuppressErrorPathVisitor<>(visitorChain);
+            root = createParallel(pathInfo, suppressErrorVisitor);
+        } else {
+            PathInfoVisitor nodeVisitor = new PathInfoVisitor(pathFactory);
+            VisitorChain<PathInfo> visitorChain = new VisitorChain<PathInfo>(resolveLinkVisitor, filterVisitor, nodeVisitor);
+            Visitor<PathInfo> suppressErrorVisitor = new SuppressErrorPathVisitor<>(visitorChain);
+            new PathWalker(pathLister).walk(pathInfo, suppressErrorVisitor);
+            root = nodeVisitor.getRoot();
+        }
+
         if (root == null) {
             throw new IOException("Index root node is empty");
         }
-        return nodeVisitor.getRoot();
+        markIncomplete(root, base, excludedParents);
+        return root;
+    }
+
+    private IndexNode createParallel(PathInfo base, Visitor<PathInfo> filterVisitor) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new IndexNodePathTask(null, base, filterVisitor, pathLister));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void markIncomplete(IndexNode root, Path base, Set<Path> dirs) {
+        for (Path dir : dirs) {
+            if (dir == null || !dir.startsWith(base)) {
+                continue;
+            }
+            IndexNode node = root;
+            for (Path name : base.relativize(dir)) {
+                if (node == null) {
+                    break;
+                } else if (!name.toString().isEmpty()) {
+                    node = node.getChildByName(name.toString());
+                }
+            }
+            if (node != null && node.isDirectory()) {
+                markIncomplete(node);
+            }
+        }
+    }
+
+    /**
+     * Marks the listing of the directory as incomplete by an unknown modified time
+     */
+    static void markIncomplete(IndexNode dir) {
+        IndexExtension extension = dir.getExtensionByType(BASIC_FILE.value);
+        if (extension instanceof BasicFileIndexExtension && ((BasicFileIndexExtension) extension).hasModifiedTime()) {
+            dir.addExtension(((BasicFileIndexExtension) extension).withUnknownModifiedTime());
+        }
     }
 }
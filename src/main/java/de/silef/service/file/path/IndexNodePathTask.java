@@ -0,0 +1,114 @@
+package de.silef.service.file.path;
+
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.tree.Visitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import static de.silef.service.file.tree.Visitor.VisitorResult.CONTINUE;
+
+/**
+ * Fork/join task which creates the index node of a directory. Each sub directory is forked as
+ * its own task, so sibling sub trees are scanned in parallel.
+ *
+ * The task mirrors the sequential PathWalker with PathInfoVisitor: Children are sorted by name
+ * like all index node children, the filter visitor decides which paths are indexed and errors
+ * of node creation are suppressed. Directories with unreadable or failed entries are marked as
+ * incomplete. Errors of directory listing are propagated as UncheckedIOException.
+ */
+class IndexNodePathTask extends RecursiveTask<IndexNode> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexNodePathTask.class);
+
+    private final IndexNode parent;
+
+    private final PathInfo dir;
+
+    private final Visitor<PathInfo> filterVisitor;
+
+    private final PathInfoLister pathLister;
+
+    /**
+     * True if the directory was not filtered but could not be indexed. Read after join
+     */
+    private boolean failed = false;
+
+    IndexNodePathTask(IndexNode parent, PathInfo dir, Visitor<PathInfo> filterVisitor, PathInfoLister pathLister) {
+        this.parent = parent;
+        this.dir = dir;
+        this.filterVisitor = filterVisitor;
+        this.pathLister = pathLister;
+    }
+
+    @Override
+    protected IndexNode compute() {
+        try {
+            if (!dir.isDirectory() || filterVisitor.preVisitDirectory(dir) != CONTINUE) {
+                return null;
+            }
+            IndexNode node = Files.isReadable(dir.getPath()) ? createIndexNode(parent, dir) : null;
+            if (node == null) {
+                failed = true;
+                return null;
+            }
+
+            List<PathInfo> pathInfos = pathLister.list(dir);
+            List<Object> childSlots = new ArrayList<>(pathInfos.size());
+            for (PathInfo pathInfo : pathInfos) {
+                if (pathInfo.isDirectory()) {
+                    IndexNodePathTask task = new IndexNodePathTask(node, pathInfo, filterVisitor, pathLister);
+                    task.fork();
+                    childSlots.add(task);
+                } else if (isValidFile(pathInfo)) {
+                    IndexNode child = createIndexNode(node, pathInfo);
+                    if (child != null) {
+                        childSlots.add(child);
+                    } else {
+                        IndexNodePathCreator.markIncomplete(node);
+                    }
+                }
+            }
+
+            List<IndexNode> children = new ArrayList<>(childSlots.size());
+            for (Object childSlot : childSlots) {
+                if (childSlot instanceof IndexNodePathTask) {
+                    IndexNodePathTask task = (IndexNodePathTask) childSlot;
+                    IndexNode child = task.join();
+                    if (child != null) {
+                        children.add(child);
+                    } else if (task.failed) {
+                        IndexNodePathCreator.markIncomplete(node);
+                    }
+                } else {
+                    children.add((IndexNode) childSlot);
+                }
+            }
+            node.setChildren(children);
+            return node;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isValidFile(PathInfo pathInfo) throws IOException {
+        return filterVisitor.visitFile(pathInfo) == CONTINUE && (pathInfo.isFile() || pathInfo.isSymbolicLink());
+    }
+
+    private IndexNode createIndexNode(IndexNode parent, PathInfo pathInfo) {
+        try {
+            return pathLister.getPathFactory().createIndexNode(parent, pathInfo);
+        } catch (IOException e) {
+            LOG.info("Suppress error: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+}
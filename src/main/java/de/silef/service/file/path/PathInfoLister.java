@@ -0,0 +1,50 @@
+package de.silef.service.file.path;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lists the entries of a directory as path infos, sorted by directories first and then by
+ * name. The order defines the child order of created index nodes.
+ *
+ * The lister is stateless and can be shared between threads
+ */
+public class PathInfoLister {
+
+    private IndexNodePathFactory pathFactory;
+
+    public PathInfoLister(IndexNodePathFactory pathFactory) {
+        this.pathFactory = pathFactory;
+    }
+
+    public IndexNodePathFactory getPathFactory() {
+        return pathFactory;
+    }
+
+    public List<PathInfo> list(PathInfo dir) throws IOException {
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dir.getPath())) {
+            return StreamSupport.stream(directoryStream.spliterator(), false)
+                    .map(pathFactory::createPathInfo)
+                    .sorted(sortByModeAndName())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    protected static Comparator<PathInfo> sortByModeAndName() {
+        return (a, b) -> {
+            if (a.isDirectory() && !b.isDirectory()) {
+                return -1;
+            } else if (!a.isDirectory() && b.isDirectory()) {
+                return 1;
+            } else {
+                return a.getFileName().compareTo(b.getFileName());
+            }
+        };
+    }
+}
@@ -33,6 +33,9 @@ public class PathInfoVisitor extends Visitor<PathInfo> {
     @Override
     public VisitorResult preVisitDirectory(PathInfo pathInfo) throws IOException {
         if (!Files.isReadable(pathInfo.getPath())) {
+            if (!parentStack.isEmpty()) {
+                IndexNodePathCreator.markIncomplete(parentStack.peek());
+            }
             return VisitorResult.SKIP;
         }
 
@@ -42,7 +45,7 @@ public class PathInfoVisitor extends Visitor<PathInfo> {
             pathToChildren.put(pathInfo.getPath(), new ArrayList<>());
         } else {
             IndexNode parent = parentStack.peek();
-            node = nodeFactory.createIndexNode(parent, pathInfo);
+            node = createChildNode(parent, pathInfo);
             pathToChildren.get(pathInfo.getPath().getParent()).add(node);
         }
         if (pathInfo.isSymbolicLink()) {
@@ -58,12 +61,21 @@ public class PathInfoVisitor extends Visitor<PathInfo> {
     public VisitorResult visitFile(PathInfo file) throws IOException {
         if (file.isFile() || file.isSymbolicLink()) {
             IndexNode parent = parentStack.peek();
-            IndexNode child = nodeFactory.createIndexNode(parent, file);
+            IndexNode child = createChildNode(parent, file);
             pathToChildren.get(file.getPath().getParent()).add(child);
         }
         return super.visitFile(file);
     }
 
+    private IndexNode createChildNode(IndexNode parent, PathInfo pathInfo) throws IOException {
+        try {
+            return nodeFactory.createIndexNode(parent, pathInfo);
+        } catch (IOException e) {
+            IndexNodePathCreator.markIncomplete(parent);
+            throw e;
+        }
+    }
+
     @Override
     public VisitorResult postVisitDirectory(PathInfo dir) throws IOException {
         lastDirNode = parentStack.pop();
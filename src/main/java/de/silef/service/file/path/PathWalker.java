@@ -3,13 +3,7 @@ package de.silef.service.file.path;
 import de.silef.service.file.tree.Visitor;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static de.silef.service.file.tree.Visitor.VisitorResult.*;
 
@@ -18,10 +12,14 @@ import static de.silef.service.file.tree.Visitor.VisitorResult.*;
  */
 public class PathWalker {
 
-    private IndexNodePathFactory pathFactory;
+    private PathInfoLister pathLister;
 
     public PathWalker(IndexNodePathFactory pathFactory) {
-        this.pathFactory = pathFactory;
+        this(new PathInfoLister(pathFactory));
+    }
+
+    public PathWalker(PathInfoLister pathLister) {
+        this.pathLister = pathLister;
     }
 
     public Visitor.VisitorResult walk(PathInfo base, Visitor<? super PathInfo> visitor) throws IOException {
@@ -33,21 +31,15 @@ public class PathWalker {
         if (result != CONTINUE) {
             return result;
         }
-        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(base.getPath())) {
-            List<PathInfo> pathInfos = StreamSupport.stream(directoryStream.spliterator(), false)
-                    .map(pathFactory::createPathInfo)
-                    .sorted(sortByModeAndName())
-                    .collect(Collectors.toList());
-
-            for (PathInfo pathInfo : pathInfos) {
-                if (pathInfo.isDirectory()) {
-                    result = walk(pathInfo, visitor);
-                } else {
-                    result = visitor.visitFile(pathInfo);
-                }
-                if (result == SKIP_SIBLINGS || result == TERMINATE) {
-                    break;
-                }
+        List<PathInfo> pathInfos = pathLister.list(base);
+        for (PathInfo pathInfo : pathInfos) {
+            if (pathInfo.isDirectory()) {
+                result = walk(pathInfo, visitor);
+            } else {
+                result = visitor.visitFile(pathInfo);
+            }
+            if (result == SKIP_SIBLINGS || result == TERMINATE) {
+                break;
             }
         }
         if (result == TERMINATE) {
@@ -56,16 +48,4 @@ public class PathWalker {
         return visitor.postVisitDirectory(base);
     }
 
-    private static Comparator<PathInfo> sortByModeAndName() {
-        return (a, b) -> {
-            if (a.isDirectory() && !b.isDirectory()) {
-                return -1;
-            } else if (!a.isDirectory() && b.isDirectory()) {
-                return 1;
-            } else {
-                return a.getFileName().compareTo(b.getFileName());
-            }
-        };
-    }
-
 }
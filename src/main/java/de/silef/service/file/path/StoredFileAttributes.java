@@ -0,0 +1,72 @@
+package de.silef.service.file.path;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.node.IndexNode;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * File attributes of a node of a stored index. Index nodes which are created from these
+ * attributes have the same basic file extension as the stored node
+ */
+class StoredFileAttributes implements BasicFileAttributes {
+
+    private final IndexNode node;
+
+    private final BasicFileIndexExtension basicFile;
+
+    StoredFileAttributes(IndexNode node, BasicFileIndexExtension basicFile) {
+        this.node = node;
+        this.basicFile = basicFile;
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return FileTime.fromMillis(basicFile.getModifiedTime());
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return lastModifiedTime();
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return FileTime.fromMillis(basicFile.getCreationTime());
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return node.isFile() && !node.isLink();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return node.isDirectory();
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return node.isLink();
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return basicFile.getSize();
+    }
+
+    /**
+     * @return Key with the stored inode in the format of Unix file keys without device, since the
+     * device is not stored. See FileKeyUtil
+     */
+    @Override
+    public Object fileKey() {
+        return basicFile.getFileKey() != 0 ? "(ino=" + basicFile.getFileKey() + ")" : null;
+    }
+}
@@ -0,0 +1,59 @@
+package de.silef.service.file.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the shared throughput of multiple threads to a maximum of bytes per second.
+ *
+ * Each acquisition reserves the next free time slot for the given bytes and waits until the
+ * slot starts. The limiter does not accumulate unused bandwidth of idle periods.
+ */
+public class BandwidthLimiter {
+
+    private final long bytesPerSecond;
+
+    private long nextFreeNanos;
+
+    /**
+     * @param bytesPerSecond Maximum bytes per second. Use 0 for unlimited bandwidth
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bandwidth must not be negative");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Wait until the bytes might be read. An interrupt stops waiting and keeps the interrupt
+     * flag of the thread
+     *
+     * @param bytes Bytes to read
+     */
+    public void acquire(long bytes) {
+        if (bytesPerSecond == 0 || bytes <= 0) {
+            return;
+        }
+        long waitNanos = reserve(bytes);
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized long reserve(long bytes) {
+        long now = System.nanoTime();
+        long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + (long) (bytes * 1e9 / bytesPerSecond);
+        return start - now;
+    }
+}
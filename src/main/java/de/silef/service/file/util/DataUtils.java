@@ -1,5 +1,9 @@
 package de.silef.service.file.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Created by sebastian on 23.09.16.
  */
@@ -7,15 +11,74 @@ public class DataUtils {
 
     public static byte[] toBytes(long size) {
         byte[] bytes = new byte[8];
-        bytes[0] = (byte) ((size >> 56) & 0xff);
-        bytes[1] = (byte) ((size >> 48) & 0xff);
-        bytes[2] = (byte) ((size >> 40) & 0xff);
-        bytes[3] = (byte) ((size >> 32) & 0xff);
-        bytes[4] = (byte) ((size >> 24) & 0xff);
-        bytes[5] = (byte) ((size >> 16) & 0xff);
-        bytes[6] = (byte) ((size >> 8) & 0xff);
-        bytes[7] = (byte) ((size >> 0) & 0xff);
+        putLong(bytes, 0, size);
         return bytes;
     }
 
+    public static long toLong(byte[] bytes) {
+        return getLong(bytes, 0);
+    }
+
+    /**
+     * Read a big endian long like DataInput.readLong() does
+     */
+    public static long getLong(byte[] bytes, int offset) {
+        return ((long) getInt(bytes, offset) << 32) | (getInt(bytes, offset + 4) & 0xffffffffL);
+    }
+
+    /**
+     * Read a big endian int like DataInput.readInt() does
+     */
+    public static int getInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) |
+                ((bytes[offset + 1] & 0xff) << 16) |
+                ((bytes[offset + 2] & 0xff) << 8) |
+                (bytes[offset + 3] & 0xff);
+    }
+
+    /**
+     * Write a big endian long like DataOutput.writeLong() does
+     */
+    public static void putLong(byte[] bytes, int offset, long value) {
+        putInt(bytes, offset, (int) (value >>> 32));
+        putInt(bytes, offset + 4, (int) value);
+    }
+
+    /**
+     * Write a big endian int like DataOutput.writeInt() does
+     */
+    public static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Write a non negative int with 7 bits per byte, least significant group first. The highest
+     * bit of each byte marks a following byte. Values below 128 use a single byte
+     */
+    public static void writeVarInt(DataOutput output, int value) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value is not supported: " + value);
+        }
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readByte() & 0xff;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable length int");
+    }
+
 }
@@ -0,0 +1,182 @@
+package de.silef.service.file.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Content defined chunker by the FastCDC algorithm with normalized chunking. Chunk boundaries
+ * depend on the content only, so an insertion or modification changes only the surrounding
+ * chunks. Each chunk is hashed by xxHash64.
+ *
+ * The average chunk size is a power of two and adapts to the file size, so a file has at most
+ * MAX_CHUNK_COUNT chunks. Minimum chunk size is a quarter and maximum chunk size is eight times
+ * the average chunk size.
+ *
+ * The chunker consumes the content in the same read pass as the content hash via
+ * {@link HashUtil#getFileHash(java.nio.file.Path, long, java.security.MessageDigest, FastCdcChunker)}
+ */
+public class FastCdcChunker {
+
+    public static final int MIN_AVERAGE_SIZE_BITS = 13; // 8 KB
+
+    public static final int MAX_AVERAGE_SIZE_BITS = 27; // 128 MB
+
+    /**
+     * Upper bound of chunks per file, given by file size divided by minimum chunk size
+     */
+    public static final int MAX_CHUNK_COUNT = 2049;
+
+    private static final int TARGET_CHUNK_COUNT = 512;
+
+    private static final int NORMALIZATION_BITS = 2;
+
+    private static final long[] GEAR = createGearTable();
+
+    private final int averageSizeBits;
+
+    private final int minSize;
+
+    private final int averageSize;
+
+    private final int maxSize;
+
+    private final long smallMask;
+
+    private final long largeMask;
+
+    private final XxHash64Digest digest = new XxHash64Digest();
+
+    private long fingerprint;
+
+    private int chunkLength;
+
+    private int chunkCount;
+
+    private int[] chunkLengths = new int[16];
+
+    private long[] chunkHashes = new long[16];
+
+    /**
+     * @param averageSizeBits Average chunk size as power of two
+     */
+    public FastCdcChunker(int averageSizeBits) {
+        if (averageSizeBits < NORMALIZATION_BITS + 2 || averageSizeBits > MAX_AVERAGE_SIZE_BITS) {
+            throw new IllegalArgumentException("Invalid average size bits: " + averageSizeBits);
+        }
+        this.averageSizeBits = averageSizeBits;
+        this.averageSize = 1 << averageSizeBits;
+        this.minSize = averageSize >> 2;
+        this.maxSize = averageSize << 3;
+        this.smallMask = createMask(averageSizeBits + NORMALIZATION_BITS);
+        this.largeMask = createMask(averageSizeBits - NORMALIZATION_BITS);
+    }
+
+    /**
+     * @param size Expected content size to choose the average chunk size
+     */
+    public static FastCdcChunker createForSize(long size) {
+        return new FastCdcChunker(getAverageSizeBits(size));
+    }
+
+    /**
+     * @return Average chunk size bits for given content size. Might exceed
+     * MAX_AVERAGE_SIZE_BITS for very large files which can not be chunked
+     */
+    public static int getAverageSizeBits(long size) {
+        int bits = MIN_AVERAGE_SIZE_BITS;
+        while ((1L << bits) * TARGET_CHUNK_COUNT < size) {
+            bits++;
+        }
+        return bits;
+    }
+
+    /**
+     * Consume remaining bytes of given buffer. The position of the buffer is not changed
+     */
+    public void update(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        int chunkStart = start;
+        for (int i = start; i < end; i++) {
+            chunkLength++;
+            if (chunkLength <= minSize) {
+                continue;
+            }
+            fingerprint = (fingerprint << 1) + GEAR[buffer.get(i) & 0xFF];
+            long mask = chunkLength < averageSize ? smallMask : largeMask;
+            if ((fingerprint & mask) == 0 || chunkLength >= maxSize) {
+                updateDigest(buffer, chunkStart, i + 1);
+                addChunk();
+                chunkStart = i + 1;
+            }
+        }
+        updateDigest(buffer, chunkStart, end);
+    }
+
+    public void update(byte[] bytes, int offset, int len) {
+        update(ByteBuffer.wrap(bytes, offset, len));
+    }
+
+    /**
+     * Completes the last chunk
+     */
+    public void finish() {
+        if (chunkLength > 0) {
+            addChunk();
+        }
+    }
+
+    public int getAverageSizeBits() {
+        return averageSizeBits;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int[] getChunkLengths() {
+        return Arrays.copyOf(chunkLengths, chunkCount);
+    }
+
+    public long[] getChunkHashes() {
+        return Arrays.copyOf(chunkHashes, chunkCount);
+    }
+
+    private void updateDigest(ByteBuffer buffer, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to).position(from);
+        digest.update(slice);
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunkLengths.length) {
+            chunkLengths = Arrays.copyOf(chunkLengths, chunkCount * 2);
+            chunkHashes = Arrays.copyOf(chunkHashes, chunkCount * 2);
+        }
+        chunkLengths[chunkCount] = chunkLength;
+        chunkHashes[chunkCount] = DataUtils.toLong(digest.digest());
+        chunkCount++;
+        chunkLength = 0;
+        fingerprint = 0;
+    }
+
+    private static long createMask(int bits) {
+        return -1L << (64 - bits);
+    }
+
+    private static long[] createGearTable() {
+        long[] gear = new long[256];
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < gear.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            gear[i] = z ^ (z >>> 31);
+        }
+        return gear;
+    }
+}
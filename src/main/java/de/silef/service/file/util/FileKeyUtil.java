@@ -0,0 +1,42 @@
+package de.silef.service.file.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses file keys of BasicFileAttributes. On Unix systems the file key has the format
+ * (dev=&lt;hex&gt;,ino=&lt;decimal&gt;). The device is optional, since stored attributes of an
+ * index have no device.
+ */
+public class FileKeyUtil {
+
+    public static final long UNKNOWN_INODE = 0;
+
+    public static final long UNKNOWN_DEVICE = -1;
+
+    private static final Pattern FILE_KEY_PATTERN = Pattern.compile("\\((?:dev=([0-9a-fA-F]+),)?ino=([0-9]+)\\)");
+
+    /**
+     * @return Inode of the file key or UNKNOWN_INODE
+     */
+    public static long getInode(Object fileKey) {
+        Matcher matcher = match(fileKey);
+        return matcher != null ? Long.parseUnsignedLong(matcher.group(2)) : UNKNOWN_INODE;
+    }
+
+    /**
+     * @return Device of the file key or UNKNOWN_DEVICE
+     */
+    public static long getDevice(Object fileKey) {
+        Matcher matcher = match(fileKey);
+        return matcher != null && matcher.group(1) != null ? Long.parseUnsignedLong(matcher.group(1), 16) : UNKNOWN_DEVICE;
+    }
+
+    private static Matcher match(Object fileKey) {
+        if (fileKey == null) {
+            return null;
+        }
+        Matcher matcher = FILE_KEY_PATTERN.matcher(fileKey.toString());
+        return matcher.matches() ? matcher : null;
+    }
+}
@@ -1,7 +1,11 @@
 package de.silef.service.file.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -12,6 +16,18 @@ public class HashUtil {
 
     private static final int BUFFER_SIZE = 1 << 14;
 
+    /**
+     * Files of this size or larger are hashed via memory mapped windows. Smaller files are read
+     * into a pooled direct buffer
+     */
+    public static final long MAPPED_HASH_THRESHOLD = 1 << 26; // 64MB
+
+    private static final long MAPPED_WINDOW_SIZE = 1 << 28; // 256MB
+
+    private static final int DIRECT_BUFFER_SIZE = 1 << 16;
+
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+
     public static byte[] getHash(Path path) throws IOException {
         try (InputStream input = new FileInputStream(path.toFile())) {
             return getHash(input);
@@ -29,9 +45,106 @@ public class HashUtil {
     }
 
     public static byte[] getHash(InputStream inputStream) throws IOException {
+        return createHash(inputStream, createDigest());
+    }
+
+    public static byte[] getHash(byte[] bytes, MessageDigest digest) {
+        digest.update(bytes);
+        return digest.digest();
+    }
+
+    /**
+     * Create the hash of the file size as 8 bytes followed by the file content. The file is read
+     * through its channel without copying it through a heap buffer
+     *
+     * @param file File to hash
+     * @param size File size for the hash prefix
+     * @return Hash
+     * @throws IOException on read errors
+     */
+    public static byte[] getFileHash(Path file, long size) throws IOException {
+        return getFileHash(file, size, MAPPED_HASH_THRESHOLD);
+    }
+
+    /**
+     * @param mappedThreshold Minimum file size to use memory mapped reads
+     * @see #getFileHash(Path, long)
+     */
+    public static byte[] getFileHash(Path file, long size, long mappedThreshold) throws IOException {
+        return getFileHash(file, size, mappedThreshold, createDigest(), null);
+    }
+
+    /**
+     * @param digest Digest of the hash algorithm
+     * @see #getFileHash(Path, long)
+     */
+    public static byte[] getFileHash(Path file, long size, MessageDigest digest) throws IOException {
+        return getFileHash(file, size, MAPPED_HASH_THRESHOLD, digest, null);
+    }
+
+    /**
+     * Hash the file and split its content into chunks in the same read pass. The chunker is
+     * finished after the file is read. The size prefix is not part of the chunks
+     *
+     * @param chunker Content defined chunker
+     * @see #getFileHash(Path, long, MessageDigest)
+     */
+    public static byte[] getFileHash(Path file, long size, MessageDigest digest, FastCdcChunker chunker) throws IOException {
+        byte[] hash = getFileHash(file, size, MAPPED_HASH_THRESHOLD, digest, chunker);
+        chunker.finish();
+        return hash;
+    }
+
+    private static byte[] getFileHash(Path file, long size, long mappedThreshold, MessageDigest digest, FastCdcChunker chunker) throws IOException {
+        digest.update(DataUtils.toBytes(size));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() >= mappedThreshold) {
+                updateMapped(channel, digest, chunker);
+            } else {
+                updateBuffered(channel, digest, chunker);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void updateMapped(FileChannel channel, MessageDigest digest, FastCdcChunker chunker) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        try {
+            while (position < size) {
+                long windowSize = Math.min(MAPPED_WINDOW_SIZE, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                update(window, digest, chunker);
+                position += windowSize;
+            }
+        } catch (InternalError e) {
+            // Access of a mapped region which was truncated meanwhile
+            throw new IOException("File was truncated while hashing", e);
+        }
+        channel.position(position);
+        updateBuffered(channel, digest, chunker);
+    }
+
+    private static void updateBuffered(FileChannel channel, MessageDigest digest, FastCdcChunker chunker) throws IOException {
+        ByteBuffer buffer = DIRECT_BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            update(buffer, digest, chunker);
+            buffer.clear();
+        }
+    }
+
+    private static void update(ByteBuffer buffer, MessageDigest digest, FastCdcChunker chunker) {
+        if (chunker != null) {
+            chunker.update(buffer);
+        }
+        digest.update(buffer);
+    }
+
+    private static MessageDigest createDigest() throws IOException {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA1");
-            return createHash(inputStream, digest);
+            return MessageDigest.getInstance("SHA1");
         } catch (NoSuchAlgorithmException e) {
             throw new IOException("Could not create hash due digest initialization error", e);
         }
@@ -0,0 +1,129 @@
+package de.silef.service.file.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Growable byte storage in direct memory outside of the Java heap. The storage is split into
+ * chunks of 64MB, so it might exceed 2GB. Ints and longs must be stored at positions aligned to
+ * their size. Byte arrays might cross chunk boundaries.
+ *
+ * Small buffers start with 4KB and double their capacity up to the chunk size. The direct
+ * memory is released when the buffer is garbage collected. Large buffers require the JVM option
+ * -XX:MaxDirectMemorySize.
+ */
+public class OffHeapBuffer {
+
+    private static final int CHUNK_SHIFT = 26;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int MIN_CAPACITY = 4096;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    private long capacity = 0;
+
+    private long size = 0;
+
+    /**
+     * @return Number of used bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Number of allocated bytes in direct memory
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Grow the buffer to contain at least given bytes. New bytes are 0
+     */
+    public void ensureSize(long newSize) {
+        if (newSize > capacity) {
+            grow(newSize);
+        }
+        if (newSize > size) {
+            size = newSize;
+        }
+    }
+
+    /**
+     * Append bytes at the end of the buffer
+     *
+     * @return Position of the first appended byte
+     */
+    public long append(byte[] bytes, int offset, int length) {
+        long position = size;
+        ensureSize(position + length);
+        put(position, bytes, offset, length);
+        return position;
+    }
+
+    public byte getByte(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].get((int) (position & CHUNK_MASK));
+    }
+
+    public void putByte(long position, byte value) {
+        chunks[(int) (position >>> CHUNK_SHIFT)].put((int) (position & CHUNK_MASK), value);
+    }
+
+    public int getInt(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    public void putInt(long position, int value) {
+        chunks[(int) (position >>> CHUNK_SHIFT)].putInt((int) (position & CHUNK_MASK), value);
+    }
+
+    public long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    public void putLong(long position, long value) {
+        chunks[(int) (position >>> CHUNK_SHIFT)].putLong((int) (position & CHUNK_MASK), value);
+    }
+
+    public void get(long position, byte[] bytes, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            bytes[offset + i] = getByte(position + i);
+        }
+    }
+
+    public void put(long position, byte[] bytes, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            putByte(position + i, bytes[offset + i]);
+        }
+    }
+
+    private void grow(long minCapacity) {
+        while (capacity < minCapacity) {
+            int last = chunks.length - 1;
+            if (last >= 0 && chunks[last].capacity() < CHUNK_SIZE) {
+                ByteBuffer old = chunks[last];
+                ByteBuffer chunk = allocate(old.capacity() * 2);
+                ByteBuffer source = old.duplicate();
+                source.clear();
+                chunk.put(source);
+                chunk.clear();
+                chunks[last] = chunk;
+                capacity += chunk.capacity() - old.capacity();
+            } else {
+                chunks = Arrays.copyOf(chunks, chunks.length + 1);
+                chunks[last + 1] = allocate(MIN_CAPACITY);
+                capacity += MIN_CAPACITY;
+            }
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+}
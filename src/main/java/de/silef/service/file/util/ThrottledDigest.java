@@ -0,0 +1,67 @@
+package de.silef.service.file.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * MessageDigest which limits the digested bytes per second by a bandwidth limiter. Large
+ * updates are split into slices, so memory mapped files are read evenly while they are digested.
+ */
+public class ThrottledDigest extends MessageDigest {
+
+    private static final int SLICE_SIZE = 1 << 20;
+
+    private final MessageDigest digest;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    public ThrottledDigest(MessageDigest digest, BandwidthLimiter bandwidthLimiter) {
+        super(digest.getAlgorithm());
+        this.digest = digest;
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return digest.getDigestLength();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        bandwidthLimiter.acquire(1);
+        digest.update(input);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        int end = offset + len;
+        while (offset < end) {
+            int sliceLength = Math.min(SLICE_SIZE, end - offset);
+            bandwidthLimiter.acquire(sliceLength);
+            digest.update(input, offset, sliceLength);
+            offset += sliceLength;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        int limit = input.limit();
+        while (input.position() < limit) {
+            int sliceLength = Math.min(SLICE_SIZE, limit - input.position());
+            bandwidthLimiter.acquire(sliceLength);
+            input.limit(input.position() + sliceLength);
+            digest.update(input);
+        }
+        input.limit(limit);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        return digest.digest();
+    }
+
+    @Override
+    protected void engineReset() {
+        digest.reset();
+    }
+}
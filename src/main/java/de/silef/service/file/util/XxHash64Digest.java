@@ -0,0 +1,205 @@
+package de.silef.service.file.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Pure Java implementation of the non cryptographic xxHash64 hash with seed 0 as
+ * MessageDigest. The digest is the 64 bit hash value in big endian byte order (canonical
+ * representation of xxHash).
+ *
+ * The hash is much faster than cryptographic hashes and suitable for change detection and to
+ * find duplicate candidates, but not for integrity against intentional modifications.
+ */
+public class XxHash64Digest extends MessageDigest implements Cloneable {
+
+    public static final String ALGORITHM = "XXH64";
+
+    private static final int DIGEST_LENGTH = 8;
+
+    private static final int STRIPE_LENGTH = 32;
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    private long totalLength;
+
+    private byte[] buffer = new byte[STRIPE_LENGTH];
+    private int bufferLength;
+
+    public XxHash64Digest() {
+        super(ALGORITHM);
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        buffer[bufferLength++] = input;
+        totalLength++;
+        if (bufferLength == STRIPE_LENGTH) {
+            processStripe(buffer, 0);
+            bufferLength = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        totalLength += len;
+        int end = offset + len;
+        if (bufferLength > 0) {
+            int fill = Math.min(STRIPE_LENGTH - bufferLength, len);
+            System.arraycopy(input, offset, buffer, bufferLength, fill);
+            bufferLength += fill;
+            offset += fill;
+            if (bufferLength < STRIPE_LENGTH) {
+                return;
+            }
+            processStripe(buffer, 0);
+            bufferLength = 0;
+        }
+        while (offset + STRIPE_LENGTH <= end) {
+            processStripe(input, offset);
+            offset += STRIPE_LENGTH;
+        }
+        if (offset < end) {
+            bufferLength = end - offset;
+            System.arraycopy(input, offset, buffer, 0, bufferLength);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        if (input.hasArray()) {
+            int len = input.remaining();
+            engineUpdate(input.array(), input.arrayOffset() + input.position(), len);
+            input.position(input.position() + len);
+            return;
+        }
+        while (bufferLength > 0 && input.hasRemaining()) {
+            engineUpdate(input.get());
+        }
+        ByteOrder order = input.order();
+        input.order(ByteOrder.LITTLE_ENDIAN);
+        while (input.remaining() >= STRIPE_LENGTH) {
+            int position = input.position();
+            v1 = round(v1, input.getLong(position));
+            v2 = round(v2, input.getLong(position + 8));
+            v3 = round(v3, input.getLong(position + 16));
+            v4 = round(v4, input.getLong(position + 24));
+            input.position(position + STRIPE_LENGTH);
+            totalLength += STRIPE_LENGTH;
+        }
+        input.order(order);
+        while (input.hasRemaining()) {
+            engineUpdate(input.get());
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long hash;
+        if (totalLength >= STRIPE_LENGTH) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = v3 + PRIME5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        while (offset + 8 <= bufferLength) {
+            hash ^= round(0, getLong(buffer, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            offset += 8;
+        }
+        if (offset + 4 <= bufferLength) {
+            hash ^= (getInt(buffer, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        while (offset < bufferLength) {
+            hash ^= (buffer[offset] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            offset++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        engineReset();
+        return DataUtils.toBytes(hash);
+    }
+
+    @Override
+    protected void engineReset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        totalLength = 0;
+        bufferLength = 0;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        XxHash64Digest clone = (XxHash64Digest) super.clone();
+        clone.buffer = buffer.clone();
+        return clone;
+    }
+
+    private void processStripe(byte[] input, int offset) {
+        v1 = round(v1, getLong(input, offset));
+        v2 = round(v2, getLong(input, offset + 8));
+        v3 = round(v3, getLong(input, offset + 16));
+        v4 = round(v4, getLong(input, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFFL) |
+                (bytes[offset + 1] & 0xFFL) << 8 |
+                (bytes[offset + 2] & 0xFFL) << 16 |
+                (bytes[offset + 3] & 0xFFL) << 24 |
+                (bytes[offset + 4] & 0xFFL) << 32 |
+                (bytes[offset + 5] & 0xFFL) << 40 |
+                (bytes[offset + 6] & 0xFFL) << 48 |
+                (bytes[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) |
+                (bytes[offset + 1] & 0xFF) << 8 |
+                (bytes[offset + 2] & 0xFF) << 16 |
+                (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,47 @@
+package de.silef.service.file;
+
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.hash.IntegrityVerifier;
+import de.silef.service.file.hash.VerifyResult;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FileIndexCliTest extends BasePathTest {
+
+    @Test
+    public void updateShouldStoreValidRootHashAfterHashingDeduplicationAndVerification() throws IOException {
+        Path base = Files.createDirectories(tmp.resolve("data"));
+        Path indexFile = tmp.resolve("index").resolve("data.index");
+        Files.createDirectories(base.resolve("sub"));
+        Files.write(base.resolve("a.txt"), "a".getBytes());
+        Files.write(base.resolve("sub/b.txt"), "b".getBytes());
+        Files.write(base.resolve("large1.bin"), new byte[100]);
+        Files.write(base.resolve("large2.bin"), new byte[100]);
+        run("-c", "-d", base.toString(), "-i", indexFile.toString(), "--hash-cache-size", "0");
+
+
+        run("-u", "--integrity", "--integrity-max-size", "10", "--verify", "--deduplicate", "-d", base.toString(), "-i", indexFile.toString(), "--hash-cache-size", "0");
+
+
+        FileIndex index = FileIndex.readFromPath(base, indexFile, indexStrategy);
+        VerifyResult result = new IntegrityVerifier(1, ContentHashAlgorithm.SHA1).verify(index);
+        assertThat(index.find("large1.bin").hasExtensionType(FILE_HASH.value), is(true));
+        assertThat(index.getRoot().hasExtensionType(UNIVERSAL_HASH.value), is(true));
+        assertThat(result.getDirectoryMismatches().isEmpty(), is(true));
+        assertThat(result.getDirectoryCount(), is(2L));
+    }
+
+    private void run(String... args) {
+        FileIndexCli.main(args);
+    }
+}
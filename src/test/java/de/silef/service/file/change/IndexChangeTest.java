@@ -1,11 +1,15 @@
 package de.silef.service.file.change;
 
+import de.silef.service.file.extension.ChunkHashIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
 import de.silef.service.file.extension.FileContentHashIndexExtension;
 import de.silef.service.file.extension.IndexExtension;
 import de.silef.service.file.index.FileIndex;
 import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeType;
 import de.silef.service.file.test.BasePathTest;
 import de.silef.service.file.test.PathUtils;
+import de.silef.service.file.util.FastCdcChunker;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -14,6 +18,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -140,6 +145,39 @@ public class IndexChangeTest extends BasePathTest {
         assertThat(old.getRoot().getChildByName("new.txt"), is(not(nullValue())));
     }
 
+    @Test
+    public void applyCopyOnWriteShouldCreateNewVersion() throws IOException {
+        PathUtils.copy(PathUtils.getResourcePath("index/foo"), tmp);
+        Files.createDirectories(tmp.resolve("dir/sub"));
+        Files.write(tmp.resolve("dir/sub/a.txt"), "a".getBytes());
+        Files.write(tmp.resolve("dir/b.txt"), "b".getBytes());
+        FileIndex old = FileIndex.create(tmp, indexStrategy);
+        old.setCopyOnWrite(true);
+        IndexNode oldRoot = old.getRoot();
+        long oldSize = old.getTotalFileSize();
+        Files.write(tmp.resolve("dir/sub/a.txt"), "changed".getBytes());
+        Files.write(tmp.resolve("dir/sub/new.txt"), "new".getBytes());
+        Files.delete(tmp.resolve("dir/b.txt"));
+        FileIndex update = FileIndex.create(tmp, indexStrategy);
+
+
+        old.applyChanges(old.getChanges(update, indexStrategy));
+
+
+        IndexNode newRoot = old.getRoot();
+        assertThat(newRoot == oldRoot, is(false));
+        FileIndex current = FileIndex.create(tmp, indexStrategy);
+        assertThat(current.getChanges(old, indexStrategy).hasChanges(), is(false));
+        assertThat(old.getTotalFileSize(), is(current.getTotalFileSize()));
+        assertThat(oldRoot.getAggregate().getTotalSize(), is(oldSize));
+        assertThat(oldRoot.getChildByName("dir").getChildByName("b.txt"), is(not(nullValue())));
+        assertThat(oldRoot.getChildByName("dir").getChildByName("sub").getChildByName("new.txt"), is(nullValue()));
+        assertThat(newRoot.getChildByName("bar") == oldRoot.getChildByName("bar"), is(true));
+        assertThat(newRoot.getChildByName("doe.txt") == oldRoot.getChildByName("doe.txt"), is(true));
+        assertThat(newRoot.getChildByName("dir") == oldRoot.getChildByName("dir"), is(false));
+        assertThat(old.getDirtyTracker().isDirty(newRoot.getChildByName("dir").getChildByName("sub")), is(true));
+    }
+
     @Test
     public void applyModified() throws IOException {
         Files.write(tmp.resolve("foo.txt"), "content".getBytes());
@@ -200,6 +238,35 @@ public class IndexChangeTest extends BasePathTest {
         assertThat(update.getRoot().getChildByName("foo.txt"), is(nullValue()));
     }
 
+    @Test
+    public void applyMovedShouldMarkDirtyDirectories() throws IOException {
+        Files.createDirectories(tmp.resolve("a"));
+        Files.createDirectories(tmp.resolve("b"));
+        Files.createDirectories(tmp.resolve("c"));
+        Files.write(tmp.resolve("a/foo.txt"), "content".getBytes());
+        FileIndex old = FileIndex.create(tmp, indexStrategy);
+        hashContent(old);
+
+        Files.move(tmp.resolve("a/foo.txt"), tmp.resolve("b/foo.txt"));
+        FileIndex update = FileIndex.create(tmp, indexStrategy);
+        hashContent(update);
+
+        IndexChange changes = old.getChanges(update, indexStrategy);
+        changes.detectMoves();
+
+
+        old.applyChanges(changes);
+
+
+        IndexNode root = old.getRoot();
+        assertThat(root.getChildByName("a").getChildByName("foo.txt"), is(nullValue()));
+        assertThat(root.getChildByName("b").getChildByName("foo.txt"), is(not(nullValue())));
+        assertThat(old.getDirtyTracker().isDirty(root.getChildByName("a")), is(true));
+        assertThat(old.getDirtyTracker().isDirty(root.getChildByName("b")), is(true));
+        assertThat(old.getDirtyTracker().isDirty(root.getChildByName("c")), is(false));
+        assertThat(old.getDirtyTracker().isDirty(root), is(true));
+    }
+
     @Test
     public void expandChanges() throws IOException {
         Files.createDirectories(tmp.resolve("bar"));
@@ -240,6 +307,27 @@ public class IndexChangeTest extends BasePathTest {
         assertThat(changes.getRemoved().size(), is(0));
     }
 
+    @Test
+    public void detectMovesShouldUseAlgorithmOfNodes() throws IOException {
+        Files.write(tmp.resolve("foo.txt"), "content".getBytes());
+        FileIndex old = FileIndex.create(tmp, indexStrategy);
+        hashContent(old, ContentHashAlgorithm.SHA256);
+
+        Files.move(tmp.resolve("foo.txt"), tmp.resolve("bar.txt"));
+        FileIndex update = FileIndex.create(tmp, indexStrategy);
+        hashContent(update, ContentHashAlgorithm.SHA256);
+
+        IndexChange changes = old.getChanges(update, indexStrategy);
+
+
+        changes.detectMoves();
+
+
+        assertThat(changes.getCreated().size(), is(0));
+        assertThat(changes.getMoved().size(), is(1));
+        assertThat(changes.getRemoved().size(), is(0));
+    }
+
     @Test
     public void detectMovesWithBestMatch() throws IOException {
         Files.write(tmp.resolve("foo.txt"), "content".getBytes());
@@ -265,13 +353,17 @@ public class IndexChangeTest extends BasePathTest {
     }
 
     private void hashContent(FileIndex index) {
+        hashContent(index, ContentHashAlgorithm.SHA1);
+    }
+
+    private void hashContent(FileIndex index, ContentHashAlgorithm algorithm) {
         index.getRoot()
                 .stream()
                 .filter(IndexNode::isFile)
                 .forEach(n -> {
                     Path file = index.getBase().resolve(n.getRelativePath());
                     try {
-                        n.addExtension(FileContentHashIndexExtension.create(file));
+                        n.addExtension(FileContentHashIndexExtension.create(file, algorithm));
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -287,4 +379,30 @@ public class IndexChangeTest extends BasePathTest {
         assertThat(node.getExtensions().size(), is(extensions.size()));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getChangedRangesShouldReportChangedChunks() {
+        byte[] content = new byte[1 << 20];
+        new Random(4).nextBytes(content);
+        byte[] modified = Arrays.copyOf(content, content.length);
+        modified[300000] ^= 1;
+        IndexNode origin = givenChunkedFile(content);
+        IndexNode update = givenChunkedFile(modified);
+
+
+        List<ByteRange> ranges = new IndexNodeChange(IndexNodeChange.Change.MODIFIED, origin, update).getChangedRanges();
+
+
+        assertThat(ranges.size(), is(1));
+        assertThat(ranges.get(0).getOffset() <= 300000 && ranges.get(0).getEnd() > 300000, is(true));
+        assertThat(ranges.get(0).getLength() < content.length / 10, is(true));
+    }
+
+    private IndexNode givenChunkedFile(byte[] content) {
+        FastCdcChunker chunker = FastCdcChunker.createForSize(content.length);
+        chunker.update(content, 0, content.length);
+        chunker.finish();
+        IndexNode node = new IndexNode(null, IndexNodeType.FILE, "file.bin");
+        node.addExtension(ChunkHashIndexExtension.create(chunker));
+        return node;
+    }
+}
@@ -4,6 +4,8 @@ import de.silef.service.file.test.BasePathTest;
 import de.silef.service.file.test.PathUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -67,4 +69,25 @@ public class BasicFileIndexExtensionTest extends BasePathTest{
         assertThat(extension2.getCreationTime(), is(extension1.getCreationTime()));
         assertThat(extension2.getModifiedTime(), is(extension1.getModifiedTime()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createDataShouldMatchDataOutputFormat() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DataOutputStream dataOutput = new DataOutputStream(output)) {
+            dataOutput.writeLong(-1234567890123L);
+            dataOutput.writeLong(1474000000000L);
+            dataOutput.writeLong(Long.MAX_VALUE);
+            dataOutput.writeLong(0x8000000000000001L);
+        }
+
+
+        BasicFileIndexExtension extension = new BasicFileIndexExtension(BasicFileIndexExtension.createData(-1234567890123L, 1474000000000L, Long.MAX_VALUE, 0x8000000000000001L));
+
+
+        assertThat(extension.getData(), is(output.toByteArray()));
+        assertThat(extension.getSize(), is(-1234567890123L));
+        assertThat(extension.getCreationTime(), is(1474000000000L));
+        assertThat(extension.getModifiedTime(), is(Long.MAX_VALUE));
+        assertThat(extension.getFileKey(), is(0x8000000000000001L));
+    }
+}
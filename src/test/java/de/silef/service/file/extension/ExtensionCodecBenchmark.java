@@ -0,0 +1,154 @@
+package de.silef.service.file.extension;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the stream based codec of the basic file and Unix file extension with the direct
+ * big endian access on the data array: nanoseconds and allocated bytes per decode of all fields
+ * and per encode.
+ *
+ * Run after test-compile with
+ *
+ *     java -cp target/classes:target/test-classes de.silef.service.file.extension.ExtensionCodecBenchmark [count in thousands]
+ */
+public class ExtensionCodecBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * Keeps encoded data reachable so it is not eliminated by escape analysis
+     */
+    private static byte[] sink;
+
+    public static void main(String[] args) throws IOException {
+        int count = (args.length > 0 ? Integer.parseInt(args[0]) : 1000) * 1000;
+
+        BasicFileIndexExtension[] basicFiles = new BasicFileIndexExtension[count];
+        UnixFileIndexExtension[] unixFiles = new UnixFileIndexExtension[count];
+        for (int i = 0; i < count; i++) {
+            basicFiles[i] = new BasicFileIndexExtension(BasicFileIndexExtension.createData(i * 1024L, 1474000000000L + i, 1474000000000L + i, i));
+            unixFiles[i] = new UnixFileIndexExtension(UnixFileIndexExtension.createData(0644, 1000, 1000, i, 1));
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round == ROUNDS - 1;
+            measure(print, "basic file decode stream", count, () -> decodeBasicFileStream(basicFiles));
+            measure(print, "basic file decode direct", count, () -> decodeBasicFileDirect(basicFiles));
+            measure(print, "basic file encode stream", count, () -> encodeBasicFileStream(count));
+            measure(print, "basic file encode direct", count, () -> encodeBasicFileDirect(count));
+            measure(print, "unix file decode stream", count, () -> decodeUnixFileStream(unixFiles));
+            measure(print, "unix file decode direct", count, () -> decodeUnixFileDirect(unixFiles));
+            measure(print, "unix file encode stream", count, () -> encodeUnixFileStream(count));
+            measure(print, "unix file encode direct", count, () -> encodeUnixFileDirect(count));
+        }
+    }
+
+    private static void measure(boolean print, String name, int count, Run run) throws IOException {
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        long result = run.run();
+        long nanos = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        if (print) {
+            System.out.printf("%-26s %8.1f ns/op %8.1f bytes/op (%d)%n", name, nanos / (double) count, allocated / (double) count, result);
+        }
+    }
+
+    private static long decodeBasicFileStream(BasicFileIndexExtension[] extensions) throws IOException {
+        long result = 0;
+        for (BasicFileIndexExtension extension : extensions) {
+            try (ByteArrayInputStream input = new ByteArrayInputStream(extension.getData());
+                 DataInputStream dataInput = new DataInputStream(input)) {
+                result += dataInput.readLong() + dataInput.readLong() + dataInput.readLong() + dataInput.readLong();
+            }
+        }
+        return result;
+    }
+
+    private static long decodeBasicFileDirect(BasicFileIndexExtension[] extensions) {
+        long result = 0;
+        for (BasicFileIndexExtension extension : extensions) {
+            result += extension.getSize() + extension.getCreationTime() + extension.getModifiedTime() + extension.getFileKey();
+        }
+        return result;
+    }
+
+    private static long encodeBasicFileStream(int count) throws IOException {
+        long result = 0;
+        for (int i = 0; i < count; i++) {
+            try (ByteArrayOutputStream output = new ByteArrayOutputStream();
+                 DataOutputStream dataOutput = new DataOutputStream(output)) {
+                dataOutput.writeLong(i * 1024L);
+                dataOutput.writeLong(1474000000000L + i);
+                dataOutput.writeLong(1474000000000L + i);
+                dataOutput.writeLong(i);
+                sink = output.toByteArray();
+                result += sink[7];
+            }
+        }
+        return result;
+    }
+
+    private static long encodeBasicFileDirect(int count) {
+        long result = 0;
+        for (int i = 0; i < count; i++) {
+            sink = BasicFileIndexExtension.createData(i * 1024L, 1474000000000L + i, 1474000000000L + i, i);
+            result += sink[7];
+        }
+        return result;
+    }
+
+    private static long decodeUnixFileStream(UnixFileIndexExtension[] extensions) throws IOException {
+        long result = 0;
+        for (UnixFileIndexExtension extension : extensions) {
+            try (ByteArrayInputStream input = new ByteArrayInputStream(extension.getData());
+                 DataInputStream dataInput = new DataInputStream(input)) {
+                result += dataInput.readInt() + dataInput.readInt() + dataInput.readInt() + dataInput.readLong() + dataInput.readInt();
+            }
+        }
+        return result;
+    }
+
+    private static long decodeUnixFileDirect(UnixFileIndexExtension[] extensions) {
+        long result = 0;
+        for (UnixFileIndexExtension extension : extensions) {
+            result += extension.getMode() + extension.getUserId() + extension.getGroupId() + extension.getInode() + extension.getLinkCount();
+        }
+        return result;
+    }
+
+    private static long encodeUnixFileStream(int count) throws IOException {
+        long result = 0;
+        for (int i = 0; i < count; i++) {
+            try (ByteArrayOutputStream output = new ByteArrayOutputStream();
+                 DataOutputStream dataOutput = new DataOutputStream(output)) {
+                dataOutput.writeInt(0644);
+                dataOutput.writeInt(1000);
+                dataOutput.writeInt(1000);
+                dataOutput.writeLong(i);
+                dataOutput.writeInt(1);
+                sink = output.toByteArray();
+                result += sink[19];
+            }
+        }
+        return result;
+    }
+
+    private static long encodeUnixFileDirect(int count) {
+        long result = 0;
+        for (int i = 0; i < count; i++) {
+            sink = UnixFileIndexExtension.createData(0644, 1000, 1000, i, 1);
+            result += sink[19];
+        }
+        return result;
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private interface Run {
+        long run() throws IOException;
+    }
+}
@@ -4,6 +4,7 @@ import de.silef.service.file.test.BasePathTest;
 import de.silef.service.file.util.HashUtil;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -29,4 +30,38 @@ public class FileContentHashIndexExtensionTest extends BasePathTest {
         assertThat(HashUtil.toHex(extension.getData()), is("9e027c385d55371f7bb241f54c94559b9aad7b3a"));
     }
 
+    @Test
+    public void createShouldUseExtensionTypeOfAlgorithm() throws Exception {
+        Path file = Files.write(tmp.resolve("abc.txt"), "abc".getBytes());
+
+
+        FileContentHashIndexExtension sha256 = FileContentHashIndexExtension.create(file, ContentHashAlgorithm.SHA256);
+        FileContentHashIndexExtension xxh64 = FileContentHashIndexExtension.create(file, ContentHashAlgorithm.XXHASH64);
+
+
+        assertThat(sha256.getType(), is(ExtensionType.FILE_HASH_SHA256.value));
+        assertThat(sha256.getData().length, is(32));
+        assertThat(xxh64.getType(), is(ExtensionType.FILE_HASH_XXHASH64.value));
+        assertThat(xxh64.getData().length, is(8));
+    }
+
+    @Test
+    public void getDataViewShouldBeReadOnlyAndComparable() throws Exception {
+        Path file = Files.write(tmp.resolve("abc.txt"), "abc".getBytes());
+        FileContentHashIndexExtension hash = FileContentHashIndexExtension.create(file);
+        FileContentHashIndexExtension other = new FileContentHashIndexExtension(hash.getData());
+
+
+        ByteBuffer view = hash.getDataView();
+
+
+        assertThat(view.isReadOnly(), is(true));
+        assertThat(view.remaining(), is(20));
+        assertThat(view, is(other.getDataView()));
+        assertThat(view.hashCode(), is(other.getDataView().hashCode()));
+        assertThat(hash.getDataLength(), is(20));
+        assertThat(hash.hasEqualData(other), is(true));
+        assertThat(hash.hasEqualData(new FileContentHashIndexExtension(new byte[20])), is(false));
+    }
+
 }
\ No newline at end of file
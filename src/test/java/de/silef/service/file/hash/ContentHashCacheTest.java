@@ -0,0 +1,98 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ContentHashCacheTest extends BasePathTest {
+
+    private static final byte TYPE = FILE_HASH.value;
+
+    @Test
+    public void cacheShouldEvictLeastRecentlyUsed() throws IOException {
+        BasicFileAttributes a = givenOldFile("a.txt");
+        BasicFileAttributes b = givenOldFile("b.txt");
+        BasicFileAttributes c = givenOldFile("c.txt");
+        ContentHashCache cache = new ContentHashCache(2);
+        cache.put(a, TYPE, new byte[] {1});
+        cache.put(b, TYPE, new byte[] {2});
+        cache.get(a, TYPE);
+
+
+        cache.put(c, TYPE, new byte[] {3});
+
+
+        assertThat(cache.get(a, TYPE), is(new byte[] {1}));
+        assertThat(cache.get(b, TYPE), is(nullValue()));
+        assertThat(cache.get(c, TYPE), is(new byte[] {3}));
+    }
+
+    @Test
+    public void cacheShouldIgnoreRecentlyModifiedFiles() throws IOException {
+        Path file = Files.write(tmp.resolve("new.txt"), "content".getBytes());
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        ContentHashCache cache = new ContentHashCache(10);
+
+
+        cache.put(attributes, TYPE, new byte[] {1});
+
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void readFromPathShouldRestoreWrittenCache() throws IOException {
+        BasicFileAttributes a = givenOldFile("a.txt");
+        ContentHashCache cache = new ContentHashCache(10);
+        cache.put(a, TYPE, new byte[] {1, 2, 3});
+        Path cacheFile = tmp.resolve("hash.cache");
+
+
+        cache.writeToPath(cacheFile);
+        ContentHashCache restored = ContentHashCache.readFromPath(cacheFile, 10);
+
+
+        assertThat(restored.get(a, TYPE), is(new byte[] {1, 2, 3}));
+        assertThat(restored.get(a, ContentHashAlgorithm.SHA256.getExtensionType().value), is(nullValue()));
+    }
+
+    @Test
+    public void calculatorShouldUseCachedHashOfHardLinkInOtherIndex() throws IOException {
+        Path primary = Files.createDirectories(tmp.resolve("primary"));
+        Path other = Files.createDirectories(tmp.resolve("other"));
+        givenOldFile("primary/a.txt");
+        FileIndex index = FileIndex.create(primary, indexStrategy);
+        ContentHashCache cache = new ContentHashCache(10);
+        new FileContentHashCalculator(1, 1, ContentHashAlgorithm.SHA1, false, cache).calculate(primary, index.getRoot(), n -> true);
+        Files.createLink(other.resolve("b.txt"), primary.resolve("a.txt"));
+        FileIndex otherIndex = FileIndex.create(other, indexStrategy);
+
+
+        new FileContentHashCalculator(1, 1, ContentHashAlgorithm.SHA1, false, cache).calculate(other, otherIndex.getRoot(), n -> true);
+
+
+        IndexNode linkNode = otherIndex.getRoot().getChildByName("b.txt");
+        assertThat(linkNode.getExtensionByType(TYPE).getData(), is(index.getRoot().getChildByName("a.txt").getExtensionByType(TYPE).getData()));
+        assertThat(cache.getHitCount(), is(1L));
+    }
+
+    private BasicFileAttributes givenOldFile(String name) throws IOException {
+        Path file = Files.write(tmp.resolve(name), ("content of " + name).getBytes());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+}
@@ -0,0 +1,111 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static de.silef.service.file.extension.ExtensionType.QUICK_FINGERPRINT;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DuplicateFinderTest extends BasePathTest {
+
+    @Test
+    public void findDuplicatesShouldHashOnlyFingerprintCollisions() throws IOException {
+        Files.write(tmp.resolve("a.txt"), "same content".getBytes());
+        Files.write(tmp.resolve("b.txt"), "same content".getBytes());
+        Files.write(tmp.resolve("c.txt"), "diff content".getBytes());
+        Files.write(tmp.resolve("d.txt"), "unique size".getBytes());
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        List<DuplicateGroup> duplicates = createFinder().findDuplicates(index);
+
+
+        assertThat(duplicates.size(), is(1));
+        assertThat(getNames(duplicates.get(0).getNodes(index)), is("a.txt,b.txt"));
+        assertThat(getNode(index, "c.txt").hasExtensionType(QUICK_FINGERPRINT.value), is(true));
+        assertThat(getNode(index, "c.txt").hasExtensionType(FILE_HASH.value), is(false));
+        assertThat(getNode(index, "d.txt").hasExtensionType(QUICK_FINGERPRINT.value), is(false));
+    }
+
+    @Test
+    public void findDuplicatesShouldSplitFingerprintCollisionsByContentHash() throws IOException {
+        byte[] content = new byte[20000];
+        Files.write(tmp.resolve("a.bin"), content);
+        content[10000] = 1;
+        Files.write(tmp.resolve("b.bin"), content);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        List<DuplicateGroup> duplicates = createFinder().findDuplicates(index);
+
+
+        assertThat(duplicates.size(), is(0));
+        assertThat(getNode(index, "a.bin").hasExtensionType(FILE_HASH.value), is(true));
+        assertThat(getNode(index, "b.bin").hasExtensionType(FILE_HASH.value), is(true));
+    }
+
+    @Test
+    public void findDuplicatesOfOtherIndexShouldRequireFilesOfBothIndices() throws IOException {
+        Path primary = Files.createDirectories(tmp.resolve("primary"));
+        Path other = Files.createDirectories(tmp.resolve("other"));
+        Files.write(primary.resolve("a.txt"), "shared".getBytes());
+        Files.write(primary.resolve("b.txt"), "local1".getBytes());
+        Files.write(primary.resolve("c.txt"), "local1".getBytes());
+        Files.write(other.resolve("a-copy.txt"), "shared".getBytes());
+        FileIndex index = FileIndex.create(primary, indexStrategy);
+        FileIndex otherIndex = FileIndex.create(other, indexStrategy);
+
+
+        List<DuplicateGroup> duplicates = createFinder().findDuplicates(index, otherIndex);
+
+
+        assertThat(duplicates.size(), is(1));
+        assertThat(getNames(duplicates.get(0).getNodes(index)), is("a.txt"));
+        assertThat(getNames(duplicates.get(0).getNodes(otherIndex)), is("a-copy.txt"));
+        assertThat(getNode(otherIndex, "a-copy.txt").hasExtensionType(QUICK_FINGERPRINT.value), is(true));
+        assertThat(getNode(otherIndex, "a-copy.txt").hasExtensionType(FILE_HASH.value), is(true));
+    }
+
+    @Test
+    public void findDuplicatesShouldSkipExistingHardLinks() throws IOException {
+        Path a = Files.write(tmp.resolve("a.txt"), "same content".getBytes());
+        Files.createLink(tmp.resolve("a-link.txt"), a);
+        Path c = Files.write(tmp.resolve("c.txt"), "same content".getBytes());
+        Files.createLink(tmp.resolve("c-link.txt"), c);
+        Path d = Files.write(tmp.resolve("d.txt"), "only linked".getBytes());
+        Files.createLink(tmp.resolve("d-link.txt"), d);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        List<DuplicateGroup> duplicates = createFinder().findDuplicates(index);
+
+
+        assertThat(duplicates.size(), is(1));
+        assertThat(getNames(duplicates.get(0).getNodes(index)), is("a-link.txt,c-link.txt,c.txt"));
+        assertThat(getNode(index, "d.txt").hasExtensionType(QUICK_FINGERPRINT.value), is(false));
+    }
+
+    private DuplicateFinder createFinder() {
+        return new DuplicateFinder(new FileContentHashCalculator(2), ContentHashAlgorithm.SHA1);
+    }
+
+    private IndexNode getNode(FileIndex index, String name) {
+        return index.getRoot().stream().filter(n -> n.getRelativePath().equals(Paths.get(name))).findFirst().get();
+    }
+
+    private String getNames(List<IndexNode> nodes) {
+        return nodes.stream().map(IndexNode::getName).collect(Collectors.joining(","));
+    }
+}
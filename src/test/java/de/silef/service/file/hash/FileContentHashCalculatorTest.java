@@ -0,0 +1,145 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.ChunkHashIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.FileContentHashIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.extension.QuickFingerprintIndexExtension;
+import de.silef.service.file.extension.UniversalHashIndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.CHUNK_HASH;
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FileContentHashCalculatorTest extends BasePathTest {
+
+    @Test
+    public void calculateShouldHashAllFiles() throws IOException {
+        givenFiles(20);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        HashStatistics statistics = new FileContentHashCalculator(3, 2).calculate(tmp, index.getRoot(), n -> true);
+
+
+        List<IndexNode> files = index.getRoot().stream().filter(IndexNode::isFile).collect(Collectors.toList());
+        assertThat(statistics.getFileCount(), is(20L));
+        assertThat(statistics.getByteCount(), is(index.getTotalFileSize()));
+        for (IndexNode file : files) {
+            Path path = tmp.resolve(file.getRelativePath());
+            assertThat(file.getExtensionByType(FILE_HASH.value).getData(), is(FileContentHashIndexExtension.create(path).getData()));
+        }
+    }
+
+    @Test
+    public void calculateShouldRespectFilterAndResetUniversalHash() throws IOException {
+        givenFiles(4);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        index.getRoot().addExtension(UniversalHashIndexExtension.create(index.getRoot()));
+
+
+        HashStatistics statistics = new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> n.getName().startsWith("file1"));
+
+
+        assertThat(statistics.getFileCount(), is(1L));
+        assertThat(index.getRoot().hasExtensionType(UNIVERSAL_HASH.value), is(false));
+        long hashedCount = index.getRoot().stream().filter(n -> n.hasExtensionType(FILE_HASH.value)).count();
+        assertThat(hashedCount, is(1L));
+    }
+
+    @Test
+    public void calculateWithChunksShouldAttachChunkHashes() throws IOException {
+        givenFiles(3);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        new FileContentHashCalculator(2, 2, ContentHashAlgorithm.SHA1, true).calculate(tmp, index.getRoot(), n -> true);
+
+
+        for (IndexNode file : index.getRoot().stream().filter(IndexNode::isFile).collect(Collectors.toList())) {
+            ChunkHashIndexExtension chunks = (ChunkHashIndexExtension) file.getExtensionByType(CHUNK_HASH.value);
+            Path path = tmp.resolve(file.getRelativePath());
+            assertThat(chunks.getContentSize(), is(Files.size(path)));
+            assertThat(file.getExtensionByType(FILE_HASH.value).getData(), is(FileContentHashIndexExtension.create(path).getData()));
+        }
+    }
+
+    @Test
+    public void calculateShouldHashHardLinksOnce() throws IOException {
+        Path file = Files.write(tmp.resolve("file.txt"), "content".getBytes());
+        Files.createLink(tmp.resolve("link1.txt"), file);
+        Files.createLink(tmp.resolve("link2.txt"), file);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        HashStatistics statistics = new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+
+
+        assertThat(statistics.getFileCount(), is(1L));
+        assertThat(statistics.getLinkedFileCount(), is(2L));
+        long hashedCount = index.getRoot().stream().filter(n -> n.hasExtensionType(FILE_HASH.value)).count();
+        assertThat(hashedCount, is(3L));
+    }
+
+    @Test
+    public void calculateShouldAttachHashesToNewVersionOfCopyOnWriteIndex() throws IOException {
+        Files.createDirectories(tmp.resolve("dir"));
+        Files.write(tmp.resolve("dir/a.txt"), "aaaa".getBytes());
+        Files.write(tmp.resolve("dir/b.txt"), "b".getBytes());
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        index.setCopyOnWrite(true);
+        Files.write(tmp.resolve("dir/b.txt"), "bb".getBytes());
+        index.applyChanges(index.getChanges(FileIndex.create(tmp, indexStrategy), indexStrategy));
+        IndexNode oldRoot = index.getRoot();
+        long missingHashBytes = index.getMissingHashBytes(ContentHashAlgorithm.SHA1);
+
+
+        new FileContentHashCalculator(2).calculate(index, n -> n.getName().equals("a.txt"), (root, statistics) -> {});
+
+
+        IndexNode oldFile = oldRoot.getChildByName("dir").getChildByName("a.txt");
+        IndexNode newFile = index.getRoot().getChildByName("dir").getChildByName("a.txt");
+        assertThat(index.getMissingHashBytes(ContentHashAlgorithm.SHA1), is(missingHashBytes - 4));
+        assertThat(oldRoot.getAggregate().getMissingHashBytes(ContentHashAlgorithm.SHA1), is(missingHashBytes));
+        assertThat(oldFile.hasExtensionType(FILE_HASH.value), is(false));
+        assertThat(newFile.getExtensionByType(FILE_HASH.value).getData(), is(FileContentHashIndexExtension.create(tmp.resolve("dir/a.txt")).getData()));
+    }
+
+    @Test
+    public void createFingerprintsShouldKeepOrderOfFiles() throws IOException {
+        givenFiles(10);
+        List<Path> files = Files.walk(tmp).filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        files.add(1, tmp.resolve("missing.txt"));
+
+
+        List<IndexExtension> fingerprints = new FileContentHashCalculator(3, 2).createFingerprints(files);
+
+
+        assertThat(fingerprints.size(), is(11));
+        assertThat(fingerprints.get(1) == null, is(true));
+        for (int i = 0; i < files.size(); i++) {
+            if (i != 1) {
+                assertThat(fingerprints.get(i).getData(), is(QuickFingerprintIndexExtension.create(files.get(i)).getData()));
+            }
+        }
+    }
+
+    private void givenFiles(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path dir = Files.createDirectories(tmp.resolve("dir" + (i % 3)));
+            Files.write(dir.resolve("file" + i + ".txt"), ("content of file " + i).getBytes());
+        }
+    }
+}
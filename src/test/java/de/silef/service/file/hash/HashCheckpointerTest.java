@@ -0,0 +1,54 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class HashCheckpointerTest extends BasePathTest {
+
+    @Test
+    public void checkpointShouldWriteSnapshotsByByteInterval() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            Files.write(tmp.resolve("file" + i + ".txt"), new byte[100]);
+        }
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        index.setCopyOnWrite(true);
+        IndexNode oldRoot = index.getRoot();
+        List<IndexNode> snapshots = Collections.synchronizedList(new ArrayList<>());
+
+
+        try (HashCheckpointer checkpointer = new HashCheckpointer(200, 0, snapshots::add)) {
+            new FileContentHashCalculator(1, 1).calculate(index, n -> true, checkpointer);
+        }
+
+
+        assertThat(snapshots.isEmpty(), is(false));
+        IndexNode first = snapshots.get(0);
+        assertThat(first == index.getRoot(), is(false));
+        long hashedCount = first.stream().filter(n -> n.hasExtensionType(FILE_HASH.value)).count();
+        assertThat(hashedCount >= 2 && hashedCount < 6, is(true));
+        assertThat(oldRoot.stream().anyMatch(n -> n.hasExtensionType(FILE_HASH.value)), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkpointShouldRequireCopyOnWriteIndex() throws IOException {
+        Files.write(tmp.resolve("file.txt"), new byte[100]);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        try (HashCheckpointer checkpointer = new HashCheckpointer(1, 0, root -> {})) {
+            new FileContentHashCalculator(1, 1).calculate(index, n -> true, checkpointer);
+        }
+    }
+}
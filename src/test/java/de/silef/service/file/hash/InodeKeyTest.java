@@ -0,0 +1,51 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class InodeKeyTest extends BasePathTest {
+
+    @Test
+    public void equalsShouldMatchHardLinks() throws IOException {
+        Path file = Files.write(tmp.resolve("file.txt"), "content".getBytes());
+        Files.createLink(tmp.resolve("link.txt"), file);
+        Files.write(tmp.resolve("other.txt"), "content".getBytes());
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+
+
+        InodeKey key = InodeKey.create(index.find(Paths.get("file.txt")));
+        InodeKey linkKey = InodeKey.create(index.find(Paths.get("link.txt")));
+        InodeKey otherKey = InodeKey.create(index.find(Paths.get("other.txt")));
+
+
+        assertThat(key.equals(linkKey), is(true));
+        assertThat(key.hashCode(), is(linkKey.hashCode()));
+        assertThat(key.equals(otherKey), is(false));
+    }
+
+    @Test
+    public void inodeMapShouldRequireEqualDevice() throws IOException {
+        Path file = Files.write(tmp.resolve("file.txt"), "content".getBytes());
+        Files.createLink(tmp.resolve("link.txt"), file);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        InodeKey key = InodeKey.create(index.find(Paths.get("file.txt")));
+        InodeMap<String> inodeMap = new InodeMap<>();
+
+
+        inodeMap.put(key, tmp.resolve("file.txt"), "file");
+
+
+        InodeKey linkKey = InodeKey.create(index.find(Paths.get("link.txt")));
+        assertThat(inodeMap.get(linkKey, tmp.resolve("link.txt")), is("file"));
+        assertThat(inodeMap.get(linkKey, tmp.resolve("missing.txt")) == null, is(true));
+    }
+}
@@ -0,0 +1,106 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class IntegrityVerifierTest extends BasePathTest {
+
+    @Test
+    public void verifyShouldReportCorruptedFileAndDirectories() throws IOException {
+        givenFiles(9);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+        new UniversalHashCalculator(2, ContentHashAlgorithm.SHA1).calculate(index.getRoot());
+
+        corrupt(tmp.resolve("dir1").resolve("file4.txt"));
+        Files.write(tmp.resolve("dir2").resolve("file5.txt"), "modified content".getBytes());
+
+
+        VerifyResult result = new IntegrityVerifier(3, ContentHashAlgorithm.SHA1).verify(index);
+
+
+        assertThat(result.getFileStatistics().getFileCount(), is(8L));
+        assertThat(result.getModifiedFileCount(), is(1L));
+        assertThat(getPaths(result.getFileMismatches()), is("[dir1/file4.txt]"));
+        assertThat(getPaths(result.getDirectoryMismatches()), is("[, dir1]"));
+        assertThat(result.getDirectoryCount(), is(4L));
+    }
+
+    @Test
+    public void verifyShouldNotReportUnchangedTree() throws IOException {
+        givenFiles(4);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+        new UniversalHashCalculator(2, ContentHashAlgorithm.SHA1).calculate(index.getRoot());
+
+
+        VerifyResult result = new IntegrityVerifier(2, ContentHashAlgorithm.SHA1).verify(index);
+
+
+        assertThat(result.hasMismatches(), is(false));
+        assertThat(result.getFileStatistics().getByteCount(), is(index.getTotalFileSize()));
+    }
+
+    @Test
+    public void verifyShouldCompareFilesWithoutModifiedTimeByIdentity() throws IOException {
+        givenFiles(4);
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+        new UniversalHashCalculator(2, ContentHashAlgorithm.SHA1).calculate(index.getRoot());
+        // Nodes of index format version 1 have no modified time
+        index.getRoot().stream().filter(IndexNode::isFile).forEach(n -> {
+            BasicFileIndexExtension basicFile = (BasicFileIndexExtension) n.getExtensionByType(BASIC_FILE.value);
+            n.addExtension(basicFile.withUnknownModifiedTime());
+        });
+
+        corrupt(tmp.resolve("dir1").resolve("file1.txt"));
+
+
+        VerifyResult result = new IntegrityVerifier(2, ContentHashAlgorithm.SHA1).verify(index);
+
+
+        assertThat(result.getFileStatistics().getFileCount(), is(4L));
+        assertThat(result.getModifiedFileCount(), is(0L));
+        assertThat(getPaths(result.getFileMismatches()), is("[dir1/file1.txt]"));
+    }
+
+    private void corrupt(Path file) throws IOException {
+        FileTime modifiedTime = Files.getLastModifiedTime(file);
+        byte[] content = Files.readAllBytes(file);
+        content[0] ^= 1;
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, modifiedTime);
+    }
+
+    private String getPaths(List<HashMismatch> mismatches) {
+        List<String> paths = mismatches.stream()
+                .map(HashMismatch::getNode)
+                .map(IndexNode::getRelativePath)
+                .map(Path::toString)
+                .sorted()
+                .collect(Collectors.toList());
+        return paths.toString();
+    }
+
+    private void givenFiles(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path dir = Files.createDirectories(tmp.resolve("dir" + (i % 3)));
+            Files.write(dir.resolve("file" + i + ".txt"), ("content of file " + i).getBytes());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.LAST_VERIFIED;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ScrubSchedulerTest extends BasePathTest {
+
+    @Test
+    public void selectShouldPreferLargeUnverifiedFiles() throws IOException {
+        FileIndex index = givenHashedIndex(10, 20, 30, 40);
+
+
+        List<IndexNode> files = new ScrubScheduler(n -> n.isFile()).select(index.getRoot(), 0.5);
+
+
+        assertThat(getNames(files), is(Arrays.asList("file3.txt", "file2.txt")));
+    }
+
+    @Test
+    public void scrubRunsShouldVerifyAllFiles() throws IOException {
+        FileIndex index = givenHashedIndex(10, 10, 10, 10);
+        IntegrityVerifier verifier = new IntegrityVerifier(2, ContentHashAlgorithm.SHA1);
+        ScrubScheduler scheduler = new ScrubScheduler(verifier::isVerifiable);
+        Set<String> verifiedNames = new HashSet<>();
+
+
+        for (int i = 0; i < 2; i++) {
+            List<IndexNode> files = scheduler.select(index.getRoot(), 0.5);
+            verifier.verify(index, files, 0);
+            verifiedNames.addAll(getNames(files));
+        }
+
+
+        assertThat(verifiedNames.size(), is(4));
+        long verifiedCount = index.getRoot().stream().filter(n -> n.hasExtensionType(LAST_VERIFIED.value)).count();
+        assertThat(verifiedCount, is(4L));
+    }
+
+    private FileIndex givenHashedIndex(int... sizes) throws IOException {
+        for (int i = 0; i < sizes.length; i++) {
+            Path dir = Files.createDirectories(tmp.resolve("dir" + (i % 2)));
+            Files.write(dir.resolve("file" + i + ".txt"), new byte[sizes[i]]);
+        }
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+        return index;
+    }
+
+    private List<String> getNames(List<IndexNode> files) {
+        return files.stream().map(IndexNode::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,105 @@
+package de.silef.service.file.hash;
+
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.UniversalHashIndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import de.silef.service.file.util.HashUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static de.silef.service.file.extension.ExtensionType.UNIVERSAL_HASH;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class UniversalHashCalculatorTest extends BasePathTest {
+
+    @Test
+    public void calculateShouldMatchSequentialHash() throws IOException {
+        givenTree();
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+        IndexNode sequentialRoot = index.getRoot().copy();
+
+
+        UniversalHashIndexExtension hash = new UniversalHashCalculator(4, ContentHashAlgorithm.SHA1).calculate(index.getRoot());
+
+
+        assertThat(hash.getData(), is(UniversalHashIndexExtension.create(sequentialRoot).getData()));
+        assertThat(hash.getData(), is(getBufferedHash(index.getRoot())));
+        assertThat(index.getRoot().getExtensionByType(UNIVERSAL_HASH.value).getData(), is(hash.getData()));
+        long dirsWithoutHash = index.getRoot().stream().filter(IndexNode::isDirectory).filter(n -> !n.hasExtensionType(UNIVERSAL_HASH.value)).count();
+        assertThat(dirsWithoutHash, is(0L));
+    }
+
+    @Test
+    public void calculateShouldReuseValidDirectoryHashes() throws IOException {
+        givenTree();
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        IndexNode dir = index.getRoot().getChildByName("dir0");
+        UniversalHashIndexExtension dirHash = UniversalHashIndexExtension.create(dir);
+        dir.addExtension(dirHash);
+
+
+        new UniversalHashCalculator(4, ContentHashAlgorithm.SHA1).calculate(index.getRoot());
+
+
+        assertThat(dir.getExtensionByType(UNIVERSAL_HASH.value) == dirHash, is(true));
+    }
+
+    @Test
+    public void calculateShouldRecomputeDirtyPathsOnly() throws IOException {
+        givenTree();
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, index.getRoot(), n -> true);
+        new UniversalHashCalculator(2, ContentHashAlgorithm.SHA1).calculate(index.getRoot());
+        Files.write(tmp.resolve("dir1").resolve("sub1").resolve("file1.txt"), "modified content".getBytes());
+        Files.write(tmp.resolve("dir2").resolve("sub2").resolve("file2.txt"), "modified content".getBytes());
+        FileIndex current = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(2).calculate(tmp, current.getRoot(), n -> true);
+        index.applyChanges(index.getChanges(current, indexStrategy));
+
+        UniversalHashCalculator calculator = new UniversalHashCalculator(2, ContentHashAlgorithm.SHA1, index.getDirtyTracker());
+
+
+        UniversalHashIndexExtension hash = calculator.calculate(index.getRoot());
+
+
+        assertThat(calculator.getRecomputedCount(), is(5L));
+        assertThat(index.getDirtyTracker().hasDirty(), is(false));
+        assertThat(hash.getData(), is(getBufferedHash(current.getRoot())));
+    }
+
+    private void givenTree() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            Path dir = Files.createDirectories(tmp.resolve("dir" + (i % 3)).resolve("sub" + (i % 5)));
+            Files.write(dir.resolve("file" + i + ".txt"), ("content of file " + i).getBytes());
+        }
+        Files.write(tmp.resolve("root.txt"), "root".getBytes());
+    }
+
+    /**
+     * Reference implementation which buffers all child records before hashing
+     */
+    private byte[] getBufferedHash(IndexNode dir) throws IOException {
+        List<String> names = dir.getChildNames().stream().sorted().collect(Collectors.toList());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        for (String name : names) {
+            IndexNode child = dir.getChildByName(name);
+            dataOutput.write(child.isDirectory() ? getBufferedHash(child) : child.getExtensionByType(FILE_HASH.value).getData());
+            dataOutput.writeByte(child.getNodeType().getByte());
+            dataOutput.writeUTF(child.getName());
+        }
+        return HashUtil.getHash(output.toByteArray(), ContentHashAlgorithm.SHA1.createDigest());
+    }
+}
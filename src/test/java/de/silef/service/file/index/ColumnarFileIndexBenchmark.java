@@ -0,0 +1,167 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.ExtensionType;
+import de.silef.service.file.extension.FileContentHashIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.node.IndexEntry;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.node.IndexNodeType;
+import de.silef.service.file.tree.Visitor;
+import de.silef.service.file.util.DataUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the file index with the columnar index: retained heap, off-heap memory, garbage
+ * collection time of reading and walking and the walk time. The index has files with basic
+ * file and SHA1 content hash extensions.
+ *
+ * Run after test-compile with
+ *
+ *     java -Xmx4g -cp target/classes:target/test-classes de.silef.service.file.index.ColumnarFileIndexBenchmark [file count in thousands]
+ */
+public class ColumnarFileIndexBenchmark {
+
+    private static final int FILES_PER_DIR = 50;
+
+    private static final int DIRS_PER_DIR = 10;
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = (args.length > 0 ? Integer.parseInt(args[0]) : 1000) * 1000;
+        StandardFileIndexStrategy strategy = new StandardFileIndexStrategy();
+
+        Path file = Files.createTempFile("fileindex", ".benchmark");
+        try {
+            new FileIndex(file.getParent(), createTree(fileCount)).writeToPath(file);
+
+            long before = getUsedHeap();
+            long gcBefore = getGcMillis();
+            FileIndex index = FileIndex.readFromPath(file.getParent(), file, strategy);
+            long walkNanos = walk(index);
+            long gcMillis = getGcMillis() - gcBefore;
+            print("file index", index, getUsedHeap() - before, 0, gcMillis, walkNanos);
+            index = null;
+
+            before = getUsedHeap();
+            gcBefore = getGcMillis();
+            long directBefore = getDirectMemory();
+            ColumnarFileIndex columnarIndex = ColumnarFileIndex.readFromPath(file.getParent(), file, ContentHashAlgorithm.SHA1, strategy);
+            walkNanos = walk(columnarIndex);
+            gcMillis = getGcMillis() - gcBefore;
+            print("columnar index", columnarIndex, getUsedHeap() - before, getDirectMemory() - directBefore, gcMillis, walkNanos);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void print(String name, IndexBackend index, long heap, long offHeap, long gcMillis, long walkNanos) {
+        long nodeCount = index.getTotalFileCount();
+        System.out.printf("%-15s nodes %d%n", name, nodeCount);
+        System.out.printf("  heap           %10.1f MB per 1M nodes%n", heap * 1e6 / nodeCount / (1 << 20));
+        System.out.printf("  off-heap       %10.1f MB per 1M nodes%n", offHeap * 1e6 / nodeCount / (1 << 20));
+        System.out.printf("  gc time        %10d ms of read and walk%n", gcMillis);
+        System.out.printf("  walk           %10.1f ns/node%n", walkNanos / (double) nodeCount);
+    }
+
+    private static long walk(IndexBackend index) {
+        walkOnce(index); // warm up
+        long start = System.nanoTime();
+        walkOnce(index);
+        return System.nanoTime() - start;
+    }
+
+    private static long walkOnce(IndexBackend index) {
+        long[] size = new long[1];
+        index.walk(new Visitor<IndexEntry>() {
+            @Override
+            public VisitorResult visitFile(IndexEntry file) throws IOException {
+                if (file instanceof ColumnarFileIndex.ColumnarEntry) {
+                    size[0] += ((ColumnarFileIndex) index).getSize(((ColumnarFileIndex.ColumnarEntry) file).getId());
+                } else {
+                    size[0] += ((BasicFileIndexExtension) ((IndexNode) file).getExtensionByType(ExtensionType.BASIC_FILE.value)).getSize();
+                }
+                return super.visitFile(file);
+            }
+        });
+        return size[0];
+    }
+
+    private static IndexNode createTree(int fileCount) throws IOException {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "root", Arrays.asList(createBasicFile(0)));
+        int dirCount = Math.max(1, fileCount / FILES_PER_DIR / DIRS_PER_DIR);
+        List<IndexNode> dirs = new ArrayList<>(dirCount);
+        int fileIndex = 0;
+        for (int d = 0; d < dirCount; d++) {
+            IndexNode dir = new IndexNode(root, IndexNodeType.DIRECTORY, "dir" + d, Arrays.asList(createBasicFile(0)));
+            List<IndexNode> subDirs = new ArrayList<>(DIRS_PER_DIR);
+            for (int s = 0; s < DIRS_PER_DIR; s++) {
+                IndexNode subDir = new IndexNode(dir, IndexNodeType.DIRECTORY, "sub" + s, Arrays.asList(createBasicFile(0)));
+                List<IndexNode> files = new ArrayList<>(FILES_PER_DIR);
+                for (int f = 0; f < FILES_PER_DIR; f++, fileIndex++) {
+                    List<IndexExtension> extensions = Arrays.asList(createBasicFile(fileIndex), createFileHash(fileIndex));
+                    files.add(new IndexNode(subDir, IndexNodeType.FILE, "file" + fileIndex + ".txt", extensions));
+                }
+                subDir.setChildren(files);
+                subDirs.add(subDir);
+            }
+            dir.setChildren(subDirs);
+            dirs.add(dir);
+        }
+        root.setChildren(dirs);
+        return root;
+    }
+
+    private static BasicFileIndexExtension createBasicFile(long i) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DataOutputStream dataOutput = new DataOutputStream(output)) {
+            dataOutput.writeLong(i * 1024);
+            dataOutput.writeLong(1474000000000L + i);
+            dataOutput.writeLong(1474000000000L + i);
+            dataOutput.writeLong(i);
+        }
+        return new BasicFileIndexExtension(output.toByteArray());
+    }
+
+    private static FileContentHashIndexExtension createFileHash(long i) {
+        byte[] hash = new byte[20];
+        System.arraycopy(DataUtils.toBytes(i), 0, hash, 0, 8);
+        return new FileContentHashIndexExtension(hash);
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long getDirectMemory() {
+        for (BufferPoolMXBean bean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (bean.getName().equals("direct")) {
+                return bean.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,165 @@
+package de.silef.service.file.index;
+
+import de.silef.service.file.change.IndexChange;
+import de.silef.service.file.change.IndexNodeChange;
+import de.silef.service.file.extension.ContentHashAlgorithm;
+import de.silef.service.file.extension.LastVerifiedIndexExtension;
+import de.silef.service.file.hash.FileContentHashCalculator;
+import de.silef.service.file.node.IndexEntry;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import de.silef.service.file.tree.Visitor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static de.silef.service.file.extension.ExtensionType.FILE_HASH;
+import static de.silef.service.file.extension.ExtensionType.LAST_VERIFIED;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ColumnarFileIndexTest extends BasePathTest {
+
+    @Test
+    public void readShouldMatchFileIndex() throws IOException {
+        FileIndex index = givenIndex();
+        Path indexFile = tmp.resolve("fileindex");
+        index.writeToPath(indexFile);
+
+
+        ColumnarFileIndex columnarIndex = ColumnarFileIndex.readFromPath(tmp, indexFile, ContentHashAlgorithm.SHA1, indexStrategy);
+
+
+        assertThat(getPaths(columnarIndex), is(getPaths(index)));
+        assertThat(columnarIndex.getTotalFileCount(), is(index.getTotalFileCount()));
+        assertThat(columnarIndex.getTotalFileSize(), is(index.getTotalFileSize()));
+        IndexEntry file = columnarIndex.find(Paths.get("dir", "b.txt"));
+        assertThat(file.getExtensionByType(FILE_HASH.value).getData(), is(index.find(Paths.get("dir", "b.txt")).getExtensionByType(FILE_HASH.value).getData()));
+        assertThat(file.hasExtensionType(LAST_VERIFIED.value), is(true));
+        assertThat(columnarIndex.find(Paths.get("dir", "missing.txt")), is(nullValue()));
+    }
+
+    @Test
+    public void findShouldLocateEveryNode() throws IOException {
+        FileIndex index = givenIndex();
+        Path indexFile = tmp.resolve("fileindex");
+        index.writeToPath(indexFile);
+        ColumnarFileIndex columnarIndex = ColumnarFileIndex.readFromPath(tmp, indexFile, ContentHashAlgorithm.SHA1, indexStrategy);
+
+
+        List<String> found = getPaths(columnarIndex).stream()
+                .map(path -> columnarIndex.find(Paths.get(path)).getRelativePath().toString())
+                .collect(Collectors.toList());
+
+
+        assertThat(found, is(getPaths(index)));
+        assertThat(columnarIndex.find(Paths.get("a")), is(nullValue()));
+        assertThat(columnarIndex.find(Paths.get("dir", "b.txt", "c.txt")), is(nullValue()));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void walkShouldPropagateVisitorErrors() throws IOException {
+        FileIndex index = givenIndex();
+        Path indexFile = tmp.resolve("fileindex");
+        index.writeToPath(indexFile);
+        ColumnarFileIndex columnarIndex = ColumnarFileIndex.readFromPath(tmp, indexFile, ContentHashAlgorithm.SHA1, indexStrategy);
+
+
+        columnarIndex.walk(new Visitor<IndexEntry>() {
+            @Override
+            public VisitorResult visitFile(IndexEntry file) throws IOException {
+                throw new IOException("Visitor failed");
+            }
+        });
+    }
+
+    @Test
+    public void writeShouldBeReadableByFileIndex() throws IOException {
+        FileIndex index = givenIndex();
+        Path indexFile = tmp.resolve("fileindex");
+        index.writeToPath(indexFile);
+        ColumnarFileIndex columnarIndex = ColumnarFileIndex.readFromPath(tmp, indexFile, ContentHashAlgorithm.SHA1, indexStrategy);
+
+
+        columnarIndex.writeToPath(tmp.resolve("columnar"));
+
+
+        FileIndex written = FileIndex.readFromPath(tmp, tmp.resolve("columnar"), indexStrategy);
+        assertThat(index.getChanges(written, indexStrategy).hasChanges(), is(false));
+        IndexNode file = written.find(Paths.get("dir", "b.txt"));
+        assertThat(file.getExtensions().size(), is(3));
+    }
+
+    @Test
+    public void getChangesShouldMatchFileIndex() throws IOException {
+        FileIndex origin = givenIndex();
+        Path originFile = tmp.resolve("origin");
+        origin.writeToPath(originFile);
+        Files.delete(tmp.resolve("a.txt"));
+        Files.write(tmp.resolve("dir/b.txt"), "changed".getBytes());
+        Files.createDirectories(tmp.resolve("new"));
+        Files.write(tmp.resolve("new/c.txt"), "c".getBytes());
+        FileIndex current = FileIndex.create(tmp, p -> !p.getPath().getFileName().toString().equals("origin"), indexStrategy);
+        Path currentFile = tmp.resolve("current");
+        current.writeToPath(currentFile);
+
+
+        IndexChange change = ColumnarFileIndex.readFromPath(tmp, originFile, ContentHashAlgorithm.SHA1, indexStrategy)
+                .getChanges(ColumnarFileIndex.readFromPath(tmp, currentFile, ContentHashAlgorithm.SHA1, indexStrategy), indexStrategy);
+
+
+        assertThat(getChanges(change), is(getChanges(origin.getChanges(current, indexStrategy))));
+        assertThat(getChanges(change), is(asList("CREATED new", "MODIFIED dir/b.txt", "REMOVED a.txt")));
+    }
+
+    private FileIndex givenIndex() throws IOException {
+        Files.createDirectories(tmp.resolve("dir"));
+        Files.write(tmp.resolve("a.txt"), "a".getBytes());
+        Files.write(tmp.resolve("dir/b.txt"), "b".getBytes());
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        new FileContentHashCalculator(1).calculate(tmp, index.getRoot(), n -> true);
+        index.find(Paths.get("dir", "b.txt")).addExtension(LastVerifiedIndexExtension.create(1234));
+        return index;
+    }
+
+    private static List<String> asList(String... values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static List<String> getChanges(IndexChange change) {
+        return change.getChanges().stream()
+                .map(c -> c.getChange() + " " + (c.getChange() == IndexNodeChange.Change.CREATED ? c.getUpdate() : c.getOrigin()).getRelativePath())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> getPaths(IndexBackend index) {
+        List<String> paths = new ArrayList<>();
+        index.walk(new Visitor<IndexEntry>() {
+            @Override
+            public VisitorResult preVisitDirectory(IndexEntry dir) throws IOException {
+                paths.add(dir.getRelativePath().toString());
+                return super.preVisitDirectory(dir);
+            }
+
+            @Override
+            public VisitorResult visitFile(IndexEntry file) throws IOException {
+                paths.add(file.getRelativePath().toString());
+                return super.visitFile(file);
+            }
+        });
+        return paths;
+    }
+}
@@ -1,12 +1,20 @@
 package de.silef.service.file.index;
 
+import de.silef.service.file.extension.BasicFileIndexExtension;
 import de.silef.service.file.test.BasePathTest;
 import de.silef.service.file.test.PathUtils;
+import de.silef.service.file.node.DirtyDirectoryTracker;
+import de.silef.service.file.node.IndexNode;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
@@ -27,4 +35,77 @@ public class FileIndexTest extends BasePathTest {
         assertThat(index.getTotalFileSize(), is(8L));
     }
 
+    @Test
+    public void findShouldLookupRelativePath() throws IOException {
+        Path base = PathUtils.getResourcePath("index/foo");
+        FileIndex index = FileIndex.create(base, indexStrategy);
+
+
+        IndexNode file = index.find("bar/zoo.txt");
+
+
+        assertThat(file.getRelativePath(), is(Paths.get("bar", "zoo.txt")));
+        assertThat(index.find("./bar//zoo.txt/"), is(sameInstance(file)));
+        assertThat(index.find(""), is(sameInstance(index.getRoot())));
+        assertThat(index.find("bar/missing.txt"), is(nullValue()));
+        assertThat(index.find("bar/zoo.txt/child"), is(nullValue()));
+        assertThat(index.find("ba"), is(nullValue()));
+    }
+
+    @Test
+    public void adoptModifiedTimesShouldMigrateVersion1Nodes() throws IOException {
+        Path base = PathUtils.getResourcePath("index/foo");
+        FileIndex index = FileIndex.create(base, indexStrategy);
+        index.getRoot().stream().forEach(node -> {
+            byte[] data = node.getExtensionByType(BASIC_FILE.value).getData();
+            BasicFileIndexExtension.resetLegacyModifiedTime(data);
+            node.addExtension(new BasicFileIndexExtension(data));
+        });
+        FileIndex current = FileIndex.create(base, indexStrategy);
+
+
+        long count = index.adoptModifiedTimes(current);
+
+
+        assertThat(count, is(4L));
+        assertThat(index.getChanges(current, indexStrategy).hasChanges(), is(false));
+    }
+
+    @Test
+    public void readFromPathShouldReadUnknownModifiedTimeOfVersion1() throws IOException {
+        Path file = PathUtils.getResourcePath("index/fileindex");
+
+
+        FileIndex index = FileIndex.readFromPath(PathUtils.getResourcePath("index/foo"), file, indexStrategy);
+
+
+        BasicFileIndexExtension basicFile = (BasicFileIndexExtension) index.find("doe.txt").getExtensionByType(BASIC_FILE.value);
+        assertThat(basicFile.hasModifiedTime(), is(false));
+    }
+
+    @Test
+    public void modifyShouldRebaseDirtyTrackerToNewVersion() throws IOException {
+        Files.createDirectories(tmp.resolve("dir/sub"));
+        Files.write(tmp.resolve("dir/sub/a.txt"), "a".getBytes());
+        Files.write(tmp.resolve("dir/b.txt"), "b".getBytes());
+        FileIndex index = FileIndex.create(tmp, indexStrategy);
+        index.setCopyOnWrite(true);
+        Files.write(tmp.resolve("dir/sub/a.txt"), "changed".getBytes());
+        index.applyChanges(index.getChanges(FileIndex.create(tmp, indexStrategy), indexStrategy));
+        IndexNode oldRoot = index.getRoot();
+
+
+        index.modify(editor -> editor.edit(Paths.get("dir", "b.txt")));
+
+
+        IndexNode root = index.getRoot();
+        DirtyDirectoryTracker dirtyTracker = index.getDirtyTracker();
+        assertThat(root == oldRoot, is(false));
+        assertThat(dirtyTracker.getDirtyCount(), is(3));
+        assertThat(dirtyTracker.isDirty(root), is(true));
+        assertThat(dirtyTracker.isDirty(root.getChildByName("dir")), is(true));
+        assertThat(dirtyTracker.isDirty(root.getChildByName("dir").getChildByName("sub")), is(true));
+        assertThat(dirtyTracker.isDirty(oldRoot), is(false));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+package de.silef.service.file.node;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ExtensionType;
+import de.silef.service.file.extension.FileContentHashIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.tree.Visitor;
+import de.silef.service.file.util.DataUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the retained heap of a synthetic index tree, the time to walk and stream it, the time of
+ * extension lookups and of lookups by relative path. The tree has directories with sub directories and files with basic file
+ * and content hash extensions.
+ *
+ * Run after test-compile with
+ *
+ *     java -Xmx4g -cp target/classes:target/test-classes de.silef.service.file.node.IndexNodeMemoryBenchmark [file count in thousands]
+ */
+public class IndexNodeMemoryBenchmark {
+
+    private static final int FILES_PER_DIR = 50;
+
+    private static final int DIRS_PER_DIR = 10;
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = (args.length > 0 ? Integer.parseInt(args[0]) : 1000) * 1000;
+
+        long before = getUsedHeap();
+        IndexNode root = createTree(fileCount);
+        long after = getUsedHeap();
+        long nodeCount = root.stream().count();
+
+        System.out.printf("nodes            %10d%n", nodeCount);
+        System.out.printf("retained heap    %10.1f MB%n", (after - before) / (double) (1 << 20));
+        System.out.printf("bytes per node   %10.1f%n", (after - before) / (double) nodeCount);
+
+        walk(root); // warm up
+        long start = System.nanoTime();
+        int rounds = 5;
+        long visited = 0;
+        for (int i = 0; i < rounds; i++) {
+            visited += walk(root);
+        }
+        System.out.printf("walk             %10.1f ns/node%n", (System.nanoTime() - start) / (double) visited);
+
+        root.stream().count(); // warm up
+        start = System.nanoTime();
+        long streamed = 0;
+        for (int i = 0; i < rounds; i++) {
+            streamed += root.stream().filter(IndexNode::isFile).count();
+        }
+        System.out.printf("stream           %10.1f ns/node%n", (System.nanoTime() - start) / (double) visited);
+
+        root.parallelStream().count(); // warm up
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            streamed += root.parallelStream().filter(IndexNode::isFile).count();
+        }
+        System.out.printf("parallel stream  %10.1f ns/node (%d)%n", (System.nanoTime() - start) / (double) visited, streamed);
+
+        long firstNanos = 0;
+        for (int i = 0; i < 2; i++) { // first round warms up
+            start = System.nanoTime();
+            root.stream().filter(IndexNode::isFile).findFirst();
+            firstNanos = System.nanoTime() - start;
+        }
+        System.out.printf("find first       %10.1f us%n", firstNanos / 1e3);
+
+        List<IndexNode> nodes = new ArrayList<>();
+        root.stream().forEach(nodes::add);
+        lookup(nodes); // warm up
+        start = System.nanoTime();
+        long size = 0;
+        for (int i = 0; i < rounds; i++) {
+            size += lookup(nodes);
+        }
+        System.out.printf("extension lookup %10.1f ns/node (%d)%n", (System.nanoTime() - start) / (double) (rounds * nodes.size()), size);
+
+        List<String> paths = new ArrayList<>(nodes.size());
+        for (IndexNode node : nodes) {
+            paths.add(node.getRelativePath().toString());
+        }
+        System.out.printf("heap with paths  %10.1f MB of nodes and path strings%n", (getUsedHeap() - before) / (double) (1 << 20));
+
+        FileIndex index = new FileIndex(Paths.get(""), root);
+        find(index, paths); // warm up
+        long allocatedBefore = getAllocatedBytes();
+        start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < rounds; i++) {
+            found += find(index, paths);
+        }
+        System.out.printf("path lookup      %10.1f ns/path %.1f bytes/path (%d)%n", (System.nanoTime() - start) / (double) (rounds * paths.size()),
+                (getAllocatedBytes() - allocatedBefore) / (double) (rounds * paths.size()), found);
+    }
+
+    private static long find(FileIndex index, List<String> paths) {
+        long found = 0;
+        for (String path : paths) {
+            if (index.find(path) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long lookup(List<IndexNode> nodes) {
+        long size = 0;
+        for (IndexNode node : nodes) {
+            IndexExtension extension = node.getExtensionByType(ExtensionType.BASIC_FILE.value);
+            if (extension instanceof BasicFileIndexExtension && node.hasExtensionType(ExtensionType.FILE_HASH.value)) {
+                size += ((BasicFileIndexExtension) extension).getSize();
+            }
+        }
+        return size;
+    }
+
+    private static IndexNode createTree(int fileCount) throws IOException {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "root", Arrays.asList(createBasicFile(0)));
+        int dirCount = Math.max(1, fileCount / FILES_PER_DIR / DIRS_PER_DIR);
+        List<IndexNode> dirs = new ArrayList<>(dirCount);
+        int fileIndex = 0;
+        for (int d = 0; d < dirCount; d++) {
+            IndexNode dir = new IndexNode(root, IndexNodeType.DIRECTORY, "dir" + d, Arrays.asList(createBasicFile(0)));
+            List<IndexNode> subDirs = new ArrayList<>(DIRS_PER_DIR);
+            for (int s = 0; s < DIRS_PER_DIR; s++) {
+                IndexNode subDir = new IndexNode(dir, IndexNodeType.DIRECTORY, "sub" + s, Arrays.asList(createBasicFile(0)));
+                List<IndexNode> files = new ArrayList<>(FILES_PER_DIR);
+                for (int f = 0; f < FILES_PER_DIR; f++, fileIndex++) {
+                    List<IndexExtension> extensions = Arrays.asList(createBasicFile(fileIndex), createFileHash(fileIndex));
+                    files.add(new IndexNode(subDir, IndexNodeType.FILE, "file" + fileIndex + ".txt", extensions));
+                }
+                subDir.setChildren(files);
+                subDirs.add(subDir);
+            }
+            dir.setChildren(subDirs);
+            dirs.add(dir);
+        }
+        root.setChildren(dirs);
+        return root;
+    }
+
+    private static BasicFileIndexExtension createBasicFile(long i) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DataOutputStream dataOutput = new DataOutputStream(output)) {
+            dataOutput.writeLong(i * 1024);
+            dataOutput.writeLong(1474000000000L + i);
+            dataOutput.writeLong(1474000000000L + i);
+            dataOutput.writeLong(i);
+        }
+        return new BasicFileIndexExtension(output.toByteArray());
+    }
+
+    private static FileContentHashIndexExtension createFileHash(long i) {
+        byte[] hash = new byte[20];
+        System.arraycopy(DataUtils.toBytes(i), 0, hash, 0, 8);
+        return new FileContentHashIndexExtension(hash);
+    }
+
+    private static long walk(IndexNode root) {
+        long[] count = new long[1];
+        IndexNodeWalker.walk(root, new Visitor<IndexNode>() {
+            @Override
+            public VisitorResult preVisitDirectory(IndexNode dir) throws IOException {
+                count[0]++;
+                return super.preVisitDirectory(dir);
+            }
+
+            @Override
+            public VisitorResult visitFile(IndexNode file) throws IOException {
+                count[0]++;
+                return super.visitFile(file);
+            }
+        });
+        return count[0];
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
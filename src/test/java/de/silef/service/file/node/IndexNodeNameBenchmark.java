@@ -0,0 +1,172 @@
+package de.silef.service.file.node;
+
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.index.StandardFileIndexStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Measures the index file size and the retained heap of a read index tree with repeating names
+ * like a photo collection: numbered image names, thumbnail directories and system files in
+ * each directory.
+ *
+ * The retained heap of a bounded name table and of an unbounded map of all names is measured
+ * with the tables kept alive.
+ *
+ * Compares the block file of version 3 with the single deflate stream of version 2 and the
+ * read time of the whole tree with the read time of a single month directory.
+ *
+ * Run after test-compile with
+ *
+ *     java -Xmx4g -cp target/classes:target/test-classes de.silef.service.file.node.IndexNodeNameBenchmark [file count in thousands]
+ */
+public class IndexNodeNameBenchmark {
+
+    private static final int FILES_PER_DIR = 50;
+
+    private static final int DIRS_PER_DIR = 10;
+
+    private static final String[] SYSTEM_FILES = {".DS_Store", "Thumbs.db", "index.html"};
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = (args.length > 0 ? Integer.parseInt(args[0]) : 1000) * 1000;
+
+        Path file = Files.createTempFile("fileindex", ".benchmark");
+        try {
+            IndexNode root = createTree(fileCount);
+            long nodeCount = root.stream().count();
+            new IndexNodeWriter().write(root, file);
+            root = null;
+
+            StandardFileIndexStrategy strategy = new StandardFileIndexStrategy();
+            long before = getUsedHeap();
+            IndexNode read = new IndexNodeReader(strategy).read(file);
+            long after = getUsedHeap();
+
+            System.out.printf("nodes            %10d%n", nodeCount);
+            System.out.printf("index file       %10.1f MB%n", Files.size(file) / (double) (1 << 20));
+            System.out.printf("retained heap    %10.1f MB%n", (after - before) / (double) (1 << 20));
+            System.out.printf("bytes per node   %10.1f%n", (after - before) / (double) read.stream().count());
+
+            // Names of a scan are new Strings which are interned by the table of the strategy
+            List<String> names = read.stream().map(n -> new String(n.getName())).collect(Collectors.toList());
+            List<String> uniqueNames = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                uniqueNames.add(names.get(i) + "." + i);
+            }
+            measureNameTables("repeating names", names);
+            measureNameTables("unique names", uniqueNames);
+            read = null;
+
+            System.out.printf("version 2 file   %10.1f MB%n", getSingleStreamSize(file) / (double) (1 << 20));
+            IndexNodeReader reader = new IndexNodeReader(new StandardFileIndexStrategy());
+            Path month = Paths.get("2001-06");
+            for (int round = 0; round < 10; round++) {
+                long start = System.nanoTime();
+                reader.read(file);
+                long readNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                reader.readSubtree(file, month);
+                long subtreeNanos = System.nanoTime() - start;
+                if (round == 9) {
+                    System.out.printf("read tree        %10.1f ms%n", readNanos / 1e6);
+                    System.out.printf("read sub tree    %10.1f ms%n", subtreeNanos / 1e6);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static IndexNode createTree(int fileCount) throws IOException {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "photos", Arrays.asList(createBasicFile(0)));
+        int dirCount = Math.max(1, fileCount / FILES_PER_DIR / DIRS_PER_DIR);
+        List<IndexNode> dirs = new ArrayList<>(dirCount);
+        int fileIndex = 0;
+        for (int d = 0; d < dirCount; d++) {
+            IndexNode dir = new IndexNode(root, IndexNodeType.DIRECTORY, String.format("%04d-%02d", 2000 + d / 12, d % 12 + 1), Arrays.asList(createBasicFile(0)));
+            List<IndexNode> subDirs = new ArrayList<>(DIRS_PER_DIR);
+            for (int s = 0; s < DIRS_PER_DIR; s++) {
+                IndexNode subDir = new IndexNode(dir, IndexNodeType.DIRECTORY, s == 0 ? "thumbs" : "event" + s, Arrays.asList(createBasicFile(0)));
+                List<IndexNode> files = new ArrayList<>(FILES_PER_DIR);
+                for (int f = 0; f < FILES_PER_DIR; f++, fileIndex++) {
+                    String name = f < SYSTEM_FILES.length ? SYSTEM_FILES[f] : String.format("IMG_%04d.JPG", f);
+                    files.add(new IndexNode(subDir, IndexNodeType.FILE, new String(name), Arrays.<IndexExtension>asList(createBasicFile(fileIndex))));
+                }
+                subDir.setChildren(files);
+                subDirs.add(subDir);
+            }
+            dir.setChildren(subDirs);
+            dirs.add(dir);
+        }
+        root.setChildren(dirs);
+        return root;
+    }
+
+    private static BasicFileIndexExtension createBasicFile(long i) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DataOutputStream dataOutput = new DataOutputStream(output)) {
+            dataOutput.writeLong(i * 1024);
+            dataOutput.writeLong(1474000000000L + i);
+            dataOutput.writeLong(1474000000000L + i);
+            dataOutput.writeLong(i);
+        }
+        return new BasicFileIndexExtension(output.toByteArray());
+    }
+
+    /**
+     * Print the retained heap of a bounded name table and of an unbounded map after interning all
+     * names. The names themselves are retained by the given list
+     */
+    private static void measureNameTables(String label, List<String> names) {
+        long before = getUsedHeap();
+        NameTable nameTable = new NameTable();
+        names.forEach(nameTable::intern);
+        long after = getUsedHeap();
+        System.out.printf("%-16s bounded table   %6.1f MB (%d names)%n", label, (after - before) / (double) (1 << 20), nameTable.size());
+
+        before = getUsedHeap();
+        Map<String, String> unboundedTable = new ConcurrentHashMap<>();
+        names.forEach(name -> unboundedTable.putIfAbsent(name, name));
+        after = getUsedHeap();
+        System.out.printf("%-16s unbounded table %6.1f MB (%d names)%n", label, (after - before) / (double) (1 << 20), unboundedTable.size());
+    }
+
+    /**
+     * @return Size of the inflated data deflated as one stream like version 2 is written
+     */
+    private static long getSingleStreamSize(Path file) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = IndexNodeReader.openInflatedStream(file);
+             DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                deflaterOutput.write(buffer, 0, read);
+            }
+        }
+        return output.size();
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
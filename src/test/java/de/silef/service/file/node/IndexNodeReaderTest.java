@@ -1,17 +1,22 @@
 package de.silef.service.file.node;
 
+import de.silef.service.file.extension.BasicFileIndexExtension;
 import de.silef.service.file.test.BasePathTest;
 import de.silef.service.file.test.PathUtils;
+import de.silef.service.file.util.DataUtils;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -31,4 +36,101 @@ public class IndexNodeReaderTest extends BasePathTest {
         List<String> paths = root.stream().map(n -> n.getRelativePath().toString()).collect(Collectors.toList());
         assertThat(paths, is(Arrays.asList("", "bar", "bar/zoo.txt", "doe.txt")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void readSubtreeShouldReadDirectoryAndAncestors() throws IOException {
+        IndexNode root = givenLargeTree();
+        Path file = tmp.resolve("fileindex");
+        new IndexNodeWriter().write(root, file);
+
+
+        IndexNode read = new IndexNodeReader(indexStrategy).readSubtree(file, Paths.get("dir7", "sub"));
+
+
+        IndexNode dir = read.getChildByName("dir7");
+        assertThat(read.getChildren().size(), is(1));
+        assertThat(dir.getChildren().size(), is(1));
+        IndexNode sub = dir.getChildByName("sub");
+        List<String> names = sub.getChildren().stream().map(IndexNode::getName).collect(Collectors.toList());
+        assertThat(names, is(root.getChildByName("dir7").getChildByName("sub").getChildren().stream().map(IndexNode::getName).collect(Collectors.toList())));
+        assertThat(sub.getChildByName("file7.300.txt").getExtensions(), is(root.getChildByName("dir7").getChildByName("sub").getChildByName("file7.300.txt").getExtensions()));
+        assertThat(read.getAggregate().getFileCount(), is(100L));
+        assertThat(read.getAggregate().getDirectoryCount(), is(3L));
+    }
+
+    @Test
+    public void readShouldReadAllBlocks() throws IOException {
+        IndexNode root = givenLargeTree();
+        Path file = tmp.resolve("fileindex");
+        new IndexNodeWriter().write(root, file);
+
+
+        IndexNode read = new IndexNodeReader(indexStrategy).read(file);
+
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertThat(IndexBlockFile.read(channel).getBlockCount() > 2, is(true));
+        }
+        assertThat(read.stream().count(), is(root.stream().count()));
+        assertThat(read.getAggregate().getTotalSize(), is(root.getAggregate().getTotalSize()));
+    }
+
+    @Test
+    public void readSubtreeShouldReturnNullForMissingDirectory() throws IOException {
+        Path file = tmp.resolve("fileindex");
+        new IndexNodeWriter().write(givenLargeTree(), file);
+
+
+        IndexNode read = new IndexNodeReader(indexStrategy).readSubtree(file, Paths.get("dir7", "sub", "file7.300.txt"));
+
+
+        assertThat(read, is(nullValue()));
+    }
+
+    @Test
+    public void readSubtreeShouldPruneVersion1() throws IOException {
+        Path file = PathUtils.getResourcePath("index/fileindex");
+
+
+        IndexNode root = new IndexNodeReader(indexStrategy).readSubtree(file, Paths.get("bar"));
+
+
+        List<String> paths = root.stream().map(n -> n.getRelativePath().toString()).collect(Collectors.toList());
+        assertThat(paths, is(Arrays.asList("", "bar", "bar/zoo.txt")));
+    }
+
+    /**
+     * Tree of 10 directories with 400 files each, which needs several blocks
+     */
+    private IndexNode givenLargeTree() {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+        List<IndexNode> dirs = new ArrayList<>();
+        for (int d = 0; d < 10; d++) {
+            IndexNode dir = new IndexNode(root, IndexNodeType.DIRECTORY, "dir" + d);
+            IndexNode sub = new IndexNode(dir, IndexNodeType.DIRECTORY, "sub");
+            List<IndexNode> files = new ArrayList<>();
+            for (int f = 0; f < 400; f++) {
+                IndexNode node = new IndexNode(f < 300 ? dir : sub, IndexNodeType.FILE, "file" + d + "." + f + ".txt");
+                node.addExtension(givenBasicFile(d * 1000L + f));
+                if (f < 300) {
+                    files.add(node);
+                } else {
+                    sub.addChild(node);
+                }
+            }
+            files.add(sub);
+            dir.setChildren(files);
+            dirs.add(dir);
+        }
+        root.setChildren(dirs);
+        return root;
+    }
+
+    private BasicFileIndexExtension givenBasicFile(long value) {
+        byte[] data = new byte[32];
+        for (int i = 0; i < 4; i++) {
+            DataUtils.putLong(data, i * 8, value * 31 + i);
+        }
+        return new BasicFileIndexExtension(data);
+    }
+}
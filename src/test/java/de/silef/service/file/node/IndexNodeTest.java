@@ -1,15 +1,19 @@
 package de.silef.service.file.node;
 
 import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.extension.ContentHashAlgorithm;
 import de.silef.service.file.extension.ExtensionType;
 import de.silef.service.file.extension.FileContentHashIndexExtension;
 import de.silef.service.file.extension.IndexExtension;
+import de.silef.service.file.extension.StandardIndexExtension;
 import de.silef.service.file.test.BaseTest;
 import de.silef.service.file.test.PathUtils;
+import de.silef.service.file.tree.Visitor;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -45,6 +49,159 @@ public class IndexNodeTest extends BaseTest {
         assertThat(node.getChildren().isEmpty(), is(true));
     }
 
+    @Test
+    public void childrenShouldBeSortedByName() {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+        root.setChildren(Arrays.asList(new IndexNode(root, IndexNodeType.FILE, "c.txt"), new IndexNode(root, IndexNodeType.FILE, "a.txt")));
+        List<IndexNode> children = root.getChildren();
+
+
+        root.addChild(new IndexNode(null, IndexNodeType.FILE, "b.txt"));
+        root.removeChildByName("c.txt");
+
+
+        List<String> names = root.getChildren().stream().map(IndexNode::getName).collect(Collectors.toList());
+        assertThat(names, is(Arrays.asList("a.txt", "b.txt")));
+        assertThat(new ArrayList<>(root.getChildNames()), is(Arrays.asList("a.txt", "b.txt")));
+        assertThat(root.getChildNames().contains("c.txt"), is(false));
+        assertThat(root.getChildByName("b.txt").getName(), is("b.txt"));
+        assertThat(children.size(), is(2));
+        assertThat(children.get(1).getName(), is("c.txt"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getChildrenShouldBeReadOnly() {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+
+
+        root.getChildren().add(new IndexNode(root, IndexNodeType.FILE, "a.txt"));
+    }
+
+    @Test
+    public void extensionsShouldSupportUnknownTypes() {
+        IndexNode node = new IndexNode(null, IndexNodeType.FILE, "file.txt");
+        node.addExtension(new StandardIndexExtension((byte) 100, new byte[] {1}));
+        node.addExtension(new StandardIndexExtension(ExtensionType.LAST_VERIFIED.value, new byte[8]));
+        node.addExtension(new StandardIndexExtension((byte) -2, new byte[] {2}));
+
+
+        node.removeExtensionType(ExtensionType.LAST_VERIFIED.value);
+
+
+        List<Byte> types = node.getExtensions().stream().map(IndexExtension::getType).collect(Collectors.toList());
+        assertThat(types, is(Arrays.asList((byte) -2, (byte) 100)));
+        assertThat(node.getExtensionByType((byte) 100).getData(), is(new byte[] {1}));
+        assertThat(node.hasExtensionType(ExtensionType.LAST_VERIFIED.value), is(false));
+    }
+
+    @Test
+    public void copyShouldNotShareNodes() {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+        IndexNode dir = new IndexNode(root, IndexNodeType.DIRECTORY, "dir");
+        IndexNode file = new IndexNode(dir, IndexNodeType.FILE, "file.txt", Arrays.asList(new FileContentHashIndexExtension(new byte[20])));
+        dir.addChild(file);
+        root.addChild(dir);
+
+
+        IndexNode copy = root.copy();
+
+
+        IndexNode copiedFile = copy.getChildByName("dir").getChildByName("file.txt");
+        assertThat(copiedFile.getRelativePath(), is(Paths.get("dir/file.txt")));
+        assertThat(copiedFile == file, is(false));
+        assertThat(copiedFile.hasExtensionType(FILE_HASH.value), is(true));
+    }
+
+    @Test
+    public void streamShouldMatchWalkerOrder() {
+        IndexNode root = givenTree();
+        List<String> walked = new ArrayList<>();
+        IndexNodeWalker.walk(root, new Visitor<IndexNode>() {
+            @Override
+            public VisitorResult preVisitDirectory(IndexNode dir) throws IOException {
+                walked.add(dir.getRelativePath().toString());
+                return super.preVisitDirectory(dir);
+            }
+
+            @Override
+            public VisitorResult visitFile(IndexNode file) throws IOException {
+                walked.add(file.getRelativePath().toString());
+                return super.visitFile(file);
+            }
+        });
+
+
+        List<String> streamed = root.stream().map(n -> n.getRelativePath().toString()).collect(Collectors.toList());
+        List<String> parallelStreamed = root.parallelStream().map(n -> n.getRelativePath().toString()).collect(Collectors.toList());
+
+
+        assertThat(streamed, is(walked));
+        assertThat(parallelStreamed, is(walked));
+        assertThat(streamed.size(), is(1 + 4 + 4 * 3 + 4 * 3 * 5 + 4 * 2 + 4));
+        assertThat(root.getChildByName("a.txt").stream().count(), is(0L));
+    }
+
+    @Test
+    public void aggregateShouldBeUpdatedIncrementally() {
+        IndexNode root = givenTree();
+        IndexNode dir = root.getChildByName("dir1");
+        IndexNode sub = dir.getChildByName("sub2");
+        IndexNode file = new IndexNode(sub, IndexNodeType.FILE, "big.bin", Arrays.asList(createBasicFile(1000)));
+
+
+        sub.addChild(file);
+        assertThat(root.getAggregate().getTotalSize(), is(1000L));
+        file.addExtension(new FileContentHashIndexExtension(new byte[20]));
+        assertThat(root.getAggregate().getMissingHashBytes(ContentHashAlgorithm.SHA1), is(0L));
+        assertThat(root.getAggregate().getMissingHashBytes(ContentHashAlgorithm.SHA256), is(1000L));
+        file.addExtension(createBasicFile(3000));
+        sub.addChild(new IndexNode(sub, IndexNodeType.FILE, "small.bin", Arrays.asList(createBasicFile(5))));
+        root.getChildByName("dir0").removeChildByName("sub0");
+        root.getChildByName("dir2").setChildren(Arrays.asList(new IndexNode(null, IndexNodeType.FILE, "only.txt", Arrays.asList(createBasicFile(7)))));
+
+
+        assertThat(root.getAggregate().getNodeCount(), is(root.stream().count()));
+        assertThat(root.getAggregate().getDirectoryCount(), is(root.stream().filter(IndexNode::isDirectory).count()));
+        assertThat(root.getAggregate().getTotalSize(), is(3012L));
+        assertThat(root.getAggregate().getMissingHashBytes(ContentHashAlgorithm.SHA1), is(12L));
+        assertThat(dir.getAggregate().getTotalSize(), is(3005L));
+        assertThat(sub.getAggregate().getFileCount(), is(7L));
+        assertThat(root.copy().getAggregate().getTotalSize(), is(3012L));
+        IndexNode largest = root.getChildren().stream()
+                .filter(IndexNode::isDirectory)
+                .max((a, b) -> Long.compare(a.getAggregate().getTotalSize(), b.getAggregate().getTotalSize()))
+                .get();
+        assertThat(largest, is(dir));
+    }
+
+    private static BasicFileIndexExtension createBasicFile(long size) {
+        ByteBuffer data = ByteBuffer.allocate(32);
+        data.putLong(size);
+        return new BasicFileIndexExtension(data.array());
+    }
+
+    private static IndexNode givenTree() {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+        for (int d = 0; d < 4; d++) {
+            IndexNode dir = new IndexNode(root, IndexNodeType.DIRECTORY, "dir" + d);
+            for (int s = 0; s < 3; s++) {
+                IndexNode sub = new IndexNode(dir, IndexNodeType.DIRECTORY, "sub" + s);
+                for (int f = 0; f < 5; f++) {
+                    sub.addChild(new IndexNode(sub, IndexNodeType.FILE, "file" + f + ".txt"));
+                }
+                dir.addChild(sub);
+            }
+            dir.addChild(new IndexNode(dir, IndexNodeType.FILE, "a.txt"));
+            dir.addChild(new IndexNode(dir, IndexNodeType.FILE, "z.txt"));
+            root.addChild(dir);
+        }
+        root.addChild(new IndexNode(root, IndexNodeType.FILE, "a.txt"));
+        root.addChild(new IndexNode(root, IndexNodeType.FILE, "b.txt"));
+        root.addChild(new IndexNode(root, IndexNodeType.FILE, "c.txt"));
+        root.addChild(new IndexNode(root, IndexNodeType.FILE, "d.txt"));
+        return root;
+    }
+
     @Test
     public void createFromPathOfDir() throws IOException {
         Path file = PathUtils.getResourcePath("index/foo");
@@ -74,15 +231,18 @@ public class IndexNodeTest extends BaseTest {
     @Test
     public void getRelativePathShouldCallParent() throws IOException {
         Path file = PathUtils.getResourcePath("index/foo/doe.txt");
-        IndexNode parentMock = Mockito.mock(IndexNode.class);
-        when(parentMock.getRelativePath()).thenReturn(Paths.get("index/bar"));
-        IndexNode node = createFromPath(parentMock, file);
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+        IndexNode index = new IndexNode(root, IndexNodeType.DIRECTORY, "index");
+        IndexNode parent = new IndexNode(index, IndexNodeType.DIRECTORY, "bar");
+        IndexNode node = createFromPath(parent, file);
 
 
         Path path = node.getRelativePath();
 
 
         assertThat(path, is(Paths.get("index/bar/doe.txt")));
+        assertThat(node.appendRelativePath(new StringBuilder()).toString(), is(path.toString()));
+        assertThat(root.getRelativePath(), is(Paths.get("")));
     }
 
     @Test
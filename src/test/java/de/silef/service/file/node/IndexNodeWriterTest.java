@@ -9,8 +9,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -46,4 +50,27 @@ public class IndexNodeWriterTest extends BasePathTest {
         IndexChange change = index.getChanges(cache, indexStrategy);
         assertThat(change.hasChanges(), is(false));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void writeShouldShareRepeatedNames() throws IOException {
+        IndexNode root = new IndexNode(null, IndexNodeType.DIRECTORY, "");
+        IndexNode foo = new IndexNode(root, IndexNodeType.DIRECTORY, "foo");
+        IndexNode bar = new IndexNode(root, IndexNodeType.DIRECTORY, "bar");
+        foo.addChild(new IndexNode(foo, IndexNodeType.FILE, new String("index.html")));
+        bar.addChild(new IndexNode(bar, IndexNodeType.FILE, new String("index.html")));
+        root.setChildren(Arrays.asList(foo, bar));
+
+        Path fileindex = tmp.resolve("fileindex");
+        new IndexNodeWriter().write(root, fileindex);
+
+
+        IndexNode read = new IndexNodeReader(indexStrategy).read(fileindex);
+
+
+        List<String> paths = read.stream().map(n -> n.getRelativePath().toString()).collect(Collectors.toList());
+        assertThat(paths, is(Arrays.asList("", "bar", "bar/index.html", "foo", "foo/index.html")));
+        String barName = read.getChildByName("bar").getChildByName("index.html").getName();
+        String fooName = read.getChildByName("foo").getChildByName("index.html").getName();
+        assertThat(barName, sameInstance(fooName));
+    }
+}
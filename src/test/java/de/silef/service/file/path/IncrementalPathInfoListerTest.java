@@ -0,0 +1,120 @@
+package de.silef.service.file.path;
+
+import de.silef.service.file.change.IndexChange;
+import de.silef.service.file.extension.BasicFileIndexExtension;
+import de.silef.service.file.index.FileIndex;
+import de.silef.service.file.index.StandardFileIndexStrategy;
+import de.silef.service.file.node.IndexNode;
+import de.silef.service.file.test.BasePathTest;
+import de.silef.service.file.test.PathUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static de.silef.service.file.extension.ExtensionType.BASIC_FILE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class IncrementalPathInfoListerTest extends BasePathTest {
+
+    @Test
+    public void listShouldReuseUnchangedDirectories() throws IOException, InterruptedException {
+        PathUtils.copy(PathUtils.getResourcePath("index/foo"), tmp);
+        FileIndex stored = FileIndex.create(tmp, indexStrategy);
+
+        Thread.sleep(50);
+        Files.write(tmp.resolve("bar/new.txt"), "content".getBytes());
+        Files.write(tmp.resolve("doe.txt"), "update".getBytes(), StandardOpenOption.APPEND);
+        IncrementalPathInfoLister pathLister = new IncrementalPathInfoLister(indexStrategy, tmp, stored.getRoot(), Long.MAX_VALUE);
+
+
+        FileIndex index = FileIndex.create(tmp, indexStrategy, pathLister, 1);
+
+
+        IndexChange change = index.getChanges(FileIndex.create(tmp, indexStrategy), indexStrategy);
+        assertThat(change.hasChanges(), is(false));
+        assertThat(stored.getChanges(index, indexStrategy).getChanges().size(), is(3));
+        assertThat(pathLister.getReusedDirCount(), is(1L));
+        assertThat(pathLister.getListedDirCount(), is(1L));
+    }
+
+    @Test
+    public void listShouldReadSuspectDirectories() throws IOException {
+        PathUtils.copy(PathUtils.getResourcePath("index/foo"), tmp);
+        FileIndex stored = FileIndex.create(tmp, indexStrategy);
+        IncrementalPathInfoLister pathLister = new IncrementalPathInfoLister(indexStrategy, tmp, stored.getRoot(), 0);
+
+
+        FileIndex index = FileIndex.create(tmp, indexStrategy, pathLister, 2);
+
+
+        assertThat(index.getTotalFileCount(), is(stored.getTotalFileCount()));
+        assertThat(pathLister.getReusedDirCount(), is(0L));
+        assertThat(pathLister.getListedDirCount(), is(2L));
+    }
+
+    @Test
+    public void listShouldReadIncompleteDirectories() throws IOException {
+        PathUtils.copy(PathUtils.getResourcePath("index/foo"), tmp);
+        Files.write(tmp.resolve("bar/broken.txt"), "content".getBytes());
+        StandardFileIndexStrategy brokenStrategy = new StandardFileIndexStrategy() {
+            @Override
+            public IndexNode createIndexNode(IndexNode parent, PathInfo pathInfo) throws IOException {
+                if (pathInfo.getFileName().equals("broken.txt")) {
+                    throw new IOException("Could not read " + pathInfo.getPath());
+                }
+                return super.createIndexNode(parent, pathInfo);
+            }
+        };
+        FileIndex stored = FileIndex.create(tmp, brokenStrategy);
+        IncrementalPathInfoLister pathLister = new IncrementalPathInfoLister(indexStrategy, tmp, stored.getRoot(), Long.MAX_VALUE);
+
+
+        FileIndex index = FileIndex.create(tmp, indexStrategy, pathLister, 1);
+
+
+        BasicFileIndexExtension storedDir = (BasicFileIndexExtension) stored.find("bar").getExtensionByType(BASIC_FILE.value);
+        assertThat(storedDir.hasModifiedTime(), is(false));
+        assertThat(stored.find("bar/broken.txt") == null, is(true));
+        assertThat(index.find("bar/broken.txt") != null, is(true));
+        assertThat(pathLister.getReusedDirCount(), is(1L));
+        assertThat(pathLister.getListedDirCount(), is(1L));
+    }
+
+    @Test
+    public void listShouldReadDirectoriesWithExcludedEntries() throws IOException {
+        PathUtils.copy(PathUtils.getResourcePath("index/foo"), tmp);
+        Files.write(tmp.resolve("bar/excluded.txt"), "content".getBytes());
+        FileIndex stored = FileIndex.create(tmp, p -> !p.getFileName().equals("excluded.txt"), indexStrategy);
+        IncrementalPathInfoLister pathLister = new IncrementalPathInfoLister(indexStrategy, tmp, stored.getRoot(), Long.MAX_VALUE);
+
+
+        FileIndex index = FileIndex.create(tmp, indexStrategy, pathLister, 2);
+
+
+        assertThat(stored.find("bar/excluded.txt") == null, is(true));
+        assertThat(index.find("bar/excluded.txt") != null, is(true));
+        assertThat(pathLister.getReusedDirCount(), is(1L));
+        assertThat(pathLister.getListedDirCount(), is(1L));
+    }
+
+    @Test
+    public void listShouldReuseFileAttributesOfUnchangedDirectories() throws IOException, InterruptedException {
+        PathUtils.copy(PathUtils.getResourcePath("index/foo"), tmp);
+        FileIndex stored = FileIndex.create(tmp, indexStrategy);
+
+        Thread.sleep(50);
+        Files.write(tmp.resolve("bar/zoo.txt"), "update".getBytes(), StandardOpenOption.APPEND);
+        IncrementalPathInfoLister pathLister = new IncrementalPathInfoLister(indexStrategy, tmp, stored.getRoot(), Long.MAX_VALUE, true);
+
+
+        FileIndex index = FileIndex.create(tmp, indexStrategy, pathLister, 1);
+
+
+        assertThat(stored.getChanges(index, indexStrategy).hasChanges(), is(false));
+        assertThat(pathLister.getReusedDirCount(), is(2L));
+        assertThat(pathLister.getReusedFileCount(), is(2L));
+    }
+}
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -104,6 +105,41 @@ public class IndexNodePathCreatorTest extends BasePathTest {
         verifyNodeCount(root, 5);
     }
 
+    @Test
+    public void createParallelShouldBuildSameTree() throws IOException {
+        Path base = PathUtils.getResourcePath("index/foo");
+        PathUtils.copy(base, tmp);
+        for (int i = 0; i < 8; i++) {
+            Path dir = Files.createDirectories(tmp.resolve("dir" + i).resolve("sub" + (i % 3)));
+            Files.write(dir.resolve("file" + i + ".txt"), ("content " + i).getBytes());
+            Files.write(dir.getParent().resolve("a" + i + ".txt"), ("other " + i).getBytes());
+        }
+        Files.createSymbolicLink(tmp.resolve("dir1/link"), Paths.get("../dir2"));
+        Files.createSymbolicLink(tmp.resolve("dir1/outside"), Paths.get("/"));
+
+        IndexNode expected = pathCreator.create(tmp);
+
+
+        IndexNode root = new IndexNodePathCreator(indexStrategy, 4).create(tmp);
+
+
+        verifyNodeCount(root, expected.stream().count());
+        verifySameTree(root, expected);
+    }
+
+    private void verifySameTree(IndexNode node, IndexNode expected) {
+        assertThat(node.getName(), is(expected.getName()));
+        assertThat(node.getNodeType(), is(expected.getNodeType()));
+        assertThat(node.getExtensions(), is(expected.getExtensions()));
+        List<IndexNode> children = node.getChildren();
+        List<IndexNode> expectedChildren = expected.getChildren();
+        assertThat(children.size(), is(expectedChildren.size()));
+        for (int i = 0; i < children.size(); i++) {
+            assertThat(children.get(i).getParent(), is(node));
+            verifySameTree(children.get(i), expectedChildren.get(i));
+        }
+    }
+
     private void verifyNodeCount(IndexNode root, long expectedCount) {
         assertThat(root.stream().count(), is(expectedCount));
     }
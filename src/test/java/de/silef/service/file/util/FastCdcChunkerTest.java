@@ -0,0 +1,84 @@
+package de.silef.service.file.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FastCdcChunkerTest {
+
+    @Test
+    public void chunksShouldCoverContentWithinSizeLimits() {
+        byte[] content = givenRandomContent(1 << 20, 1);
+
+
+        FastCdcChunker chunker = chunk(content, 13, content.length);
+
+
+        long total = Arrays.stream(chunker.getChunkLengths()).asLongStream().sum();
+        assertThat(total, is((long) content.length));
+        int[] lengths = chunker.getChunkLengths();
+        for (int i = 0; i < lengths.length - 1; i++) {
+            assertTrue(lengths[i] > (1 << 13) / 4);
+            assertTrue(lengths[i] <= (1 << 13) * 8);
+        }
+    }
+
+    @Test
+    public void chunksShouldNotDependOnUpdateSizes() {
+        byte[] content = givenRandomContent(200000, 2);
+
+
+        FastCdcChunker whole = chunk(content, 13, content.length);
+        FastCdcChunker split = chunk(content, 13, 4097);
+
+
+        assertThat(split.getChunkLengths(), is(whole.getChunkLengths()));
+        assertThat(split.getChunkHashes(), is(whole.getChunkHashes()));
+    }
+
+    @Test
+    public void insertionShouldKeepMostChunks() {
+        byte[] content = givenRandomContent(1 << 20, 3);
+        byte[] modified = new byte[content.length + 10];
+        System.arraycopy(content, 0, modified, 0, 500000);
+        System.arraycopy(content, 500000, modified, 500010, content.length - 500000);
+
+
+        FastCdcChunker origin = chunk(content, 13, content.length);
+        FastCdcChunker update = chunk(modified, 13, modified.length);
+
+
+        Set<Long> originHashes = new HashSet<>();
+        Arrays.stream(origin.getChunkHashes()).forEach(originHashes::add);
+        long unknown = Arrays.stream(update.getChunkHashes()).filter(h -> !originHashes.contains(h)).count();
+        assertTrue(unknown <= 3);
+    }
+
+    @Test
+    public void averageSizeShouldLimitChunkCount() {
+        assertThat(FastCdcChunker.getAverageSizeBits(0), is(FastCdcChunker.MIN_AVERAGE_SIZE_BITS));
+        assertThat(FastCdcChunker.getAverageSizeBits(10L << 30), is(25));
+    }
+
+    private FastCdcChunker chunk(byte[] content, int averageSizeBits, int updateSize) {
+        FastCdcChunker chunker = new FastCdcChunker(averageSizeBits);
+        for (int offset = 0; offset < content.length; offset += updateSize) {
+            chunker.update(content, offset, Math.min(updateSize, content.length - offset));
+        }
+        chunker.finish();
+        return chunker;
+    }
+
+    private byte[] givenRandomContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,23 @@
+package de.silef.service.file.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FileKeyUtilTest {
+
+    @Test
+    public void getInodeShouldParseUnixFileKeys() {
+        assertThat(FileKeyUtil.getInode("(dev=803,ino=1234)"), is(1234L));
+        assertThat(FileKeyUtil.getInode("(ino=1234)"), is(1234L));
+        assertThat(FileKeyUtil.getInode(null), is(FileKeyUtil.UNKNOWN_INODE));
+        assertThat(FileKeyUtil.getInode("unknown"), is(FileKeyUtil.UNKNOWN_INODE));
+    }
+
+    @Test
+    public void getDeviceShouldParseHexDevice() {
+        assertThat(FileKeyUtil.getDevice("(dev=1f,ino=1234)"), is(31L));
+        assertThat(FileKeyUtil.getDevice("(ino=1234)"), is(FileKeyUtil.UNKNOWN_DEVICE));
+    }
+}
@@ -0,0 +1,75 @@
+package de.silef.service.file.util;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Compares bytes hashed per CPU second of the stream based hash with the channel based hash
+ * of HashUtil. The file is read from the page cache after the first round, so the CPU time
+ * reflects copying and digesting.
+ *
+ * Run after test-compile with
+ *
+ *     java -cp target/classes:target/test-classes de.silef.service.file.util.HashUtilBenchmark [size in MB] [rounds]
+ */
+public class HashUtilBenchmark {
+
+    private interface FileHasher {
+        byte[] hash(Path file, long size) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 512) << 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = createFile(size);
+        try {
+            run("stream", file, size, rounds, HashUtilBenchmark::streamHash);
+            run("channel read", file, size, rounds, (f, s) -> HashUtil.getFileHash(f, s, Long.MAX_VALUE));
+            run("channel mapped", file, size, rounds, (f, s) -> HashUtil.getFileHash(f, s, 0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void run(String name, Path file, long size, int rounds, FileHasher hasher) throws IOException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        hasher.hash(file, size); // warm up
+
+        long cpuStart = threadBean.getCurrentThreadCpuTime();
+        long wallStart = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            hasher.hash(file, size);
+        }
+        double cpuSeconds = (threadBean.getCurrentThreadCpuTime() - cpuStart) / 1e9;
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        double megabytes = (double) size * rounds / (1 << 20);
+
+        System.out.printf("%-16s %8.1f MB/cpu-s %8.1f MB/s%n", name, megabytes / cpuSeconds, megabytes / wallSeconds);
+    }
+
+    private static byte[] streamHash(Path file, long size) throws IOException {
+        try (InputStream sizeInput = new ByteArrayInputStream(DataUtils.toBytes(size));
+             InputStream fileInput = new BufferedInputStream(Files.newInputStream(file), 1 << 15);
+             InputStream sequenceInput = new SequenceInputStream(sizeInput, fileInput)) {
+            return HashUtil.getHash(sequenceInput);
+        }
+    }
+
+    private static Path createFile(long size) throws IOException {
+        Path file = Files.createTempFile(Paths.get(System.getProperty("java.io.tmpdir")), "hash-benchmark-", ".bin");
+        byte[] block = new byte[1 << 20];
+        new Random(42).nextBytes(block);
+        try (OutputStream output = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                output.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        return file;
+    }
+}
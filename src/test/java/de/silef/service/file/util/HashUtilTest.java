@@ -0,0 +1,49 @@
+package de.silef.service.file.util;
+
+import de.silef.service.file.test.BasePathTest;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class HashUtilTest extends BasePathTest {
+
+    @Test
+    public void getFileHashShouldEqualStreamHash() throws IOException {
+        for (int size : new int[] {0, 1, 4095, 65536, 65537, 300000}) {
+            Path file = givenRandomFile(size);
+            byte[] expected = getStreamHash(file);
+
+
+            byte[] buffered = HashUtil.getFileHash(file, size, Long.MAX_VALUE);
+            byte[] mapped = HashUtil.getFileHash(file, size, 0);
+
+
+            assertThat(HashUtil.toHex(buffered), is(HashUtil.toHex(expected)));
+            assertThat(HashUtil.toHex(mapped), is(HashUtil.toHex(expected)));
+        }
+    }
+
+    private Path givenRandomFile(int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return Files.write(tmp.resolve("file-" + size), content);
+    }
+
+    private byte[] getStreamHash(Path file) throws IOException {
+        long size = Files.size(file);
+        try (InputStream sizeInput = new ByteArrayInputStream(DataUtils.toBytes(size));
+             InputStream fileInput = Files.newInputStream(file);
+             InputStream sequenceInput = new SequenceInputStream(sizeInput, fileInput)) {
+            return HashUtil.getHash(sequenceInput);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package de.silef.service.file.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class XxHash64DigestTest {
+
+    @Test
+    public void digestShouldMatchReferenceValues() {
+        assertThat(xxh64(""), is("ef46db3751d8e999"));
+        assertThat(xxh64("abc"), is("44bc2cf5ad770999"));
+        assertThat(xxh64("Nobody inspects the spammish repetition"), is("fbcea83c8a378bf1"));
+    }
+
+    @Test
+    public void chunkedUpdatesShouldEqualSingleUpdate() {
+        byte[] data = new byte[1000];
+        new Random(42).nextBytes(data);
+        byte[] expected = new XxHash64Digest().digest(data);
+
+        for (int chunkSize : new int[] {1, 3, 31, 32, 33, 100}) {
+            MessageDigest digest = new XxHash64Digest();
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                digest.update(data, offset, Math.min(chunkSize, data.length - offset));
+            }
+
+
+            byte[] hash = digest.digest();
+
+
+            assertThat(HashUtil.toHex(hash), is(HashUtil.toHex(expected)));
+        }
+    }
+
+    @Test
+    public void directBufferUpdateShouldEqualArrayUpdate() {
+        byte[] data = new byte[1000];
+        new Random(7).nextBytes(data);
+        byte[] expected = new XxHash64Digest().digest(data);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        MessageDigest digest = new XxHash64Digest();
+        digest.update((byte) data[0]);
+        buffer.position(1);
+
+
+        digest.update(buffer);
+
+
+        assertThat(HashUtil.toHex(digest.digest()), is(HashUtil.toHex(expected)));
+    }
+
+    private static String xxh64(String input) {
+        return HashUtil.toHex(new XxHash64Digest().digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
+}